@@ -0,0 +1,645 @@
+package org.cis120.othello;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * This class is a computer player that picks moves with a negamax alpha-beta
+ * search. It searches the current position one ply deeper at a time
+ * (iterative deepening) until it runs out of depth, time or nodes, and plays
+ * the best move from the deepest finished search.
+ *
+ * The search works on the two piece masks directly so it never touches the
+ * Othello instance it was asked about. Positions are remembered by Zobrist
+ * hash in a transposition table so they aren't searched twice. An engine
+ * keeps per search state, so each thread needs its own engine.
+ *
+ * With more than one thread the engine runs a Lazy SMP search: helper
+ * engines search the same position at the same time, some one ply ahead,
+ * and share the transposition table. They mostly fill the table with results
+ * the main search can reuse, so the main search reaches each depth sooner.
+ *
+ * With an OpeningBook set, book positions are played straight from the book.
+ * With PatternWeights set, positions are evaluated by trained patterns that
+ * are updated along with each move instead of the built in evaluation.
+ *
+ * @author fdustin
+ *
+ */
+public class AlphaBetaEngine implements Player {
+    // finished games score past any evaluation, plus the disc difference
+    public static final int WIN_SCORE = 100000;
+    private static final int INFINITY = 1000000;
+    // 60 moves plus passes
+    private static final int MAX_PLY = 128;
+    // below this depth moves are ordered by square only
+    private static final int MOBILITY_ORDER_DEPTH = 3;
+    // how often the stop flag and the clock are read, must be powers of 2
+    // minus 1. The flag is a plain load so it's read often enough to stop in
+    // well under a millisecond.
+    private static final int STOP_CHECK_MASK = 1023;
+    private static final int TIME_CHECK_MASK = 4095;
+    // 2^20 entries, 16MB
+    private static final int DEFAULT_TABLE_BITS = 20;
+
+    private static final long CORNERS = 0x8100000000000081L;
+    // squares diagonal to a corner
+    private static final long X_SQUARES = 0x0042000000004200L;
+    // edge squares next to a corner
+    private static final long C_SQUARES = 0x4281000000008142L;
+
+    // how good each square is to play on, used for move ordering
+    private static final int[] SQUARE_VALUES = {
+        100, -20, 10, 5, 5, 10, -20, 100,
+        -20, -50, -2, -2, -2, -2, -50, -20,
+        10, -2, -1, -1, -1, -1, -2, 10,
+        5, -2, -1, -1, -1, -1, -2, 5,
+        5, -2, -1, -1, -1, -1, -2, 5,
+        10, -2, -1, -1, -1, -1, -2, 10,
+        -20, -50, -2, -2, -2, -2, -50, -20,
+        100, -20, 10, 5, 5, 10, -20, 100 };
+
+    private int maxDepth;
+    // 0 or less means no time limit
+    private long timeLimitMillis;
+    private long nodeLimit;
+    // null to search without one
+    private TranspositionTable table;
+    // positions found here aren't searched, null for no book
+    private OpeningBook book;
+    // evaluates with trained patterns instead of evaluate when set, the
+    // evaluator follows the search's moves
+    private PatternWeights patternWeights;
+    private PatternEvaluator patterns;
+    private int threads;
+    // helper engines and the threads they run on when threads > 1
+    private AlphaBetaEngine[] helpers;
+    private ExecutorService helperPool;
+    // helpers start this many plies deeper than the main search
+    private int depthOffset;
+    // set by stop, or by the main search to stop a helper
+    private volatile boolean stopRequested;
+
+    // state for the current search
+    private long nodes;
+    private long deadline;
+    private boolean aborted;
+    private final int[][] moveLists = new int[MAX_PLY][64];
+    private final int[][] moveScores = new int[MAX_PLY][64];
+    private SearchResult lastResult;
+
+    /**
+     * Creates an engine that searches for up to a second per move
+     */
+    public AlphaBetaEngine() {
+        this(60, 1000);
+    }
+
+    /**
+     * Creates an engine with a depth and time budget
+     *
+     * @param maxDepth        - deepest iteration to search
+     * @param timeLimitMillis - time per move, 0 for no limit
+     */
+    public AlphaBetaEngine(int maxDepth, long timeLimitMillis) {
+        this.maxDepth = maxDepth;
+        this.timeLimitMillis = timeLimitMillis;
+        this.nodeLimit = Long.MAX_VALUE;
+        this.table = new TranspositionTable(DEFAULT_TABLE_BITS);
+        this.threads = 1;
+        this.helpers = new AlphaBetaEngine[0];
+    }
+
+    public int getMaxDepth() {
+        return maxDepth;
+    }
+
+    public void setMaxDepth(int maxDepth) {
+        this.maxDepth = maxDepth;
+    }
+
+    public long getTimeLimitMillis() {
+        return timeLimitMillis;
+    }
+
+    /**
+     * sets the time per move in milliseconds, 0 or less for no limit
+     */
+    public void setTimeLimitMillis(long timeLimitMillis) {
+        this.timeLimitMillis = timeLimitMillis;
+    }
+
+    public long getNodeLimit() {
+        return nodeLimit;
+    }
+
+    /**
+     * sets the most nodes a single search may visit
+     */
+    public void setNodeLimit(long nodeLimit) {
+        this.nodeLimit = nodeLimit;
+    }
+
+    public TranspositionTable getTranspositionTable() {
+        return table;
+    }
+
+    /**
+     * sets the table used to remember positions, null to search without one
+     */
+    public void setTranspositionTable(TranspositionTable table) {
+        this.table = table;
+    }
+
+    public OpeningBook getOpeningBook() {
+        return book;
+    }
+
+    /**
+     * sets the book whose moves are played without searching, null for none
+     */
+    public void setOpeningBook(OpeningBook book) {
+        this.book = book;
+    }
+
+    public PatternWeights getPatternWeights() {
+        return patternWeights;
+    }
+
+    /**
+     * sets trained weights to evaluate positions with, null to use the built
+     * in mobility and corner evaluation
+     */
+    public void setPatternWeights(PatternWeights patternWeights) {
+        this.patternWeights = patternWeights;
+        if (patternWeights == null) {
+            patterns = null;
+        } else {
+            patterns = new PatternEvaluator(patternWeights);
+        }
+    }
+
+    public int getThreads() {
+        return threads;
+    }
+
+    /**
+     * Sets how many threads search at once. Helper threads share this engine's
+     * transposition table, so set the table first.
+     *
+     * @param threads - number of search threads, at least 1
+     */
+    public void setThreads(int threads) {
+        if (threads < 1) {
+            throw new IllegalArgumentException("Need at least one thread: " + threads);
+        }
+        if (helperPool != null) {
+            helperPool.shutdownNow();
+            helperPool = null;
+        }
+        this.threads = threads;
+        helpers = new AlphaBetaEngine[threads - 1];
+        if (threads == 1) {
+            return;
+        }
+        for (int i = 0; i < helpers.length; i++) {
+            helpers[i] = new AlphaBetaEngine(maxDepth, 0);
+            // every other helper runs a ply ahead so the threads spread out
+            helpers[i].depthOffset = (i + 1) % 2;
+        }
+        helperPool = Executors.newFixedThreadPool(helpers.length, new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread t = new Thread(r, "othello-search-helper");
+                // don't keep the program running
+                t.setDaemon(true);
+                return t;
+            }
+        });
+    }
+
+    /**
+     * Stops a search running on another thread within a millisecond, it
+     * returns the result of its last finished iteration. The flag stays set
+     * until clearStop, so a stop can't be lost by a search just starting.
+     */
+    public void stop() {
+        stopRequested = true;
+        for (AlphaBetaEngine helper : helpers) {
+            helper.stopRequested = true;
+        }
+    }
+
+    /**
+     * Lets searches run again after stop
+     */
+    public void clearStop() {
+        stopRequested = false;
+    }
+
+    /**
+     * returns the result of the most recent search, null before the first
+     */
+    public SearchResult getLastResult() {
+        return lastResult;
+    }
+
+    @Override
+    public int chooseMove(Othello game) {
+        return search(game).getBestMove();
+    }
+
+    /**
+     * Searches the position of a game for the player whose turn it is
+     *
+     * @param game - the game to search, it is not modified
+     * @return the best move found and search statistics
+     */
+    public SearchResult search(Othello game) {
+        if (game.getGameOver()) {
+            lastResult = new SearchResult(-1, 0, 0, 0, 0);
+            return lastResult;
+        }
+        if (game.getCurrentPlayer()) {
+            return search(game.getBlackPieces(), game.getWhitePieces(), true);
+        }
+        return search(game.getWhitePieces(), game.getBlackPieces(), false);
+    }
+
+    /**
+     * Searches a position for the player whose turn it is
+     *
+     * @param position - the position to search
+     * @return the best move found and search statistics
+     */
+    public SearchResult search(Position position) {
+        if (position.isGameOver()) {
+            lastResult = new SearchResult(-1, 0, 0, 0, 0);
+            return lastResult;
+        }
+        return search(position.getOwn(), position.getOpp(), position.getBlackToMove());
+    }
+
+    /**
+     * Searches a position, with helper threads if there are any. Positions
+     * in the opening book are looked up instead.
+     *
+     * @param own   - pieces of the player to move
+     * @param opp   - pieces of the opponent
+     * @param black - true if black is to move
+     * @return the best move found and search statistics, the nodes count all
+     *         threads
+     */
+    public SearchResult search(final long own, final long opp, final boolean black) {
+        if (book != null) {
+            SearchResult booked;
+            if (black) {
+                booked = book.lookup(own, opp, true);
+            } else {
+                booked = book.lookup(opp, own, false);
+            }
+            if (booked != null) {
+                lastResult = booked;
+                return lastResult;
+            }
+        }
+        if (table != null) {
+            table.newSearch();
+        }
+        if (threads == 1) {
+            lastResult = iterate(own, opp, black);
+            return lastResult;
+        }
+
+        long start = System.nanoTime();
+        List<Future<SearchResult>> futures = new ArrayList<Future<SearchResult>>(helpers.length);
+        for (int i = 0; i < helpers.length; i++) {
+            final AlphaBetaEngine helper = helpers[i];
+            helper.table = table;
+            helper.maxDepth = maxDepth;
+            if (helper.patternWeights != patternWeights) {
+                helper.setPatternWeights(patternWeights);
+            }
+            helper.stopRequested = false;
+            futures.add(helperPool.submit(new Callable<SearchResult>() {
+                @Override
+                public SearchResult call() {
+                    return helper.iterate(own, opp, black);
+                }
+            }));
+        }
+        SearchResult best = iterate(own, opp, black);
+        for (AlphaBetaEngine helper : helpers) {
+            helper.stopRequested = true;
+        }
+
+        long totalNodes = best.getNodes();
+        for (Future<SearchResult> future : futures) {
+            try {
+                SearchResult result = future.get();
+                totalNodes += result.getNodes();
+                // a helper may have finished a deeper search than the main one
+                if (result.getDepth() > best.getDepth() && result.getBestMove() >= 0) {
+                    best = result;
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } catch (ExecutionException e) {
+                throw new IllegalStateException("Helper search failed", e.getCause());
+            }
+        }
+        lastResult = new SearchResult(
+                best.getBestMove(), best.getScore(), best.getDepth(), totalNodes,
+                System.nanoTime() - start
+        );
+        return lastResult;
+    }
+
+    /**
+     * Runs the iterative deepening search on this thread
+     */
+    private SearchResult iterate(long own, long opp, boolean black) {
+        long start = System.nanoTime();
+        nodes = 0;
+        aborted = false;
+        if (timeLimitMillis > 0) {
+            deadline = start + timeLimitMillis * 1000000;
+        } else {
+            deadline = Long.MAX_VALUE;
+        }
+
+        long moves = BitBoard.legalMoves(own, opp);
+        if (moves == 0) {
+            return new SearchResult(-1, 0, 0, 0, System.nanoTime() - start);
+        }
+        long hash;
+        if (black) {
+            hash = Zobrist.hash(own, opp, true);
+        } else {
+            hash = Zobrist.hash(opp, own, false);
+        }
+        if (patterns != null) {
+            if (black) {
+                patterns.setPosition(own, opp);
+            } else {
+                patterns.setPosition(opp, own);
+            }
+        }
+        int count = orderMoves(own, opp, moves, 0, MOBILITY_ORDER_DEPTH, -1);
+        int empties = Long.bitCount(~(own | opp));
+
+        // fall back to the best ordered move if not even depth 1 finishes
+        int bestMove = moveLists[0][0];
+        int bestScore = 0;
+        int completedDepth = 0;
+        for (int depth = Math.min(1 + depthOffset, maxDepth); depth <= maxDepth; depth++) {
+            int alpha = -INFINITY;
+            int iterationMove = -1;
+            for (int i = 0; i < count; i++) {
+                int sq = moveLists[0][i];
+                long flips = BitBoard.flips(own, opp, sq);
+                long childHash = hash ^ Zobrist.moveKey(sq, flips, black) ^ Zobrist.SIDE_KEY;
+                if (patterns != null) {
+                    patterns.play(sq, flips, black);
+                }
+                int score = -negamax(
+                        opp & ~flips, own | flips | (1L << sq), childHash, !black,
+                        depth - 1, -INFINITY, -alpha, false, 1
+                );
+                if (patterns != null) {
+                    patterns.undo(sq, flips, black);
+                }
+                if (aborted) {
+                    break;
+                }
+                if (score > alpha) {
+                    alpha = score;
+                    iterationMove = sq;
+                }
+            }
+            if (aborted) {
+                break;
+            }
+            bestMove = iterationMove;
+            bestScore = alpha;
+            completedDepth = depth;
+            // search the best move first in the next iteration
+            moveToFront(moveLists[0], count, bestMove);
+            // every line reaches the end of the game, deeper can't change anything
+            if (depth >= empties) {
+                break;
+            }
+        }
+        return new SearchResult(
+                bestMove, bestScore, completedDepth, nodes,
+                System.nanoTime() - start
+        );
+    }
+
+    private int negamax(
+            long own, long opp, long hash, boolean black,
+            int depth, int alpha, int beta, boolean passed, int ply
+    ) {
+        nodes++;
+        if (nodes >= nodeLimit || ((nodes & STOP_CHECK_MASK) == 0 && (stopRequested
+                || ((nodes & TIME_CHECK_MASK) == 0 && System.nanoTime() >= deadline)))) {
+            aborted = true;
+        }
+        if (aborted) {
+            return 0;
+        }
+        if (depth == 0) {
+            // a full board is a finished game
+            if ((own | opp) == -1L) {
+                return finalScore(own, opp);
+            }
+            if (patterns != null) {
+                return patterns.evaluate(black);
+            }
+            return evaluate(own, opp);
+        }
+
+        long moves = BitBoard.legalMoves(own, opp);
+        if (moves == 0) {
+            // two passes in a row ends the game
+            if (passed) {
+                return finalScore(own, opp);
+            }
+            return -negamax(
+                    opp, own, hash ^ Zobrist.SIDE_KEY, !black,
+                    depth, -beta, -alpha, true, ply + 1
+            );
+        }
+
+        int originalAlpha = alpha;
+        int hashMove = -1;
+        if (table != null) {
+            long data = table.probe(hash);
+            if (data != 0) {
+                hashMove = TranspositionTable.move(data);
+                if (TranspositionTable.depth(data) >= depth) {
+                    int stored = TranspositionTable.score(data);
+                    int bound = TranspositionTable.bound(data);
+                    if (bound == TranspositionTable.EXACT
+                            || (bound == TranspositionTable.LOWER && stored >= beta)
+                            || (bound == TranspositionTable.UPPER && stored <= alpha)) {
+                        return stored;
+                    }
+                }
+            }
+        }
+
+        int count = orderMoves(own, opp, moves, ply, depth, hashMove);
+        int[] list = moveLists[ply];
+        int best = -INFINITY;
+        int bestMove = -1;
+        for (int i = 0; i < count; i++) {
+            int sq = list[i];
+            long flips = BitBoard.flips(own, opp, sq);
+            long childHash = hash ^ Zobrist.moveKey(sq, flips, black) ^ Zobrist.SIDE_KEY;
+            if (patterns != null) {
+                patterns.play(sq, flips, black);
+            }
+            int score = -negamax(
+                    opp & ~flips, own | flips | (1L << sq), childHash, !black,
+                    depth - 1, -beta, -alpha, false, ply + 1
+            );
+            if (patterns != null) {
+                patterns.undo(sq, flips, black);
+            }
+            if (aborted) {
+                return 0;
+            }
+            if (score > best) {
+                best = score;
+                bestMove = sq;
+                if (score > alpha) {
+                    alpha = score;
+                    if (alpha >= beta) {
+                        break;
+                    }
+                }
+            }
+        }
+        if (table != null) {
+            int bound = TranspositionTable.EXACT;
+            if (best <= originalAlpha) {
+                bound = TranspositionTable.UPPER;
+            } else if (best >= beta) {
+                bound = TranspositionTable.LOWER;
+            }
+            table.store(hash, depth, best, bound, bestMove);
+        }
+        return best;
+    }
+
+    /**
+     * Fills the move list for a ply, best looking moves first. The best move
+     * stored for the position goes first, and deeper nodes also prefer moves
+     * that leave the opponent few replies.
+     *
+     * @return the number of moves
+     */
+    private int orderMoves(long own, long opp, long moves, int ply, int depth, int hashMove) {
+        int[] list = moveLists[ply];
+        int[] scores = moveScores[ply];
+        int count = 0;
+        while (moves != 0) {
+            int sq = Long.numberOfTrailingZeros(moves);
+            moves &= moves - 1;
+            int score = SQUARE_VALUES[sq];
+            if (depth >= MOBILITY_ORDER_DEPTH) {
+                long flips = BitBoard.flips(own, opp, sq);
+                long replies = BitBoard.legalMoves(opp & ~flips, own | flips | (1L << sq));
+                score -= 16 * Long.bitCount(replies);
+            }
+            if (sq == hashMove) {
+                score = Integer.MAX_VALUE;
+            }
+            // insertion sort, lists are short
+            int i = count;
+            while (i > 0 && scores[i - 1] < score) {
+                list[i] = list[i - 1];
+                scores[i] = scores[i - 1];
+                i--;
+            }
+            list[i] = sq;
+            scores[i] = score;
+            count++;
+        }
+        return count;
+    }
+
+    private static void moveToFront(int[] list, int count, int sq) {
+        for (int i = 0; i < count; i++) {
+            if (list[i] == sq) {
+                System.arraycopy(list, 0, list, 1, i);
+                list[0] = sq;
+                return;
+            }
+        }
+    }
+
+    /**
+     * Static evaluation from the point of view of the player to move.
+     * Rewards mobility and corners and punishes squares that give corners
+     * away.
+     */
+    static int evaluate(long own, long opp) {
+        int mobility = Long.bitCount(BitBoard.legalMoves(own, opp))
+                - Long.bitCount(BitBoard.legalMoves(opp, own));
+        int corners = Long.bitCount(own & CORNERS) - Long.bitCount(opp & CORNERS);
+        int xSquares = Long.bitCount(own & X_SQUARES) - Long.bitCount(opp & X_SQUARES);
+        int cSquares = Long.bitCount(own & C_SQUARES) - Long.bitCount(opp & C_SQUARES);
+        return 10 * mobility + 100 * corners - 30 * xSquares - 10 * cSquares;
+    }
+
+    /**
+     * Score of a finished game from the point of view of the player to move
+     */
+    static int finalScore(long own, long opp) {
+        int diff = Long.bitCount(own) - Long.bitCount(opp);
+        if (diff > 0) {
+            return WIN_SCORE + diff;
+        }
+        if (diff < 0) {
+            return -WIN_SCORE + diff;
+        }
+        return 0;
+    }
+
+    /**
+     * Searches the opening position to a fixed depth and prints the nodes per
+     * second so engine speed can be compared between versions. The line is
+     * searched with and without the transposition table to show how many
+     * nodes it saves.
+     *
+     * @param args - optional search depth, 10 by default
+     */
+    public static void main(String[] args) {
+        int depth = 10;
+        if (args.length > 0) {
+            depth = Integer.parseInt(args[0]);
+        }
+        AlphaBetaEngine engine = new AlphaBetaEngine(depth, 0);
+        AlphaBetaEngine noTable = new AlphaBetaEngine(depth, 0);
+        noTable.setTranspositionTable(null);
+        Othello game = new Othello();
+        // a few moves in so the position isn't symmetric
+        for (int i = 0; i < 3; i++) {
+            SearchResult without = noTable.search(game);
+            System.out.println("Turn " + game.getNumTurns() + " no table: " + without);
+            SearchResult result = engine.search(game);
+            System.out.println("Turn " + game.getNumTurns() + " table:    " + result);
+            int sq = result.getBestMove();
+            game.playTurn(BitBoard.row(sq), BitBoard.col(sq));
+            game.checkPass();
+        }
+    }
+}
@@ -0,0 +1,157 @@
+package org.cis120.othello;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * This class scores every legal move of a position on a thread of its own,
+ * for the GUI's analysis. Each move is scored by an AlphaBetaEngine search of
+ * the position after it, one ply shallower, so the scores of all moves are
+ * exact to the depth rather than just the best one. The depth grows by one
+ * until the search reaches the end of the game, and the listener is told the
+ * scores after every depth.
+ *
+ * analyze replaces the position being analysed. The old search is stopped
+ * through the engine's stop flag, which it reads every thousand or so nodes,
+ * so it ends within a millisecond and the new position starts straight after.
+ * Nothing here waits, so analyze can be called from the event thread.
+ *
+ * @author fdustin
+ *
+ */
+public class Analyzer {
+    // deepest analysis, every game is over by then
+    private static final int MAX_DEPTH = 60;
+
+    /**
+     * Told the scores of each finished depth, on the analysis thread
+     */
+    public interface Listener {
+        /**
+         * @param position - the position analysed
+         * @param depth    - plies searched from the position
+         * @param scores   - score of each legal move by square for the player
+         *                 to move, in the engine's evaluation units rather
+         *                 than discs. Games searched to the end score past
+         *                 AlphaBetaEngine.WIN_SCORE by the disc margin, or 0
+         *                 for a draw. Squares that aren't moves are 0. The
+         *                 array isn't changed afterwards.
+         */
+        void analyzed(Position position, int depth, int[] scores);
+    }
+
+    private final Listener listener;
+    private final AlphaBetaEngine engine;
+    private final ExecutorService thread;
+    // goes up with every analyze so an old analysis knows to give up
+    private final AtomicInteger generation = new AtomicInteger();
+
+    /**
+     * Creates an analyzer with a daemon thread of its own
+     *
+     * @param listener       - told the scores of each depth
+     * @param patternWeights - trained evaluation, null to use the built in one
+     */
+    public Analyzer(Listener listener, PatternWeights patternWeights) {
+        this.listener = listener;
+        engine = new AlphaBetaEngine(MAX_DEPTH, 0);
+        engine.setPatternWeights(patternWeights);
+        thread = Executors.newSingleThreadExecutor(new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread t = new Thread(r, "othello-analysis");
+                // don't keep the program running
+                t.setDaemon(true);
+                return t;
+            }
+        });
+    }
+
+    /**
+     * Stops the current analysis and starts on a new position
+     *
+     * @param position - the position to analyse, null to only stop
+     */
+    public void analyze(final Position position) {
+        final int job = generation.incrementAndGet();
+        engine.stop();
+        if (position == null || position.isGameOver()) {
+            return;
+        }
+        thread.execute(new Runnable() {
+            @Override
+            public void run() {
+                // cleared before the check, so the stop of an analyze made
+                // after the check still stops the search
+                engine.clearStop();
+                // an analyze since this one was queued wins
+                if (generation.get() != job) {
+                    return;
+                }
+                deepen(position, job);
+            }
+        });
+    }
+
+    /**
+     * Stops the current analysis
+     */
+    public void stop() {
+        analyze(null);
+    }
+
+    /**
+     * Stops the analysis and its thread for good
+     */
+    public void shutdown() {
+        stop();
+        thread.shutdownNow();
+    }
+
+    /*
+     * Scores every move at depth 2, 3, ... until the end of the game is
+     * reached or a newer analyze comes in
+     */
+    private void deepen(Position position, int job) {
+        int empties = Long.bitCount(~(position.getBlack() | position.getWhite()));
+        long moves = position.legalMoves();
+        for (int depth = 2; depth <= MAX_DEPTH && moves != 0; depth++) {
+            engine.setMaxDepth(depth - 1);
+            int[] scores = new int[BitBoard.SQUARES];
+            for (long m = moves; m != 0; m &= m - 1) {
+                int sq = Long.numberOfTrailingZeros(m);
+                int score = scoreMove(position, sq);
+                // the search was stopped part way, its score is no good
+                if (generation.get() != job) {
+                    return;
+                }
+                scores[sq] = score;
+            }
+            listener.analyzed(position, depth, scores);
+            // the searches after each move reached the end of the game
+            if (depth >= empties) {
+                return;
+            }
+        }
+    }
+
+    /*
+     * returns the score of a move for the player making it, searching the
+     * position after it to the engine's depth
+     */
+    private int scoreMove(Position position, int sq) {
+        Position next = position.play(sq);
+        if (next.legalMoves() != 0) {
+            return -engine.search(next.getOwn(), next.getOpp(), next.getBlackToMove())
+                    .getScore();
+        }
+        if (next.isGameOver()) {
+            return AlphaBetaEngine.finalScore(next.getOpp(), next.getOwn());
+        }
+        // the opponent passes and it's our move again
+        next = next.pass();
+        return engine.search(next.getOwn(), next.getOpp(), next.getBlackToMove()).getScore();
+    }
+}
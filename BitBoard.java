@@ -0,0 +1,393 @@
+package org.cis120.othello;
+
+/**
+ * This class stores an Othello position as two 64 bit masks, one for the
+ * black pieces and one for the white pieces. Square (r, c) maps to bit
+ * r * 8 + c, so row 0 lives in the lowest byte.
+ *
+ * Moves are computed by shifting whole masks at a time instead of walking the
+ * board one cell at a time. Shifting left by 1, 8, 7 or 9 moves every piece
+ * one step right, down, down-left or down-right, and shifting right moves
+ * them the opposite way. Flips are looked up in small tables, one line
+ * through the move at a time.
+ *
+ * @author fdustin
+ *
+ */
+public class BitBoard {
+    public static final int SIZE = 8;
+    public static final int SQUARES = 64;
+
+    // every column but the first and last. Shifting by 1, 7 or 9 moves a
+    // piece sideways, and a piece in an edge column would wrap to the other
+    // side of the board
+    private static final long INNER_COLS = 0x7E7E7E7E7E7E7E7EL;
+    private static final long COL_0 = 0x0101010101010101L;
+    private static final long COL_7 = 0x8080808080808080L;
+    private static final long ROW_0 = 0xFFL;
+    private static final long ROW_7 = 0xFF00000000000000L;
+    // the 15 lines running down-right and the 15 running down-left
+    private static final long[] DIAGONALS = new long[15];
+    private static final long[] ANTI_DIAGONALS = new long[15];
+    // multiplying by this moves the pieces of column 0 to the top byte, row
+    // r ending up in bit 56 + r
+    static final long COLUMN_TO_ROW = 0x0102040810204080L;
+    // flips are looked up a line at a time, each line through the move read
+    // as 8 bits. OUTFLANKS gives the squares that would end a run of
+    // opponent pieces next to the move, by where the move is and the
+    // opponent pieces on the 6 inner squares of the line, and LINE_FLIPS the
+    // squares flipped when some of those are ours
+    private static final int[][] OUTFLANKS = new int[SIZE][64];
+    private static final int[][] LINE_FLIPS = new int[SIZE][256];
+    // a line of 8 bits spread back down column 0
+    private static final long[] COLUMNS = new long[256];
+    // the diagonals through each square. Multiplying a diagonal's pieces by
+    // column 0 moves them to the top byte, column c ending up in bit 56 + c
+    static final long[] SQUARE_DIAGONALS = new long[SQUARES];
+    static final long[] SQUARE_ANTI_DIAGONALS = new long[SQUARES];
+
+    static {
+        for (int r = 0; r < SIZE; r++) {
+            for (int c = 0; c < SIZE; c++) {
+                DIAGONALS[c - r + 7] |= 1L << square(r, c);
+                ANTI_DIAGONALS[r + c] |= 1L << square(r, c);
+            }
+        }
+        for (int sq = 0; sq < SQUARES; sq++) {
+            SQUARE_DIAGONALS[sq] = DIAGONALS[col(sq) - row(sq) + 7];
+            SQUARE_ANTI_DIAGONALS[sq] = ANTI_DIAGONALS[row(sq) + col(sq)];
+        }
+        for (int line = 0; line < 256; line++) {
+            for (int i = 0; i < SIZE; i++) {
+                if ((line & (1 << i)) != 0) {
+                    COLUMNS[line] |= 1L << square(i, 0);
+                }
+            }
+        }
+        for (int place = 0; place < SIZE; place++) {
+            for (int inner = 0; inner < 64; inner++) {
+                int opp = inner << 1;
+                for (int step = -1; step <= 1; step += 2) {
+                    int i = place + step;
+                    while (i >= 0 && i < SIZE && (opp & (1 << i)) != 0) {
+                        i += step;
+                    }
+                    // only a run of at least one piece can be outflanked
+                    if (i != place + step && i >= 0 && i < SIZE) {
+                        OUTFLANKS[place][inner] |= 1 << i;
+                    }
+                }
+            }
+            for (int outflank = 0; outflank < 256; outflank++) {
+                for (int end = 0; end < SIZE; end++) {
+                    if ((outflank & (1 << end)) != 0) {
+                        for (int i = Math.min(place, end) + 1; i < Math.max(place, end); i++) {
+                            LINE_FLIPS[place][outflank] |= 1 << i;
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+    private long black;
+    private long white;
+
+    public BitBoard() {
+        this(0L, 0L);
+    }
+
+    public BitBoard(long black, long white) {
+        this.black = black;
+        this.white = white;
+    }
+
+    /**
+     * Builds a BitBoard from the 0/1/2 array representation
+     *
+     * @param board - 8x8 array, 1's are black and 2's are white
+     * @return the equivalent BitBoard
+     */
+    public static BitBoard fromArray(int[][] board) {
+        BitBoard b = new BitBoard();
+        for (int i = 0; i < SIZE; i++) {
+            for (int j = 0; j < SIZE; j++) {
+                b.setCell(i, j, board[i][j]);
+            }
+        }
+        return b;
+    }
+
+    /**
+     * Generates the 0/1/2 array representation of this board
+     *
+     * @return a new 8x8 array
+     */
+    public int[][] toArray() {
+        int[][] board = new int[SIZE][SIZE];
+        for (int i = 0; i < SIZE; i++) {
+            for (int j = 0; j < SIZE; j++) {
+                board[i][j] = getCell(i, j);
+            }
+        }
+        return board;
+    }
+
+    public BitBoard copy() {
+        return new BitBoard(black, white);
+    }
+
+    public long getBlack() {
+        return black;
+    }
+
+    public long getWhite() {
+        return white;
+    }
+
+    /**
+     * returns 0 for an empty space, 1 for black and 2 for white
+     */
+    public int getCell(int r, int c) {
+        long bit = 1L << square(r, c);
+        if ((black & bit) != 0) {
+            return 1;
+        }
+        if ((white & bit) != 0) {
+            return 2;
+        }
+        return 0;
+    }
+
+    /**
+     * sets a space using the 0/1/2 convention, any other value empties it
+     */
+    public void setCell(int r, int c, int val) {
+        long bit = 1L << square(r, c);
+        black &= ~bit;
+        white &= ~bit;
+        if (val == 1) {
+            black |= bit;
+        } else if (val == 2) {
+            white |= bit;
+        }
+    }
+
+    /**
+     * Finds all legal moves for a player
+     *
+     * @param blackToMove - true if the moves are for black
+     * @return mask with a bit set for every legal move
+     */
+    public long legalMoves(boolean blackToMove) {
+        if (blackToMove) {
+            return legalMoves(black, white);
+        }
+        return legalMoves(white, black);
+    }
+
+    /**
+     * Places a piece and flips the outflanked pieces. The move is assumed to be
+     * legal.
+     *
+     * @param sq          - square index of the move
+     * @param blackToMove - true if black is placing the piece
+     * @return mask of the pieces that were flipped
+     */
+    public long play(int sq, boolean blackToMove) {
+        long bit = 1L << sq;
+        long flipped;
+        if (blackToMove) {
+            flipped = flips(black, white, sq);
+            black |= flipped | bit;
+            white &= ~flipped;
+        } else {
+            flipped = flips(white, black, sq);
+            white |= flipped | bit;
+            black &= ~flipped;
+        }
+        return flipped;
+    }
+
+    /**
+     * Takes back a move made with play
+     *
+     * @param sq         - square index of the move
+     * @param flipped    - mask returned by play
+     * @param blackMoved - true if black made the move
+     */
+    public void undo(int sq, long flipped, boolean blackMoved) {
+        long bit = 1L << sq;
+        if (blackMoved) {
+            black &= ~(flipped | bit);
+            white |= flipped;
+        } else {
+            white &= ~(flipped | bit);
+            black |= flipped;
+        }
+    }
+
+    public int countBlack() {
+        return Long.bitCount(black);
+    }
+
+    public int countWhite() {
+        return Long.bitCount(white);
+    }
+
+    /**
+     * Finds all legal moves for the player owning own
+     *
+     * @param own - pieces of the player to move
+     * @param opp - pieces of the opponent
+     * @return mask with a bit set for every legal move
+     */
+    public static long legalMoves(long own, long opp) {
+        // opponent pieces on the edge columns can't be outflanked sideways, so
+        // leaving them out also stops runs wrapping around to the next row
+        long inner = opp & INNER_COLS;
+        long moves = runEnds(own, inner, 1)
+                | runEnds(own, opp, 8)
+                | runEnds(own, inner, 7)
+                | runEnds(own, inner, 9);
+        return moves & ~(own | opp);
+    }
+
+    /**
+     * Finds the squares just past runs of opponent pieces that start next to
+     * one of our pieces, in both directions along one axis
+     */
+    private static long runEnds(long own, long opp, int s) {
+        // a run of opponent pieces has at most 6 pieces
+        long run = opp & (own << s);
+        run |= opp & (run << s);
+        run |= opp & (run << s);
+        run |= opp & (run << s);
+        run |= opp & (run << s);
+        run |= opp & (run << s);
+        long ends = run << s;
+        run = opp & (own >>> s);
+        run |= opp & (run >>> s);
+        run |= opp & (run >>> s);
+        run |= opp & (run >>> s);
+        run |= opp & (run >>> s);
+        run |= opp & (run >>> s);
+        return ends | (run >>> s);
+    }
+
+    /**
+     * Computes the pieces flipped by playing on sq
+     *
+     * @param own - pieces of the player to move
+     * @param opp - pieces of the opponent
+     * @param sq  - square index of the move
+     * @return mask of the opponent pieces that would be flipped
+     */
+    public static long flips(long own, long opp, int sq) {
+        int r = row(sq);
+        int c = col(sq);
+        int shift = 8 * r;
+        int ownLine = (int) (own >>> shift) & 0xFF;
+        int oppLine = (int) (opp >>> shift) & 0xFF;
+        long flipped = (long) LINE_FLIPS[c][OUTFLANKS[c][(oppLine >>> 1) & 63] & ownLine] << shift;
+
+        ownLine = (int) ((((own >>> c) & COL_0) * COLUMN_TO_ROW) >>> 56);
+        oppLine = (int) ((((opp >>> c) & COL_0) * COLUMN_TO_ROW) >>> 56);
+        flipped |= COLUMNS[LINE_FLIPS[r][OUTFLANKS[r][(oppLine >>> 1) & 63] & ownLine]] << c;
+
+        // squares of a diagonal off the board read as empty, so runs stop
+        // there without being outflanked
+        long diagonal = SQUARE_DIAGONALS[sq];
+        ownLine = (int) (((own & diagonal) * COL_0) >>> 56);
+        oppLine = (int) (((opp & diagonal) * COL_0) >>> 56);
+        int line = LINE_FLIPS[c][OUTFLANKS[c][(oppLine >>> 1) & 63] & ownLine];
+        flipped |= (line * COL_0) & diagonal;
+
+        diagonal = SQUARE_ANTI_DIAGONALS[sq];
+        ownLine = (int) (((own & diagonal) * COL_0) >>> 56);
+        oppLine = (int) (((opp & diagonal) * COL_0) >>> 56);
+        line = LINE_FLIPS[c][OUTFLANKS[c][(oppLine >>> 1) & 63] & ownLine];
+        return flipped | ((line * COL_0) & diagonal);
+    }
+
+    /**
+     * Finds pieces that can never be flipped. A piece is stable along a line
+     * if the line is full, or it sits next to the edge or a stable piece of
+     * its own color on that line. Stable along all four lines means stable.
+     * This misses some stable pieces but never counts an unstable one.
+     *
+     * @param own - pieces to check
+     * @param opp - the other player's pieces
+     * @return mask of the stable pieces of own
+     */
+    public static long stableDiscs(long own, long opp) {
+        long filled = own | opp;
+        long fullRows = 0L;
+        long fullCols = 0L;
+        for (int i = 0; i < SIZE; i++) {
+            long row = 0xFFL << (i * SIZE);
+            if ((filled & row) == row) {
+                fullRows |= row;
+            }
+            long col = COL_0 << i;
+            if ((filled & col) == col) {
+                fullCols |= col;
+            }
+        }
+        long fullDiagonals = 0L;
+        long fullAntiDiagonals = 0L;
+        for (int i = 0; i < DIAGONALS.length; i++) {
+            if ((filled & DIAGONALS[i]) == DIAGONALS[i]) {
+                fullDiagonals |= DIAGONALS[i];
+            }
+            if ((filled & ANTI_DIAGONALS[i]) == ANTI_DIAGONALS[i]) {
+                fullAntiDiagonals |= ANTI_DIAGONALS[i];
+            }
+        }
+
+        long stable = own & fullRows & fullCols & fullDiagonals & fullAntiDiagonals;
+        long previous;
+        do {
+            previous = stable;
+            // the edge counts as a stable neighbor
+            long horizontal = fullRows | COL_0 | COL_7
+                    | ((stable << 1) & ~COL_0) | ((stable >>> 1) & ~COL_7);
+            long vertical = fullCols | ROW_0 | ROW_7 | (stable << 8) | (stable >>> 8);
+            long diagonal = fullDiagonals | ROW_0 | ROW_7 | COL_0 | COL_7
+                    | ((stable << 9) & ~COL_0) | ((stable >>> 9) & ~COL_7);
+            long antiDiagonal = fullAntiDiagonals | ROW_0 | ROW_7 | COL_0 | COL_7
+                    | ((stable << 7) & ~COL_7) | ((stable >>> 7) & ~COL_0);
+            stable |= own & horizontal & vertical & diagonal & antiDiagonal;
+        } while (stable != previous);
+        return stable;
+    }
+
+    public static int square(int r, int c) {
+        return r * SIZE + c;
+    }
+
+    public static int row(int sq) {
+        return sq / SIZE;
+    }
+
+    public static int col(int sq) {
+        return sq % SIZE;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof BitBoard)) {
+            return false;
+        }
+        BitBoard that = (BitBoard) o;
+        return this.black == that.black && this.white == that.white;
+    }
+
+    @Override
+    public int hashCode() {
+        return Long.hashCode(black * 31 + white);
+    }
+}
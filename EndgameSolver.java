@@ -0,0 +1,648 @@
+package org.cis120.othello;
+
+import java.util.Random;
+
+/**
+ * This class plays out the end of a game perfectly. It searches every line to
+ * the end and scores by final disc difference, so the score it returns is the
+ * exact result with best play from both sides.
+ *
+ * The root is searched with null windows only, each proving the score is
+ * above or below a guess, until the two bounds meet (MTD(f)). The search
+ * below changes as the board fills. With 6 or more empty squares it orders
+ * moves by how few replies and empty squares next to our pieces they leave
+ * the opponent (fastest-first), how many edge pieces they make stable and
+ * the parity of the empty regions, and remembers positions in a table of its
+ * own. Before searching a position's moves it looks each resulting position
+ * up in the table, and a stored result that already beats the window ends
+ * the search there (enhanced transposition cutoff). Closer to the end, moves
+ * are tried straight from the empty squares, those in regions with an odd
+ * number of empties first, without generating or sorting a move list, and
+ * the last three squares have solvers of their own. The very last move is
+ * counted from tables rather than played. A solver keeps per search state,
+ * so each thread needs its own solver.
+ *
+ * @author fdustin
+ *
+ */
+public class EndgameSolver {
+    // worse than any disc difference
+    private static final int INFINITY = 100;
+    // positions with fewer empties than this take their moves straight from
+    // the empty squares in parity order and aren't hashed
+    private static final int HASH_EMPTIES = 6;
+    // positions with at least this many empties look their moves up in the
+    // table before searching any of them
+    private static final int ETC_EMPTIES = 8;
+    // how much a reply left to the opponent, an empty square next to our
+    // pieces and an edge piece made stable count for when ordering moves
+    private static final int MOBILITY_WEIGHT = 16;
+    private static final int POTENTIAL_MOBILITY_WEIGHT = 8;
+    private static final int STABILITY_WEIGHT = 12;
+    // counting stable edge pieces only pays for itself far from the end
+    private static final int STABILITY_EMPTIES = 10;
+    // the stability cutoff needs lots of stable pieces, don't look for them
+    // unless the window is this high
+    private static final int STABILITY_ALPHA = 20;
+    // 2^20 entries, 16MB
+    private static final int TABLE_BITS = 20;
+
+    // the four 4x4 corners of the board, parity is tracked per region
+    private static final long[] REGIONS = { 0x000000000F0F0F0FL, 0x00000000F0F0F0F0L,
+        0x0F0F0F0F00000000L, 0xF0F0F0F000000000L };
+
+    private static final long CORNERS = 0x8100000000000081L;
+    private static final long COL_0 = 0x0101010101010101L;
+    private static final long COL_7 = 0x8080808080808080L;
+
+    // the squares around each square, a move has to be next to an opponent
+    // piece to flip anything
+    private static final long[] NEIGHBOURS = new long[BitBoard.SQUARES];
+    // pieces flipped by a move on a full line of 8, by where the move is and
+    // which squares of the line are the mover's
+    private static final int[][] LINE_FLIPS = new int[BitBoard.SIZE][256];
+    // pieces of a line of 8 joined to either end by a line of their own
+    private static final int[] CORNER_RUNS = new int[256];
+
+    static {
+        for (int sq = 0; sq < BitBoard.SQUARES; sq++) {
+            int r = BitBoard.row(sq);
+            int c = BitBoard.col(sq);
+            for (int dr = -1; dr <= 1; dr++) {
+                for (int dc = -1; dc <= 1; dc++) {
+                    int i = r + dr;
+                    int j = c + dc;
+                    if ((dr != 0 || dc != 0) && i >= 0 && i < BitBoard.SIZE
+                            && j >= 0 && j < BitBoard.SIZE) {
+                        NEIGHBOURS[sq] |= 1L << BitBoard.square(i, j);
+                    }
+                }
+            }
+        }
+        for (int line = 0; line < 256; line++) {
+            int i = 0;
+            while (i < BitBoard.SIZE && (line & (1 << i)) != 0) {
+                i++;
+            }
+            // a full line is counted once
+            CORNER_RUNS[line] = i;
+            if (i < BitBoard.SIZE) {
+                for (int j = BitBoard.SIZE - 1; (line & (1 << j)) != 0; j--) {
+                    CORNER_RUNS[line]++;
+                }
+            }
+        }
+        for (int place = 0; place < BitBoard.SIZE; place++) {
+            for (int line = 0; line < 256; line++) {
+                for (int step = -1; step <= 1; step += 2) {
+                    // count the opponent pieces up to the first of ours
+                    int run = 0;
+                    int i = place + step;
+                    while (i >= 0 && i < BitBoard.SIZE && (line & (1 << i)) == 0) {
+                        run++;
+                        i += step;
+                    }
+                    if (i >= 0 && i < BitBoard.SIZE) {
+                        LINE_FLIPS[place][line] += run;
+                    }
+                }
+            }
+        }
+    }
+
+    private final TranspositionTable table;
+    private final int[][] moveLists = new int[64][64];
+    private final int[][] moveScores = new int[64][64];
+    private final long[][] flipLists = new long[64][64];
+    private long nodes;
+
+    public EndgameSolver() {
+        table = new TranspositionTable(TABLE_BITS);
+    }
+
+    /**
+     * Solves the position of a game for the player whose turn it is
+     *
+     * @param game - the game to solve, it is not modified
+     * @return the best move and the exact final disc difference for the
+     *         player to move, the depth is the number of empty squares
+     */
+    public SearchResult solve(Othello game) {
+        if (game.getCurrentPlayer()) {
+            return solve(game.getBlackPieces(), game.getWhitePieces());
+        }
+        return solve(game.getWhitePieces(), game.getBlackPieces());
+    }
+
+    /**
+     * Solves a position
+     *
+     * @param own - pieces of the player to move
+     * @param opp - pieces of the opponent
+     * @return the best move, -1 if the player to move has to pass, and the
+     *         exact final disc difference for the player to move
+     */
+    public SearchResult solve(long own, long opp) {
+        long start = System.nanoTime();
+        nodes = 0;
+        table.newSearch();
+        int empties = Long.bitCount(~(own | opp));
+        long moves = BitBoard.legalMoves(own, opp);
+        if (moves == 0) {
+            int score = -search(opp, own, -INFINITY, INFINITY, true, empties, 1);
+            return new SearchResult(-1, score, empties, nodes, System.nanoTime() - start);
+        }
+
+        // null window searches until the score is pinned down (MTD(f)). Each
+        // one only has to prove a bound, and the table keeps most of the work
+        // of the ones before.
+        int count = orderMoves(own, opp, moves, 0, -1, empties);
+        int[] list = moveLists[0];
+        long[] flipList = flipLists[0];
+        int lower = -INFINITY;
+        int upper = INFINITY;
+        int score = 0;
+        int bestMove = list[0];
+        while (lower < upper) {
+            int beta = score;
+            if (score == lower) {
+                beta = score + 1;
+            }
+            score = -INFINITY;
+            for (int i = 0; i < count; i++) {
+                long flips = flipList[i];
+                int moveScore = -search(opp & ~flips, own | flips | (1L << list[i]),
+                        -beta, -beta + 1, false, empties - 1, 1);
+                if (moveScore > score) {
+                    score = moveScore;
+                }
+                if (moveScore >= beta) {
+                    bestMove = list[i];
+                    // search it first next time
+                    for (int j = i; j > 0; j--) {
+                        list[j] = list[j - 1];
+                        flipList[j] = flipList[j - 1];
+                    }
+                    list[0] = bestMove;
+                    flipList[0] = flips;
+                    break;
+                }
+            }
+            if (score < beta) {
+                upper = score;
+            } else {
+                lower = score;
+            }
+        }
+        return new SearchResult(bestMove, score, empties, nodes, System.nanoTime() - start);
+    }
+
+    private int search(
+            long own, long opp, int alpha, int beta, boolean passed,
+            int empties, int ply
+    ) {
+        if (empties < HASH_EMPTIES) {
+            return shallowSearch(own, opp, alpha, beta, passed, empties);
+        }
+        nodes++;
+        long moves = BitBoard.legalMoves(own, opp);
+        if (moves == 0) {
+            if (passed) {
+                return Long.bitCount(own) - Long.bitCount(opp);
+            }
+            return -search(opp, own, -beta, -alpha, true, empties, ply + 1);
+        }
+
+        // stability cutoff, the mover can't finish with more than the squares
+        // the opponent can't lose
+        if (alpha >= STABILITY_ALPHA) {
+            int maxScore = 64 - 2 * Long.bitCount(BitBoard.stableDiscs(opp, own));
+            if (maxScore <= alpha) {
+                return maxScore;
+            }
+        }
+
+        long hash = hash(own, opp);
+        int hashMove = -1;
+        int originalAlpha = alpha;
+        long data = table.probe(hash);
+        if (data != 0) {
+            hashMove = TranspositionTable.move(data);
+            int stored = TranspositionTable.score(data);
+            int bound = TranspositionTable.bound(data);
+            if (bound == TranspositionTable.EXACT
+                    || (bound == TranspositionTable.LOWER && stored >= beta)
+                    || (bound == TranspositionTable.UPPER && stored <= alpha)) {
+                return stored;
+            }
+        }
+
+        int count = orderMoves(own, opp, moves, ply, hashMove, empties);
+        int[] list = moveLists[ply];
+        long[] flipList = flipLists[ply];
+
+        // enhanced transposition cutoff, a move to a stored position that is
+        // already bad enough for the opponent needs no search
+        if (empties >= ETC_EMPTIES) {
+            for (int i = 0; i < count; i++) {
+                long flips = flipList[i];
+                long child = table.probe(hash(opp & ~flips, own | flips | (1L << list[i])));
+                if (child != 0 && TranspositionTable.bound(child) != TranspositionTable.LOWER
+                        && -TranspositionTable.score(child) >= beta) {
+                    return -TranspositionTable.score(child);
+                }
+            }
+        }
+
+        int best = -INFINITY;
+        int bestMove = -1;
+        for (int i = 0; i < count; i++) {
+            int sq = list[i];
+            long flips = flipList[i];
+            long newOwn = opp & ~flips;
+            long newOpp = own | flips | (1L << sq);
+            int score;
+            if (i == 0) {
+                score = -search(newOwn, newOpp, -beta, -alpha, false, empties - 1, ply + 1);
+            } else {
+                score = -search(newOwn, newOpp, -alpha - 1, -alpha, false, empties - 1, ply + 1);
+                if (score > alpha && score < beta) {
+                    score = -search(newOwn, newOpp, -beta, -score, false, empties - 1, ply + 1);
+                }
+            }
+            if (score > best) {
+                best = score;
+                bestMove = sq;
+                if (score > alpha) {
+                    alpha = score;
+                    if (alpha >= beta) {
+                        break;
+                    }
+                }
+            }
+        }
+
+        int bound = TranspositionTable.EXACT;
+        if (best <= originalAlpha) {
+            bound = TranspositionTable.UPPER;
+        } else if (best >= beta) {
+            bound = TranspositionTable.LOWER;
+        }
+        table.store(hash, empties, best, bound, bestMove);
+        return best;
+    }
+
+    /**
+     * Searches a position with few empties left. Moves are tried straight
+     * from the empty squares, those in odd regions first, the last three
+     * squares are left to solve3.
+     */
+    private int shallowSearch(
+            long own, long opp, int alpha, int beta, boolean passed, int empties
+    ) {
+        if (empties <= 3) {
+            return solveLast(own, opp, alpha, beta, passed, empties);
+        }
+        nodes++;
+        long empty = ~(own | opp);
+        long odd = oddRegions(empty);
+        int best = -INFINITY;
+        for (int k = 0; k < 2; k++) {
+            long squares = empty & odd;
+            if (k == 1) {
+                squares = empty & ~odd;
+            }
+            for (; squares != 0; squares &= squares - 1) {
+                int sq = Long.numberOfTrailingZeros(squares);
+                if ((NEIGHBOURS[sq] & opp) == 0) {
+                    continue;
+                }
+                long flips = BitBoard.flips(own, opp, sq);
+                if (flips == 0) {
+                    continue;
+                }
+                int score = -shallowSearch(opp & ~flips, own | flips | (1L << sq),
+                        -beta, -alpha, false, empties - 1);
+                if (score > best) {
+                    best = score;
+                    if (score > alpha) {
+                        alpha = score;
+                        if (alpha >= beta) {
+                            return best;
+                        }
+                    }
+                }
+            }
+        }
+        if (best > -INFINITY) {
+            return best;
+        }
+        if (passed) {
+            return Long.bitCount(own) - Long.bitCount(opp);
+        }
+        return -shallowSearch(opp, own, -beta, -alpha, true, empties);
+    }
+
+    /**
+     * Sends a position with 3 or fewer empties to the solver for its count
+     */
+    private int solveLast(long own, long opp, int alpha, int beta, boolean passed, int empties) {
+        long empty = ~(own | opp);
+        if (empties == 3) {
+            return solve3(own, opp, alpha, beta, passed);
+        }
+        if (empties == 2) {
+            int x1 = Long.numberOfTrailingZeros(empty);
+            int x2 = Long.numberOfTrailingZeros(empty & (empty - 1));
+            return solve2(own, opp, alpha, beta, passed, x1, x2);
+        }
+        if (empties == 1) {
+            return lastMove(own, opp, Long.numberOfTrailingZeros(empty));
+        }
+        return Long.bitCount(own) - Long.bitCount(opp);
+    }
+
+    /**
+     * Solves a position with 3 empty squares. A square alone in its region is
+     * tried first, the other two are usually worth less.
+     */
+    private int solve3(long own, long opp, int alpha, int beta, boolean passed) {
+        nodes++;
+        long empty = ~(own | opp);
+        int x1 = Long.numberOfTrailingZeros(empty);
+        empty &= empty - 1;
+        int x2 = Long.numberOfTrailingZeros(empty);
+        empty &= empty - 1;
+        int x3 = Long.numberOfTrailingZeros(empty);
+        // put the square alone in its region first
+        if (region(x1) == region(x2)) {
+            int t = x1;
+            x1 = x3;
+            x3 = t;
+        } else if (region(x1) == region(x3)) {
+            int t = x1;
+            x1 = x2;
+            x2 = t;
+        }
+
+        int best = -INFINITY;
+        for (int i = 0; i < 3; i++) {
+            int sq = x1;
+            int a = x2;
+            int b = x3;
+            if (i == 1) {
+                sq = x2;
+                a = x1;
+            } else if (i == 2) {
+                sq = x3;
+                a = x1;
+                b = x2;
+            }
+            if ((NEIGHBOURS[sq] & opp) == 0) {
+                continue;
+            }
+            long flips = BitBoard.flips(own, opp, sq);
+            if (flips == 0) {
+                continue;
+            }
+            int score = -solve2(opp & ~flips, own | flips | (1L << sq),
+                    -beta, -alpha, false, a, b);
+            if (score > best) {
+                best = score;
+                if (score > alpha) {
+                    alpha = score;
+                    if (alpha >= beta) {
+                        return best;
+                    }
+                }
+            }
+        }
+        if (best > -INFINITY) {
+            return best;
+        }
+        if (passed) {
+            return Long.bitCount(own) - Long.bitCount(opp);
+        }
+        return -solve3(opp, own, -beta, -alpha, true);
+    }
+
+    /**
+     * Solves a position with the 2 empty squares x1 and x2
+     */
+    private int solve2(long own, long opp, int alpha, int beta, boolean passed, int x1, int x2) {
+        nodes++;
+        int best = -INFINITY;
+        if ((NEIGHBOURS[x1] & opp) != 0) {
+            long flips = BitBoard.flips(own, opp, x1);
+            if (flips != 0) {
+                best = -lastMove(opp & ~flips, own | flips | (1L << x1), x2);
+                if (best >= beta) {
+                    return best;
+                }
+            }
+        }
+        if ((NEIGHBOURS[x2] & opp) != 0) {
+            long flips = BitBoard.flips(own, opp, x2);
+            if (flips != 0) {
+                int score = -lastMove(opp & ~flips, own | flips | (1L << x2), x1);
+                if (score > best) {
+                    best = score;
+                }
+            }
+        }
+        if (best > -INFINITY) {
+            return best;
+        }
+        if (passed) {
+            return Long.bitCount(own) - Long.bitCount(opp);
+        }
+        return -solve2(opp, own, -beta, -alpha, true, x1, x2);
+    }
+
+    /**
+     * Scores the position with one empty square left without generating moves
+     *
+     * @param sq - the empty square
+     */
+    private int lastMove(long own, long opp, int sq) {
+        nodes++;
+        int diff = Long.bitCount(own) - Long.bitCount(opp);
+        int flipped = lastFlips(own, sq);
+        if (flipped > 0) {
+            return diff + 2 * flipped + 1;
+        }
+        // the mover passes, the opponent may still take the square
+        flipped = lastFlips(opp, sq);
+        if (flipped > 0) {
+            return diff - 2 * flipped - 1;
+        }
+        return diff;
+    }
+
+    /**
+     * Counts the pieces a move on the last empty square flips. Every other
+     * square is full, so the mover's pieces on each line through the square
+     * are enough to look the count up in LINE_FLIPS. Squares of a diagonal
+     * that are off the board read as the opponent's, which flips nothing
+     * because the run reaches the end of the line.
+     */
+    private static int lastFlips(long own, int sq) {
+        int r = BitBoard.row(sq);
+        int c = BitBoard.col(sq);
+        int row = (int) (own >>> (8 * r)) & 0xFF;
+        int column = (int) ((((own >>> c) & COL_0) * BitBoard.COLUMN_TO_ROW) >>> 56);
+        int diagonal = (int) (((own & BitBoard.SQUARE_DIAGONALS[sq]) * COL_0) >>> 56);
+        int antiDiagonal = (int) (((own & BitBoard.SQUARE_ANTI_DIAGONALS[sq]) * COL_0) >>> 56);
+        return LINE_FLIPS[c][row] + LINE_FLIPS[r][column]
+                + LINE_FLIPS[c][diagonal] + LINE_FLIPS[c][antiDiagonal];
+    }
+
+    /**
+     * Fills the move list for a ply. The stored best move goes first, then
+     * moves that leave the opponent few replies, take corners, make edge
+     * pieces stable and are in regions with an odd number of empties.
+     *
+     * @return the number of moves
+     */
+    private int orderMoves(long own, long opp, long moves, int ply, int hashMove, int empties) {
+        long oddRegions = oddRegions(~(own | opp));
+        int[] list = moveLists[ply];
+        int[] scores = moveScores[ply];
+        long[] flipList = flipLists[ply];
+        int count = 0;
+        while (moves != 0) {
+            int sq = Long.numberOfTrailingZeros(moves);
+            long bit = moves & -moves;
+            moves &= moves - 1;
+            int score = 0;
+            if ((bit & oddRegions) != 0) {
+                score += 10;
+            }
+            if ((bit & CORNERS) != 0) {
+                score += 20;
+            }
+            long flips = BitBoard.flips(own, opp, sq);
+            long newOwn = own | flips | bit;
+            long replies = BitBoard.legalMoves(opp & ~flips, newOwn);
+            score -= MOBILITY_WEIGHT * (Long.bitCount(replies) + Long.bitCount(replies & CORNERS));
+            // empty squares next to our pieces are where the opponent's
+            // later moves come from
+            score -= POTENTIAL_MOBILITY_WEIGHT
+                    * Long.bitCount(neighbours(newOwn) & ~(newOwn | opp));
+            if (empties >= STABILITY_EMPTIES) {
+                score += STABILITY_WEIGHT * stableEdges(newOwn);
+            }
+            if (sq == hashMove) {
+                score = Integer.MAX_VALUE;
+            }
+            // insertion sort, lists are short
+            int i = count;
+            while (i > 0 && scores[i - 1] < score) {
+                list[i] = list[i - 1];
+                scores[i] = scores[i - 1];
+                flipList[i] = flipList[i - 1];
+                i--;
+            }
+            list[i] = sq;
+            scores[i] = score;
+            flipList[i] = flips;
+            count++;
+        }
+        return count;
+    }
+
+    /**
+     * returns the regions with an odd number of empty squares
+     */
+    private static long oddRegions(long empty) {
+        long odd = 0L;
+        for (long region : REGIONS) {
+            if ((Long.bitCount(empty & region) & 1) == 1) {
+                odd |= region;
+            }
+        }
+        return odd;
+    }
+
+    /**
+     * returns the squares next to any of the pieces
+     */
+    private static long neighbours(long pieces) {
+        long sideways = ((pieces << 1) & ~COL_0) | ((pieces >>> 1) & ~COL_7);
+        long row = pieces | sideways;
+        return sideways | (row << 8) | (row >>> 8);
+    }
+
+    /**
+     * returns which of the 4 regions a square is in
+     */
+    private static int region(int sq) {
+        return ((sq >>> 5) << 1) | ((sq >>> 2) & 1);
+    }
+
+    /**
+     * Counts the pieces on an edge joined to a corner of their own by a line
+     * of their own along the edge. Edge pieces can only be flipped along the
+     * edge, so these never can be. A cheap part of BitBoard.stableDiscs.
+     */
+    private static int stableEdges(long own) {
+        int top = (int) own & 0xFF;
+        int bottom = (int) (own >>> 56);
+        int left = (int) (((own & COL_0) * BitBoard.COLUMN_TO_ROW) >>> 56);
+        int right = (int) ((((own >>> 7) & COL_0) * BitBoard.COLUMN_TO_ROW) >>> 56);
+        // corners are on two edges
+        return CORNER_RUNS[top] + CORNER_RUNS[bottom] + CORNER_RUNS[left] + CORNER_RUNS[right]
+                - Long.bitCount(own & CORNERS);
+    }
+
+    /**
+     * Hashes the pieces of the mover and the opponent for the table. The
+     * value only depends on which pieces are whose, not which color is
+     * which, and a few multiplies are much cheaper than Zobrist.hashPieces
+     * visiting every piece.
+     */
+    private static long hash(long own, long opp) {
+        long h = own * 0x9E3779B97F4A7C15L ^ Long.rotateLeft(opp * 0xC2B2AE3D27D4EB4FL, 31);
+        h ^= h >>> 29;
+        h *= 0xBF58476D1CE4E5B9L;
+        return h ^ (h >>> 32);
+    }
+
+    /**
+     * Solves positions from seeded random games with a number of empty squares
+     * left and prints the time each one took.
+     *
+     * @param args - optional empty squares, 20 by default, and position count
+     */
+    public static void main(String[] args) {
+        int empties = 20;
+        int positions = 5;
+        if (args.length > 0) {
+            empties = Integer.parseInt(args[0]);
+        }
+        if (args.length > 1) {
+            positions = Integer.parseInt(args[1]);
+        }
+        Random random = new Random(120);
+        EndgameSolver solver = new EndgameSolver();
+        int solved = 0;
+        while (solved < positions) {
+            Othello game = new Othello();
+            while (!game.getGameOver() && 60 - game.getNumTurns() > empties) {
+                long moves = game.legalMoveMask();
+                if (moves == 0) {
+                    game.checkPass();
+                    continue;
+                }
+                int sq = RandomPlayer.pick(moves, random);
+                game.playTurn(BitBoard.row(sq), BitBoard.col(sq));
+                game.checkPass();
+            }
+            if (game.getGameOver()) {
+                continue;
+            }
+            System.out.println(empties + " empties: " + solver.solve(game));
+            solved++;
+        }
+    }
+}
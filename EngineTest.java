@@ -0,0 +1,708 @@
+package org.cis120.othello;
+
+import org.junit.jupiter.api.*;
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Random;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+// Tests for the computer players
+public class EngineTest {
+    // white to move, playing (0, 7) takes the last empty squares
+    private final int[][] lastMoveBoard = { { 2, 2, 2, 2, 2, 2, 1, 0 },
+        { 2, 2, 2, 2, 2, 2, 2, 2 },
+        { 2, 2, 2, 2, 2, 2, 2, 2 },
+        { 2, 2, 2, 2, 2, 2, 2, 2 },
+        { 2, 2, 2, 2, 2, 2, 2, 2 },
+        { 2, 2, 2, 2, 2, 2, 2, 2 },
+        { 2, 2, 2, 2, 2, 2, 2, 2 },
+        { 1, 2, 2, 2, 2, 2, 2, 2 } };
+
+    @Test
+    public void testEnginePicksValidMove() {
+        Othello o = new Othello();
+        AlphaBetaEngine engine = new AlphaBetaEngine(4, 0);
+        int move = engine.chooseMove(o);
+        assertTrue((o.legalMoveMask() & (1L << move)) != 0);
+        assertEquals(4, engine.getLastResult().getDepth());
+        assertTrue(engine.getLastResult().getNodes() > 0);
+    }
+
+    @Test
+    public void testEngineDoesNotChangeGame() {
+        Othello o = new Othello();
+        int[][] before = o.getGameBoard();
+        new AlphaBetaEngine(5, 0).chooseMove(o);
+        assertTrue(o.compareBoard(before));
+        assertTrue(o.getCurrentPlayer());
+    }
+
+    @Test
+    public void testEngineScoresFinishedGame() {
+        Othello o = new Othello();
+        o.setBoard(lastMoveBoard, false, false);
+        SearchResult result = new AlphaBetaEngine(10, 0).search(o);
+        assertEquals(7, result.getBestMove());
+        // white ends with 63 of the 64 pieces
+        assertEquals(AlphaBetaEngine.WIN_SCORE + 62, result.getScore());
+    }
+
+    @Test
+    public void testEngineNodeLimit() {
+        Othello o = new Othello();
+        AlphaBetaEngine engine = new AlphaBetaEngine(60, 0);
+        engine.setNodeLimit(5000);
+        int move = engine.chooseMove(o);
+        assertTrue((o.legalMoveMask() & (1L << move)) != 0);
+        assertTrue(engine.getLastResult().getNodes() <= 5000);
+    }
+
+    @Test
+    public void testNoMoveWhenGameOver() {
+        Othello o = new Othello();
+        o.setBoard(lastMoveBoard, false, false);
+        o.playTurn(0, 7);
+        o.checkPass();
+        o.checkPass();
+        assertTrue(o.getGameOver());
+        assertEquals(-1, new AlphaBetaEngine().chooseMove(o));
+    }
+
+    @Test
+    public void testTranspositionTableStoreAndProbe() {
+        TranspositionTable table = new TranspositionTable(4);
+        long hash = new Othello().getHash();
+        assertEquals(0L, table.probe(hash));
+        table.store(hash, 6, -1234, TranspositionTable.LOWER, 19);
+        long data = table.probe(hash);
+        assertEquals(-1234, TranspositionTable.score(data));
+        assertEquals(6, TranspositionTable.depth(data));
+        assertEquals(19, TranspositionTable.move(data));
+        assertEquals(TranspositionTable.LOWER, TranspositionTable.bound(data));
+        // another position in the same slot doesn't match
+        assertEquals(0L, table.probe(hash ^ (1L << 40)));
+    }
+
+    @Test
+    public void testTableKeepsDeeperEntry() {
+        TranspositionTable table = new TranspositionTable(4);
+        table.newSearch();
+        table.store(16L, 8, 5, TranspositionTable.EXACT, 1);
+        table.store(32L, 2, 7, TranspositionTable.EXACT, 2);
+        assertEquals(5, TranspositionTable.score(table.probe(16L)));
+        assertEquals(0L, table.probe(32L));
+        // entries from an older search can be replaced
+        table.newSearch();
+        table.store(32L, 2, 7, TranspositionTable.EXACT, 2);
+        assertEquals(7, TranspositionTable.score(table.probe(32L)));
+    }
+
+    @Test
+    public void testTableDoesNotChangeBestScore() {
+        Othello o = new Othello();
+        o.playTurn(2, 3);
+        AlphaBetaEngine withTable = new AlphaBetaEngine(6, 0);
+        AlphaBetaEngine noTable = new AlphaBetaEngine(6, 0);
+        noTable.setTranspositionTable(null);
+        assertEquals(noTable.search(o).getScore(), withTable.search(o).getScore());
+        assertTrue(withTable.getLastResult().getNodes() < noTable.getLastResult().getNodes());
+    }
+
+    @Test
+    public void testParallelSearch() {
+        Othello o = new Othello();
+        o.playTurn(2, 3);
+        AlphaBetaEngine parallel = new AlphaBetaEngine(7, 0);
+        parallel.setThreads(3);
+        SearchResult result = parallel.search(o);
+        assertTrue((o.legalMoveMask() & (1L << result.getBestMove())) != 0);
+        assertTrue(result.getDepth() >= 7);
+
+        o.setBoard(lastMoveBoard, false, false);
+        assertEquals(AlphaBetaEngine.WIN_SCORE + 62, parallel.search(o).getScore());
+        parallel.setThreads(1);
+    }
+
+    // plain minimax over every line, for checking the solver
+    private static int bruteForce(long own, long opp, boolean passed) {
+        long moves = BitBoard.legalMoves(own, opp);
+        if (moves == 0) {
+            if (passed) {
+                return Long.bitCount(own) - Long.bitCount(opp);
+            }
+            return -bruteForce(opp, own, true);
+        }
+        int best = -100;
+        for (int sq = 0; sq < 64; sq++) {
+            if ((moves & (1L << sq)) != 0) {
+                long flips = BitBoard.flips(own, opp, sq);
+                int score = -bruteForce(opp & ~flips, own | flips | (1L << sq), false);
+                best = Math.max(best, score);
+            }
+        }
+        return best;
+    }
+
+    @Test
+    public void testSolverScoresLastMove() {
+        Othello o = new Othello();
+        o.setBoard(lastMoveBoard, false, false);
+        SearchResult result = new EndgameSolver().solve(o);
+        assertEquals(7, result.getBestMove());
+        assertEquals(62, result.getScore());
+        assertEquals(1, result.getDepth());
+    }
+
+    @Test
+    public void testSolverMatchesBruteForce() {
+        Random random = new Random(8);
+        EndgameSolver solver = new EndgameSolver();
+        int solved = 0;
+        while (solved < 10) {
+            Othello o = new Othello();
+            while (!o.getGameOver() && o.getNumTurns() < 51) {
+                long moves = o.legalMoveMask();
+                if (moves == 0) {
+                    o.checkPass();
+                    continue;
+                }
+                int sq = RandomPlayer.pick(moves, random);
+                o.playTurn(BitBoard.row(sq), BitBoard.col(sq));
+                o.checkPass();
+            }
+            if (o.getGameOver()) {
+                continue;
+            }
+            long own = o.getWhitePieces();
+            long opp = o.getBlackPieces();
+            if (o.getCurrentPlayer()) {
+                own = o.getBlackPieces();
+                opp = o.getWhitePieces();
+            }
+            SearchResult result = solver.solve(o);
+            int expected = bruteForce(own, opp, false);
+            assertEquals(expected, result.getScore());
+            // the move it picks has to reach that score
+            long flips = BitBoard.flips(own, opp, result.getBestMove());
+            long bit = 1L << result.getBestMove();
+            assertEquals(expected, -bruteForce(opp & ~flips, own | flips | bit, false));
+            solved++;
+        }
+    }
+
+    /**
+     * returns one of the positions with 20 empty squares EndgameSolver.main
+     * solves, counting from 0
+     */
+    private static Othello twentyEmpties(int index) {
+        Random random = new Random(120);
+        int found = -1;
+        Othello o = null;
+        while (found < index) {
+            o = new Othello();
+            while (!o.getGameOver() && 60 - o.getNumTurns() > 20) {
+                long moves = o.legalMoveMask();
+                if (moves == 0) {
+                    o.checkPass();
+                    continue;
+                }
+                int sq = RandomPlayer.pick(moves, random);
+                o.playTurn(BitBoard.row(sq), BitBoard.col(sq));
+                o.checkPass();
+            }
+            if (!o.getGameOver()) {
+                found++;
+            }
+        }
+        return o;
+    }
+
+    @Test
+    public void testSolverTwentyEmpties() {
+        SearchResult result = new EndgameSolver().solve(twentyEmpties(0));
+        assertEquals(20, result.getDepth());
+        assertEquals(42, result.getScore());
+        // it takes about 7 million nodes, well under a second on one core.
+        // Many more means the move ordering or the cutoffs got worse, the
+        // time itself is checked by benchmarks/EndgameBenchmark
+        assertTrue(result.getNodes() < 10000000, "nodes: " + result.getNodes());
+    }
+
+    @Test
+    public void testSolverHardTwentyEmpties() {
+        // the slowest of the positions EndgameBenchmark times, about 25
+        // million nodes and 2 seconds on one core, still over the 1 second
+        // target
+        SearchResult result = new EndgameSolver().solve(twentyEmpties(3));
+        assertEquals(20, result.getDepth());
+        assertEquals(30, result.getScore());
+        assertTrue(result.getNodes() < 28000000, "nodes: " + result.getNodes());
+    }
+
+    @Test
+    public void testStableDiscs() {
+        // a black corner and the edge pieces next to it can't be flipped
+        long black = (1L << 0) | (1L << 1) | (1L << 8);
+        long white = (1L << 9) | (1L << 2);
+        assertEquals(black, BitBoard.stableDiscs(black, white));
+        assertEquals(0L, BitBoard.stableDiscs(white, black));
+    }
+
+    @Test
+    public void testSelfPlaySameResultsOnAnyThreads() {
+        SelfPlay match = new SelfPlay("random", "random", 0, 5);
+        SelfPlay.Tally one = match.run(300, 1);
+        SelfPlay.Tally three = match.run(300, 3);
+        assertEquals(300, one.getGames());
+        assertEquals(one.getWins(), three.getWins());
+        assertEquals(one.getDraws(), three.getDraws());
+        assertEquals(one.getAverageDiscDifference(), three.getAverageDiscDifference());
+    }
+
+    @Test
+    public void testSelfPlayEngineBeatsRandom() {
+        SelfPlay.Tally tally = new SelfPlay("engine:2", "random", 0, 5).run(20, 2);
+        assertEquals(20, tally.getGames());
+        assertTrue(tally.getWins() > tally.getLosses());
+    }
+
+    @Test
+    public void testSelfPlayUnknownPlayer() {
+        try {
+            new SelfPlay("random", "human", 0, 5);
+            fail("human isn't a computer player");
+        } catch (IllegalArgumentException e) {
+            // expected
+        }
+        try {
+            new SelfPlay("engine:x", "random", 0, 5);
+            fail("x isn't a depth");
+        } catch (IllegalArgumentException e) {
+            // expected
+        }
+    }
+
+    @Test
+    public void testOpeningBook() throws IOException {
+        OpeningBookBuilder builder = new OpeningBookBuilder(3);
+        builder.addAllPositions();
+        // the opening, 1 position after the first move since they're all the
+        // same turned, 3 after the second and 14 after the third
+        assertEquals(19, builder.size());
+        Path file = Files.createTempFile("opening", ".book");
+        try {
+            builder.build(file, 4, 2);
+            OpeningBook book = new OpeningBook(file);
+            assertEquals(19, book.size());
+
+            // every first move is the same move turned, the book answers
+            // each with a legal reply as good as a search finds
+            AlphaBetaEngine engine = new AlphaBetaEngine(4, 0);
+            Othello o = new Othello();
+            for (long m = o.legalMoveMask(); m != 0; m &= m - 1) {
+                int sq = Long.numberOfTrailingZeros(m);
+                Othello after = new Othello();
+                after.playTurn(BitBoard.row(sq), BitBoard.col(sq));
+                after.checkPass();
+                SearchResult booked = book.lookup(after);
+                assertNotNull(booked);
+                assertTrue((after.legalMoveMask() & (1L << booked.getBestMove())) != 0);
+                assertEquals(engine.search(after).getScore(), booked.getScore());
+                assertEquals(4, booked.getDepth());
+            }
+
+            // engines play book moves without searching
+            engine.setOpeningBook(book);
+            SearchResult result = engine.search(o);
+            assertEquals(0, result.getNodes());
+            assertEquals(book.lookup(o).getBestMove(), result.getBestMove());
+
+            // past the book the engine searches
+            for (int i = 0; i < 4; i++) {
+                int sq = engine.chooseMove(o);
+                o.playTurn(BitBoard.row(sq), BitBoard.col(sq));
+                o.checkPass();
+            }
+            assertNull(book.lookup(o));
+            assertTrue(engine.search(o).getNodes() > 0);
+        } finally {
+            Files.delete(file);
+        }
+    }
+
+    @Test
+    public void testOpeningBookFromGames() {
+        OpeningBookBuilder builder = new OpeningBookBuilder(10);
+        Othello o = new Othello();
+        Random random = new Random(8);
+        while (!o.getGameOver()) {
+            // after a pass the other player may have no move either,
+            // checking again ends the game
+            if (o.legalMoveMask() == 0) {
+                o.checkPass();
+                continue;
+            }
+            int sq = RandomPlayer.pick(o.legalMoveMask(), random);
+            o.playTurn(BitBoard.row(sq), BitBoard.col(sq));
+            o.checkPass();
+        }
+        builder.addGame(o.toRecord());
+        // the opening and the positions after the first 10 moves
+        assertEquals(11, builder.size());
+        builder.addGame(o.toRecord());
+        assertEquals(11, builder.size());
+    }
+
+    /**
+     * weights with a random value for every pattern arrangement
+     */
+    private static PatternWeights randomWeights(long seed) {
+        Random random = new Random(seed);
+        short[] weights = new short[PatternWeights.STAGES * PatternWeights.STAGE_SIZE];
+        for (int i = 0; i < weights.length; i++) {
+            weights[i] = (short) (random.nextInt(201) - 100);
+        }
+        return new PatternWeights(weights);
+    }
+
+    @Test
+    public void testPatternIndexesFollowMoves() {
+        // edges, 3x3 and 2x5 corners, rows 1 to 3 and diagonals
+        assertEquals(4 + 4 + 8 + 3 * 4 + 2 + 4 * 4, PatternWeights.PLACEMENTS);
+        PatternWeights weights = randomWeights(1);
+        PatternEvaluator moving = new PatternEvaluator(weights);
+        PatternEvaluator fresh = new PatternEvaluator(weights);
+        Othello o = new Othello();
+        moving.setPosition(o.getBlackPieces(), o.getWhitePieces());
+        int start = moving.evaluate(true);
+        Random random = new Random(2);
+        int[] squares = new int[60];
+        long[] flipped = new long[60];
+        boolean[] movers = new boolean[60];
+        int moves = 0;
+        while (!o.getGameOver()) {
+            if (o.legalMoveMask() == 0) {
+                // the game only ends on the second pass check
+                o.checkPass();
+                continue;
+            }
+            long before = o.getBlackPieces() | o.getWhitePieces();
+            boolean black = o.getCurrentPlayer();
+            long own = o.getWhitePieces();
+            if (black) {
+                own = o.getBlackPieces();
+            }
+            int sq = RandomPlayer.pick(o.legalMoveMask(), random);
+            o.playTurn(BitBoard.row(sq), BitBoard.col(sq));
+            o.checkPass();
+            long after = o.getWhitePieces();
+            if (black) {
+                after = o.getBlackPieces();
+            }
+            long flips = after & ~own & before;
+            moving.play(sq, flips, black);
+            squares[moves] = sq;
+            flipped[moves] = flips;
+            movers[moves] = black;
+            moves++;
+
+            fresh.setPosition(o.getBlackPieces(), o.getWhitePieces());
+            for (int q = 0; q < PatternWeights.PLACEMENTS; q++) {
+                assertEquals(fresh.getIndex(q), moving.getIndex(q));
+            }
+            assertEquals(fresh.evaluate(true), moving.evaluate(true));
+            assertEquals(-fresh.evaluate(true), moving.evaluate(false));
+        }
+        while (moves > 0) {
+            moves--;
+            moving.undo(squares[moves], flipped[moves], movers[moves]);
+        }
+        assertEquals(start, moving.evaluate(true));
+    }
+
+    @Test
+    public void testPatternTrainerLearns() throws IOException {
+        Path dir = Files.createTempDirectory("games");
+        Path file = dir.resolve("games.db");
+        try {
+            GameDatabase db = new GameDatabase(file);
+            Random random = new Random(3);
+            for (int i = 0; i < 300; i++) {
+                Othello o = new Othello();
+                while (!o.getGameOver()) {
+                    // after a pass the other player may have no move either,
+                    // checking again ends the game
+                    if (o.legalMoveMask() == 0) {
+                        o.checkPass();
+                        continue;
+                    }
+                    int sq = RandomPlayer.pick(o.legalMoveMask(), random);
+                    o.playTurn(BitBoard.row(sq), BitBoard.col(sq));
+                    o.checkPass();
+                }
+                db.append(o.toRecord());
+            }
+            PatternTrainer trainer = new PatternTrainer(0.002);
+            double untrained = trainer.error(db);
+            for (int pass = 0; pass < 5; pass++) {
+                trainer.train(db, random);
+            }
+            double trained = trainer.error(db);
+            assertTrue(trained < untrained / 2, trained + " vs " + untrained);
+
+            // the saved weights evaluate the same, and an engine can use them
+            PatternWeights weights = trainer.toWeights();
+            weights.save(dir.resolve("patterns.weights"));
+            PatternWeights loaded = PatternWeights.load(dir.resolve("patterns.weights"));
+            Othello o = new Othello();
+            o.playTurn(2, 3);
+            PatternEvaluator a = new PatternEvaluator(weights);
+            PatternEvaluator b = new PatternEvaluator(loaded);
+            a.setPosition(o.getBlackPieces(), o.getWhitePieces());
+            b.setPosition(o.getBlackPieces(), o.getWhitePieces());
+            assertEquals(a.evaluate(false), b.evaluate(false));
+            AlphaBetaEngine engine = new AlphaBetaEngine(4, 0);
+            engine.setPatternWeights(loaded);
+            int move = engine.chooseMove(o);
+            assertTrue((o.legalMoveMask() & (1L << move)) != 0);
+            db.close();
+        } finally {
+            for (File f : dir.toFile().listFiles()) {
+                f.delete();
+            }
+            Files.delete(dir);
+        }
+    }
+
+    @Test
+    public void testMctsPicksValidMove() {
+        Othello o = new Othello();
+        MctsEngine engine = new MctsEngine(0, 2000);
+        engine.setSeed(3);
+        int move = engine.chooseMove(o);
+        assertTrue((o.legalMoveMask() & (1L << move)) != 0);
+        assertEquals(2000, engine.getLastResult().getNodes());
+        assertTrue(engine.getNodeCount() > 1);
+
+        // the same seed plays the same move
+        MctsEngine again = new MctsEngine(0, 2000);
+        again.setSeed(3);
+        assertEquals(move, again.chooseMove(o));
+    }
+
+    @Test
+    public void testMctsFindsLastMove() {
+        Othello o = new Othello();
+        o.setBoard(lastMoveBoard, false, false);
+        MctsEngine engine = new MctsEngine(0, 100);
+        assertEquals(7, engine.search(o).getBestMove());
+        // every playout is a win
+        assertEquals(100, engine.getLastResult().getScore());
+
+        o.playTurn(0, 7);
+        o.checkPass();
+        o.checkPass();
+        assertEquals(-1, engine.chooseMove(o));
+    }
+
+    @Test
+    public void testMctsNodeCap() {
+        Othello o = new Othello();
+        MctsEngine engine = new MctsEngine(0, 5000);
+        engine.setMaxNodes(100);
+        int move = engine.chooseMove(o);
+        assertTrue((o.legalMoveMask() & (1L << move)) != 0);
+        assertTrue(engine.getNodeCount() <= 100);
+        assertEquals(5000, engine.getLastResult().getNodes());
+        // the full tree was pruned so it could keep growing
+        assertTrue(engine.getPrunes() > 0);
+        assertTrue(engine.getLastResult().getDepth() > 3);
+        try {
+            engine.setMaxNodes(10);
+            fail("the root's children don't fit");
+        } catch (IllegalArgumentException e) {
+            // expected
+        }
+    }
+
+    @Test
+    public void testMctsThreads() {
+        Othello o = new Othello();
+        o.playTurn(2, 3);
+        int[][] before = o.getGameBoard();
+        MctsEngine engine = new MctsEngine(0, 3000);
+        engine.setThreads(2);
+        int move = engine.chooseMove(o);
+        assertTrue((o.legalMoveMask() & (1L << move)) != 0);
+        assertEquals(3000, engine.getLastResult().getNodes());
+        assertTrue(o.compareBoard(before));
+        assertFalse(o.getCurrentPlayer());
+    }
+
+    @Test
+    public void testSelfPlayMctsBeatsRandom() {
+        SelfPlay.Tally tally = new SelfPlay("mcts:500", "random", 0, 5).run(10, 1);
+        assertEquals(10, tally.getGames());
+        assertTrue(tally.getWins() > tally.getLosses());
+    }
+
+    @Test
+    public void testEnginesSearchPositions() {
+        Position p = Position.start().play(19);
+        SearchResult alphaBeta = new AlphaBetaEngine(4, 0).search(p);
+        assertTrue(p.isLegal(alphaBeta.getBestMove()));
+        SearchResult mcts = new MctsEngine(0, 500).search(p);
+        assertTrue(p.isLegal(mcts.getBestMove()));
+        // the same answer as searching the game in that position
+        Othello game = new Othello(p);
+        assertEquals(alphaBeta.getBestMove(), new AlphaBetaEngine(4, 0).chooseMove(game));
+    }
+
+    @Test
+    public void testEngineStop() throws InterruptedException {
+        final AlphaBetaEngine engine = new AlphaBetaEngine(60, 0);
+        final SearchResult[] result = new SearchResult[1];
+        Thread search = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                result[0] = engine.search(Position.start());
+            }
+        });
+        search.start();
+        Thread.sleep(100);
+        // a stop before the search gets going still counts, the flag stays set
+        engine.stop();
+        search.join(60000);
+        assertFalse(search.isAlive());
+        // a 60 ply search from the start can't have finished on its own
+        assertTrue(result[0].getDepth() < 60);
+        assertTrue(Position.start().isLegal(result[0].getBestMove()));
+
+        engine.clearStop();
+        engine.setMaxDepth(6);
+        assertEquals(6, engine.search(Position.start()).getDepth());
+    }
+
+    /*
+     * An analyzer whose results are put in a queue
+     */
+    private static Analyzer queuedAnalyzer(
+            final BlockingQueue<int[]> results,
+            final BlockingQueue<Position> positions
+    ) {
+        return new Analyzer(new Analyzer.Listener() {
+            @Override
+            public void analyzed(Position position, int depth, int[] scores) {
+                positions.add(position);
+                results.add(scores);
+            }
+        }, null);
+    }
+
+    @Test
+    public void testAnalyzerScoresEveryMove() throws InterruptedException {
+        BlockingQueue<int[]> results =
+                new LinkedBlockingQueue<int[]>();
+        BlockingQueue<Position> positions =
+                new LinkedBlockingQueue<Position>();
+        Analyzer analyzer = queuedAnalyzer(results, positions);
+
+        // the 4 opening moves are the same move turned, so they score the same
+        analyzer.analyze(Position.start());
+        int[] scores = results.poll(10, TimeUnit.SECONDS);
+        assertEquals(Position.start(), positions.poll());
+        assertEquals(scores[19], scores[26]);
+        assertEquals(scores[19], scores[37]);
+        assertEquals(scores[19], scores[44]);
+
+        // near the end the scores become exact
+        Random random = new Random(25);
+        Position p = Position.start();
+        while (Long.bitCount(~(p.getBlack() | p.getWhite())) > 8 || p.legalMoves() == 0) {
+            if (p.isGameOver()) {
+                p = Position.start();
+            } else if (p.legalMoves() == 0) {
+                p = p.pass();
+            } else {
+                p = p.play(RandomPlayer.pick(p.legalMoves(), random));
+            }
+        }
+        analyzer.analyze(p);
+        int empties = Long.bitCount(~(p.getBlack() | p.getWhite()));
+        for (int depth = 2; depth <= empties; depth++) {
+            scores = results.poll(10, TimeUnit.SECONDS);
+            assertNotNull(scores);
+            // the start position may still finish a depth before it stops
+            if (!p.equals(positions.poll())) {
+                depth--;
+            }
+        }
+        EndgameSolver solver = new EndgameSolver();
+        for (long m = p.legalMoves(); m != 0; m &= m - 1) {
+            int sq = Long.numberOfTrailingZeros(m);
+            Position next = p.play(sq);
+            int exact;
+            if (next.legalMoves() == 0 && !next.isGameOver()) {
+                next = next.pass();
+                exact = solver.solve(next.getOwn(), next.getOpp()).getScore();
+            } else {
+                exact = -solver.solve(next.getOwn(), next.getOpp()).getScore();
+            }
+            int discs = 0;
+            if (scores[sq] > AlphaBetaEngine.WIN_SCORE) {
+                discs = scores[sq] - AlphaBetaEngine.WIN_SCORE;
+            } else if (scores[sq] < -AlphaBetaEngine.WIN_SCORE) {
+                discs = scores[sq] + AlphaBetaEngine.WIN_SCORE;
+            } else {
+                assertEquals(0, scores[sq]);
+            }
+            assertEquals(exact, discs);
+        }
+        analyzer.shutdown();
+    }
+
+    @Test
+    public void testAnalyzerRestarts() throws InterruptedException {
+        BlockingQueue<int[]> results =
+                new LinkedBlockingQueue<int[]>();
+        BlockingQueue<Position> positions =
+                new LinkedBlockingQueue<Position>();
+        Analyzer analyzer = queuedAnalyzer(results, positions);
+        analyzer.analyze(Position.start());
+        assertNotNull(results.poll(10, TimeUnit.SECONDS));
+
+        // a depth of the old position already being reported may still come,
+        // then the new position's results
+        Position next = Position.start().play(19);
+        analyzer.analyze(next);
+        Position analyzed = null;
+        while (!next.equals(analyzed)) {
+            assertNotNull(results.poll(60, TimeUnit.SECONDS));
+            analyzed = positions.poll();
+            assertTrue(next.equals(analyzed) || Position.start().equals(analyzed));
+        }
+        // the old analysis was dropped, every deeper result is the new one's
+        for (int i = 0; i < 2; i++) {
+            assertNotNull(results.poll(60, TimeUnit.SECONDS));
+            assertEquals(next, positions.poll());
+        }
+
+        // after a stop the next position still gets analysed
+        analyzer.stop();
+        Position last = next.play(18);
+        analyzer.analyze(last);
+        analyzed = null;
+        while (!last.equals(analyzed)) {
+            assertNotNull(results.poll(60, TimeUnit.SECONDS));
+            analyzed = positions.poll();
+            assertTrue(last.equals(analyzed) || next.equals(analyzed));
+        }
+        analyzer.shutdown();
+    }
+}
@@ -0,0 +1,383 @@
+package org.cis120.othello;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * This class is an append-only archive of finished games that can read any
+ * game by number without looking at the others.
+ *
+ * Games are stored as GameRecords back to back in a data file. A second
+ * index file holds one 8 byte data file offset per game, so game n's offset
+ * is always at the same place and reading it is one lookup. Both files are
+ * read through memory mappings. A single mapping can't be bigger than 2GB,
+ * so the files are mapped in segments. Data segments overlap by the longest
+ * record so a record crossing into the next segment can still be read from
+ * one mapping.
+ *
+ * Any number of threads can read while one appends. Records and their index
+ * entries are written before the game count goes up, so readers never see a
+ * game that isn't fully written.
+ *
+ * @author fdustin
+ *
+ */
+public class GameDatabase implements Closeable {
+    // each file starts with a magic number ending in the format version
+    private static final long DATA_MAGIC = 0x4F54484744415431L; // "OTHGDAT1"
+    private static final long INDEX_MAGIC = 0x4F54484749445831L; // "OTHGIDX1"
+    private static final int HEADER_BYTES = 8;
+    private static final int OFFSET_BYTES = 8;
+
+    // 1GB segments
+    private static final int DEFAULT_SEGMENT_BITS = 30;
+    private static final int WRITE_BUFFER_BYTES = 1 << 16;
+
+    private final FileChannel data;
+    private final FileChannel index;
+    private final int segmentBits;
+    private final Segments dataSegments;
+    private final Segments indexSegments;
+    // only the appending thread writes these, readers trust count
+    private volatile long count;
+    private volatile long dataEnd;
+
+    /**
+     * Opens a database, creating it if it doesn't exist
+     *
+     * @param file - the data file, the index goes next to it with .idx added
+     *             to the name
+     * @throws IOException              if the files can't be opened
+     * @throws IllegalArgumentException if the files aren't a game database
+     */
+    public GameDatabase(Path file) throws IOException {
+        this(file, DEFAULT_SEGMENT_BITS);
+    }
+
+    /**
+     * Opens a database with a segment size, small segments let tests cross
+     * segments without huge files
+     */
+    GameDatabase(Path file, int segmentBits) throws IOException {
+        if (segmentBits < 10 || segmentBits > 30) {
+            throw new IllegalArgumentException("Segment bits must be 10 to 30: " + segmentBits);
+        }
+        this.segmentBits = segmentBits;
+        Path indexFile = Paths.get(file.toString() + ".idx");
+        data = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE,
+                StandardOpenOption.CREATE);
+        try {
+            index = FileChannel.open(indexFile, StandardOpenOption.READ,
+                    StandardOpenOption.WRITE, StandardOpenOption.CREATE);
+        } catch (IOException e) {
+            data.close();
+            throw e;
+        }
+        try {
+            checkHeader(data, DATA_MAGIC);
+            checkHeader(index, INDEX_MAGIC);
+            // an index entry cut off by a crash is dropped, and data past the
+            // last indexed game is written over by the next append
+            long games = (index.size() - HEADER_BYTES) / OFFSET_BYTES;
+            index.truncate(HEADER_BYTES + games * OFFSET_BYTES);
+            long end = HEADER_BYTES;
+            if (games > 0) {
+                ByteBuffer last = ByteBuffer.allocate(OFFSET_BYTES);
+                readFully(index, last, HEADER_BYTES + (games - 1) * OFFSET_BYTES);
+                long offset = last.getLong(0);
+                ByteBuffer record = ByteBuffer.allocate(GameRecord.MAX_LENGTH);
+                record.limit((int) Math.min(GameRecord.MAX_LENGTH, data.size() - offset));
+                readFully(data, record, offset);
+                record.flip();
+                end = offset + GameRecord.encodedLength(record);
+            }
+            dataEnd = end;
+            count = games;
+        } catch (IOException e) {
+            close();
+            throw e;
+        } catch (RuntimeException e) {
+            close();
+            throw e;
+        }
+        dataSegments = new Segments(data, GameRecord.MAX_LENGTH);
+        indexSegments = new Segments(index, 0);
+    }
+
+    /**
+     * Writes the magic number to an empty file, or checks it's there
+     */
+    private static void checkHeader(FileChannel channel, long magic) throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES);
+        if (channel.size() == 0) {
+            header.putLong(magic);
+            header.flip();
+            writeFully(channel, header, 0);
+            return;
+        }
+        if (channel.size() < HEADER_BYTES) {
+            throw new IllegalArgumentException("Not a game database");
+        }
+        readFully(channel, header, 0);
+        if (header.getLong(0) != magic) {
+            throw new IllegalArgumentException("Not a game database");
+        }
+    }
+
+    /**
+     * returns the number of games stored
+     */
+    public long size() {
+        return count;
+    }
+
+    /**
+     * Adds a game to the end of the database
+     *
+     * @param game - the game to add
+     * @return the game's number
+     * @throws IOException if the game can't be written
+     */
+    public long append(GameRecord game) throws IOException {
+        return appendAll(Collections.singletonList(game));
+    }
+
+    /**
+     * Adds games to the end of the database, writing them in large blocks
+     *
+     * @param games - the games to add in order
+     * @return the number of the first game added
+     * @throws IOException if the games can't be written
+     */
+    public synchronized long appendAll(Iterable<GameRecord> games) throws IOException {
+        long first = count;
+        ByteBuffer records = ByteBuffer.allocate(WRITE_BUFFER_BYTES);
+        ByteBuffer offsets = ByteBuffer.allocate(WRITE_BUFFER_BYTES);
+        long added = 0;
+        for (GameRecord game : games) {
+            if (records.remaining() < GameRecord.MAX_LENGTH
+                    || offsets.remaining() < OFFSET_BYTES) {
+                flush(records, offsets, added);
+                added = 0;
+            }
+            // flush moves dataEnd past the records already written
+            offsets.putLong(dataEnd + records.position());
+            game.encode(records);
+            added++;
+        }
+        flush(records, offsets, added);
+        return first;
+    }
+
+    /**
+     * Writes buffered records and then their index entries, and only then
+     * lets readers see them
+     */
+    private void flush(ByteBuffer records, ByteBuffer offsets, long added) throws IOException {
+        records.flip();
+        offsets.flip();
+        long end = dataEnd + records.remaining();
+        writeFully(data, records, dataEnd);
+        writeFully(index, offsets, HEADER_BYTES + count * OFFSET_BYTES);
+        dataEnd = end;
+        count += added;
+        records.clear();
+        offsets.clear();
+    }
+
+    /**
+     * Reads a game. Safe to call from any number of threads at once.
+     *
+     * @param n - the game's number, 0 is the first game added
+     * @return the game
+     * @throws IndexOutOfBoundsException if there is no game n
+     * @throws IOException               if the files can't be mapped
+     * @throws IllegalArgumentException  if the record is damaged
+     */
+    public GameRecord read(long n) throws IOException {
+        long games = count;
+        if (n < 0 || n >= games) {
+            throw new IndexOutOfBoundsException("Game " + n + " of " + games);
+        }
+        long entry = HEADER_BYTES + n * OFFSET_BYTES;
+        ByteBuffer offsets = indexSegments.slice(entry, OFFSET_BYTES,
+                HEADER_BYTES + games * OFFSET_BYTES);
+        long offset = offsets.getLong(offsets.position());
+        // a record is at most MAX_LENGTH long, the data end may come first
+        long end = dataEnd;
+        int length = (int) Math.min(GameRecord.MAX_LENGTH, end - offset);
+        return GameRecord.decode(dataSegments.slice(offset, length, end));
+    }
+
+    /**
+     * Makes sure everything appended is on disk
+     */
+    public synchronized void force() throws IOException {
+        data.force(false);
+        index.force(false);
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            data.close();
+        } finally {
+            index.close();
+        }
+    }
+
+    private static void readFully(FileChannel channel, ByteBuffer buffer, long position)
+            throws IOException {
+        while (buffer.hasRemaining()) {
+            int read = channel.read(buffer, position);
+            if (read < 0) {
+                throw new IllegalArgumentException("Game database cut off");
+            }
+            position += read;
+        }
+    }
+
+    private static void writeFully(FileChannel channel, ByteBuffer buffer, long position)
+            throws IOException {
+        while (buffer.hasRemaining()) {
+            position += channel.write(buffer, position);
+        }
+    }
+
+    /**
+     * The read-only mappings of one file, one per segment. A segment is
+     * mapped up to the end of the file when first read and mapped again if a
+     * read goes past what was mapped, so appends show up.
+     */
+    private class Segments {
+        private final FileChannel channel;
+        private final int overlap;
+        private volatile MappedByteBuffer[] mapped = new MappedByteBuffer[0];
+
+        Segments(FileChannel channel, int overlap) {
+            this.channel = channel;
+            this.overlap = overlap;
+        }
+
+        /**
+         * Finds bytes in the mappings
+         *
+         * @param position - file position of the first byte
+         * @param length   - number of bytes needed, they can't span more than
+         *                 the overlap past the segment start
+         * @param fileEnd  - end of the written part of the file
+         * @return a buffer of its own positioned at the first byte
+         */
+        ByteBuffer slice(long position, int length, long fileEnd) throws IOException {
+            int segment = (int) (position >>> segmentBits);
+            long segmentStart = (long) segment << segmentBits;
+            int start = (int) (position - segmentStart);
+            MappedByteBuffer[] current = mapped;
+            MappedByteBuffer buffer = null;
+            if (segment < current.length) {
+                buffer = current[segment];
+            }
+            if (buffer == null || buffer.capacity() < start + length) {
+                buffer = map(segment, fileEnd);
+            }
+            ByteBuffer view = buffer.duplicate();
+            view.position(start);
+            return view;
+        }
+
+        private synchronized MappedByteBuffer map(int segment, long fileEnd) throws IOException {
+            long segmentStart = (long) segment << segmentBits;
+            long size = Math.min((1L << segmentBits) + overlap, fileEnd - segmentStart);
+            MappedByteBuffer[] current = mapped;
+            if (segment < current.length && current[segment] != null
+                    && current[segment].capacity() >= size) {
+                // another reader mapped it first
+                return current[segment];
+            }
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, segmentStart,
+                    size);
+            MappedByteBuffer[] grown = current;
+            if (segment >= current.length) {
+                grown = new MappedByteBuffer[segment + 1];
+                System.arraycopy(current, 0, grown, 0, current.length);
+            } else {
+                grown = current.clone();
+            }
+            grown[segment] = buffer;
+            mapped = grown;
+            return buffer;
+        }
+    }
+
+    /**
+     * Appends seeded random games to a database and times appending them and
+     * reading them back in random order.
+     *
+     * @param args - optional database file, games.db by default, and number
+     *             of games, 1000000 by default
+     */
+    public static void main(String[] args) throws IOException {
+        Path file = Paths.get("games.db");
+        int games = 1000000;
+        if (args.length > 0) {
+            file = Paths.get(args[0]);
+        }
+        if (args.length > 1) {
+            games = Integer.parseInt(args[1]);
+        }
+        Random random = new Random(120);
+        List<GameRecord> batch = new ArrayList<GameRecord>();
+        Othello game = new Othello();
+        GameDatabase db = new GameDatabase(file);
+        try {
+            long first = db.size();
+            long start = System.nanoTime();
+            for (int i = 0; i < games; i++) {
+                game.reset();
+                while (!game.getGameOver()) {
+                    // after a pass the other player may have no move either,
+                    // checking again ends the game
+                    if (game.legalMoveMask() == 0) {
+                        game.checkPass();
+                        continue;
+                    }
+                    int sq = RandomPlayer.pick(game.legalMoveMask(), random);
+                    game.playTurn(BitBoard.row(sq), BitBoard.col(sq));
+                    game.checkPass();
+                }
+                batch.add(game.toRecord());
+                if (batch.size() == 10000) {
+                    db.appendAll(batch);
+                    batch.clear();
+                }
+            }
+            db.appendAll(batch);
+            db.force();
+            double seconds = (System.nanoTime() - start) / 1e9;
+            System.out.println(String.format("played and appended %d games in %.2fs, %d games "
+                    + "stored, %d bytes", games, seconds, db.size(), Files.size(file)));
+
+            start = System.nanoTime();
+            long moves = 0;
+            for (int i = 0; i < games; i++) {
+                moves += db.read(first + random.nextInt(games)).getMoveCount();
+            }
+            seconds = (System.nanoTime() - start) / 1e9;
+            System.out.println(String.format("read %d random games (%d moves) in %.2fs, %.0f "
+                    + "games/s", games, moves, seconds, games / seconds));
+        } finally {
+            db.close();
+        }
+    }
+}
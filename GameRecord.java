@@ -0,0 +1,626 @@
+package org.cis120.othello;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.zip.CRC32;
+
+/**
+ * This class stores a whole game as its starting position and the squares
+ * played, one byte per move. Boards aren't stored, they are rebuilt by
+ * replaying the moves. Passes aren't stored either since a player passes
+ * exactly when they have no move. For long replays a record can also carry
+ * checkpoints, full boards every few moves, so loading can start from the
+ * last one instead of the first move.
+ *
+ * Encoded, a record is:
+ *   version             1 byte
+ *   flags               1 byte, CUSTOM_START, WHITE_TO_MOVE, PASS_OCCURRED
+ *   black, white        8 bytes each   } only with CUSTOM_START, otherwise
+ *   turn number         1 byte         } the game starts from the opening
+ *   move count          1 byte
+ *   moves               1 byte each, square index r * 8 + c
+ *   checkpoint count    1 byte         } only with CHECKPOINTS, each
+ *   checkpoints         18 bytes each  } checkpoint is the moves played,
+ *                                      } flags, black and white
+ *   CRC32               4 bytes, of everything before it
+ * so a 60 move game from the opening takes 67 bytes.
+ *
+ * @author fdustin
+ *
+ */
+public final class GameRecord {
+    public static final int VERSION = 1;
+
+    // the file format is a magic number and then records back to back
+    private static final int FILE_MAGIC = 0x4F544852; // "OTHR"
+
+    // flag bits
+    private static final int CUSTOM_START = 1;
+    private static final int WHITE_TO_MOVE = 2;
+    private static final int PASS_OCCURRED = 4;
+    private static final int CHECKPOINTS = 8;
+
+    private static final int CHECKSUM_BYTES = 4;
+    private static final int CHECKPOINT_BYTES = 18;
+    // the longest record possible, a custom start, a move on every square
+    // and a checkpoint after every move
+    static final int MAX_LENGTH = 2 + 17 + 1 + 64 + 1 + 64 * CHECKPOINT_BYTES + CHECKSUM_BYTES;
+    private static final int IO_BUFFER_BYTES = 1 << 16;
+
+    private static final long START_BLACK = (1L << 28) | (1L << 35);
+    private static final long START_WHITE = (1L << 27) | (1L << 36);
+
+    private final long black;
+    private final long white;
+    private final boolean blackToMove;
+    private final boolean passOccurred;
+    private final int startTurn;
+    private final byte[] moves;
+    // checkpoint i is the position after checkpointMoves[i] moves, with the
+    // flags of the player to move then
+    private final byte[] checkpointMoves;
+    private final byte[] checkpointFlags;
+    private final long[] checkpointBlack;
+    private final long[] checkpointWhite;
+
+    /**
+     * Creates a record of a game from the opening
+     *
+     * @param moves - squares played in order
+     */
+    public GameRecord(byte[] moves) {
+        this(START_BLACK, START_WHITE, true, false, 0, moves);
+    }
+
+    /**
+     * Creates a record of a game from any position
+     *
+     * @param black        - black pieces at the start
+     * @param white        - white pieces at the start
+     * @param blackToMove  - true if black moves first
+     * @param passOccurred - true if the turn before the start was a pass
+     * @param startTurn    - turn number of the start position
+     * @param moves        - squares played in order
+     * @throws IllegalArgumentException if the values don't fit the format
+     */
+    public GameRecord(
+            long black, long white, boolean blackToMove, boolean passOccurred,
+            int startTurn, byte[] moves
+    ) {
+        if ((black & white) != 0) {
+            throw new IllegalArgumentException("Black and white pieces overlap");
+        }
+        if (startTurn < 0 || startTurn > 255 || moves.length > BitBoard.SQUARES) {
+            throw new IllegalArgumentException("Game too long: turn " + startTurn + " with "
+                    + moves.length + " moves");
+        }
+        for (byte sq : moves) {
+            if (sq < 0 || sq >= BitBoard.SQUARES) {
+                throw new IllegalArgumentException("Bad square: " + sq);
+            }
+        }
+        this.black = black;
+        this.white = white;
+        this.blackToMove = blackToMove;
+        this.passOccurred = passOccurred;
+        this.startTurn = startTurn;
+        this.moves = Arrays.copyOf(moves, moves.length);
+        this.checkpointMoves = new byte[0];
+        this.checkpointFlags = new byte[0];
+        this.checkpointBlack = new long[0];
+        this.checkpointWhite = new long[0];
+    }
+
+    /**
+     * Copies a record with new checkpoints, the arrays aren't copied again
+     */
+    private GameRecord(
+            GameRecord game, byte[] checkpointMoves, byte[] checkpointFlags,
+            long[] checkpointBlack, long[] checkpointWhite
+    ) {
+        this.black = game.black;
+        this.white = game.white;
+        this.blackToMove = game.blackToMove;
+        this.passOccurred = game.passOccurred;
+        this.startTurn = game.startTurn;
+        this.moves = game.moves;
+        this.checkpointMoves = checkpointMoves;
+        this.checkpointFlags = checkpointFlags;
+        this.checkpointBlack = checkpointBlack;
+        this.checkpointWhite = checkpointWhite;
+    }
+
+    /**
+     * Replays the game and records a checkpoint every interval moves
+     *
+     * @param interval - moves between checkpoints
+     * @return a copy of this record with the checkpoints, any old ones are
+     *         replaced
+     * @throws IllegalArgumentException if a move isn't legal
+     */
+    public GameRecord withCheckpoints(int interval) {
+        if (interval < 1) {
+            throw new IllegalArgumentException("Checkpoint interval must be positive: "
+                    + interval);
+        }
+        int count = moves.length / interval;
+        byte[] cpMoves = new byte[count];
+        byte[] cpFlags = new byte[count];
+        long[] cpBlack = new long[count];
+        long[] cpWhite = new long[count];
+
+        BitBoard board = new BitBoard(black, white);
+        boolean blackMoves = blackToMove;
+        int next = 0;
+        for (int i = 0; i < moves.length; i++) {
+            // a player with no moves passes
+            if (board.legalMoves(blackMoves) == 0) {
+                blackMoves = !blackMoves;
+            }
+            if ((board.legalMoves(blackMoves) & (1L << moves[i])) == 0) {
+                throw new IllegalArgumentException("Illegal move in record: " + moves[i]);
+            }
+            board.play(moves[i], blackMoves);
+            boolean mover = blackMoves;
+            blackMoves = !blackMoves;
+            if ((i + 1) % interval == 0) {
+                // save the turn as Othello would see it, after the pass check
+                int flags = 0;
+                if (board.legalMoves(blackMoves) == 0) {
+                    flags |= PASS_OCCURRED;
+                    if (!mover) {
+                        flags |= WHITE_TO_MOVE;
+                    }
+                } else if (!blackMoves) {
+                    flags |= WHITE_TO_MOVE;
+                }
+                cpMoves[next] = (byte) (i + 1);
+                cpFlags[next] = (byte) flags;
+                cpBlack[next] = board.getBlack();
+                cpWhite[next] = board.getWhite();
+                next++;
+            }
+        }
+        return new GameRecord(this, cpMoves, cpFlags, cpBlack, cpWhite);
+    }
+
+    /**
+     * Turns or reflects the whole game, its start, moves and checkpoints
+     *
+     * @param t - the Symmetry transform
+     * @return the transformed record, a legal game if this one is
+     */
+    public GameRecord transform(int t) {
+        byte[] turnedMoves = new byte[moves.length];
+        for (int i = 0; i < moves.length; i++) {
+            turnedMoves[i] = (byte) Symmetry.transformSquare(moves[i], t);
+        }
+        GameRecord turned = new GameRecord(Symmetry.transform(black, t),
+                Symmetry.transform(white, t), blackToMove, passOccurred, startTurn, turnedMoves);
+        long[] cpBlack = new long[checkpointBlack.length];
+        long[] cpWhite = new long[checkpointWhite.length];
+        for (int i = 0; i < cpBlack.length; i++) {
+            cpBlack[i] = Symmetry.transform(checkpointBlack[i], t);
+            cpWhite[i] = Symmetry.transform(checkpointWhite[i], t);
+        }
+        return new GameRecord(turned, checkpointMoves, checkpointFlags, cpBlack, cpWhite);
+    }
+
+    /**
+     * Finds the canonical version of the game, which starts from the
+     * canonical form of its start position and, of the transforms that give
+     * it, takes the one with the smallest squares for the earliest moves. A
+     * game and its 7 turned and reflected versions have the same canonical
+     * version, so storing games that way makes repeats easy to find.
+     *
+     * @return the canonical record, this one if it already is
+     */
+    public GameRecord canonical() {
+        int first = Symmetry.canonicalTransform(black, white);
+        long startBlack = Symmetry.transform(black, first);
+        long startWhite = Symmetry.transform(white, first);
+        int best = first;
+        for (int t = 0; t < Symmetry.COUNT; t++) {
+            if (t == best || Symmetry.transform(black, t) != startBlack
+                    || Symmetry.transform(white, t) != startWhite) {
+                continue;
+            }
+            for (int i = 0; i < moves.length; i++) {
+                int sq = Symmetry.transformSquare(moves[i], t);
+                int bestSq = Symmetry.transformSquare(moves[i], best);
+                if (sq != bestSq) {
+                    if (sq < bestSq) {
+                        best = t;
+                    }
+                    break;
+                }
+            }
+        }
+        if (best == Symmetry.IDENTITY) {
+            return this;
+        }
+        return transform(best);
+    }
+
+    public long getBlack() {
+        return black;
+    }
+
+    public long getWhite() {
+        return white;
+    }
+
+    public boolean getBlackToMove() {
+        return blackToMove;
+    }
+
+    public boolean getPassOccurred() {
+        return passOccurred;
+    }
+
+    public int getStartTurn() {
+        return startTurn;
+    }
+
+    public int getMoveCount() {
+        return moves.length;
+    }
+
+    /**
+     * returns the square index of move i, 0 is the first move
+     */
+    public int getMove(int i) {
+        return moves[i];
+    }
+
+    public int getCheckpointCount() {
+        return checkpointMoves.length;
+    }
+
+    /**
+     * returns the number of moves played before checkpoint i
+     */
+    public int getCheckpointMove(int i) {
+        return checkpointMoves[i] & 0xFF;
+    }
+
+    public long getCheckpointBlack(int i) {
+        return checkpointBlack[i];
+    }
+
+    public long getCheckpointWhite(int i) {
+        return checkpointWhite[i];
+    }
+
+    /**
+     * returns true if black is to move at checkpoint i
+     */
+    public boolean getCheckpointBlackToMove(int i) {
+        return (checkpointFlags[i] & WHITE_TO_MOVE) == 0;
+    }
+
+    /**
+     * returns true if the player to move at checkpoint i got the turn because
+     * the other player passed
+     */
+    public boolean getCheckpointPassOccurred(int i) {
+        return (checkpointFlags[i] & PASS_OCCURRED) != 0;
+    }
+
+    /**
+     * returns true if the game starts from the standard opening position
+     */
+    public boolean isFromOpening() {
+        return black == START_BLACK && white == START_WHITE && blackToMove && !passOccurred
+                && startTurn == 0;
+    }
+
+    /**
+     * returns the number of bytes encode writes
+     */
+    public int getEncodedLength() {
+        int length = 3 + moves.length + CHECKSUM_BYTES;
+        if (!isFromOpening()) {
+            length += 17;
+        }
+        if (checkpointMoves.length > 0) {
+            length += 1 + checkpointMoves.length * CHECKPOINT_BYTES;
+        }
+        return length;
+    }
+
+    /**
+     * Writes the record at the buffer's position and moves the position past
+     * it
+     *
+     * @param out - buffer with at least getEncodedLength() bytes remaining
+     */
+    public void encode(ByteBuffer out) {
+        int start = out.position();
+        int flags = 0;
+        if (!isFromOpening()) {
+            flags |= CUSTOM_START;
+        }
+        if (!blackToMove) {
+            flags |= WHITE_TO_MOVE;
+        }
+        if (passOccurred) {
+            flags |= PASS_OCCURRED;
+        }
+        if (checkpointMoves.length > 0) {
+            flags |= CHECKPOINTS;
+        }
+        out.put((byte) VERSION);
+        out.put((byte) flags);
+        if ((flags & CUSTOM_START) != 0) {
+            out.putLong(black);
+            out.putLong(white);
+            out.put((byte) startTurn);
+        }
+        out.put((byte) moves.length);
+        out.put(moves);
+        if ((flags & CHECKPOINTS) != 0) {
+            out.put((byte) checkpointMoves.length);
+            for (int i = 0; i < checkpointMoves.length; i++) {
+                out.put(checkpointMoves[i]);
+                out.put(checkpointFlags[i]);
+                out.putLong(checkpointBlack[i]);
+                out.putLong(checkpointWhite[i]);
+            }
+        }
+        out.putInt(checksum(out, start, out.position()));
+    }
+
+    /**
+     * returns the record encoded in a new array
+     */
+    public byte[] toBytes() {
+        ByteBuffer out = ByteBuffer.allocate(getEncodedLength());
+        encode(out);
+        return out.array();
+    }
+
+    /**
+     * Reads a record at the buffer's position and moves the position past it
+     *
+     * @param in - buffer holding an encoded record
+     * @return the record
+     * @throws IllegalArgumentException if the record is cut off, has an
+     *                                  unknown version or fails its checksum
+     */
+    public static GameRecord decode(ByteBuffer in) {
+        int start = in.position();
+        int length = encodedLength(in);
+        if (length < 0 || length > in.remaining()) {
+            throw new IllegalArgumentException("Record cut off");
+        }
+        int end = start + length - CHECKSUM_BYTES;
+        if (checksum(in, start, end) != in.getInt(end)) {
+            throw new IllegalArgumentException("Record checksum doesn't match");
+        }
+
+        in.get();
+        int flags = in.get();
+        long b = START_BLACK;
+        long w = START_WHITE;
+        int turn = 0;
+        if ((flags & CUSTOM_START) != 0) {
+            b = in.getLong();
+            w = in.getLong();
+            turn = in.get() & 0xFF;
+        }
+        byte[] squares = new byte[in.get() & 0xFF];
+        in.get(squares);
+        GameRecord game = new GameRecord(b, w, (flags & WHITE_TO_MOVE) == 0,
+                (flags & PASS_OCCURRED) != 0, turn, squares);
+        if ((flags & CHECKPOINTS) != 0) {
+            int count = in.get() & 0xFF;
+            byte[] cpMoves = new byte[count];
+            byte[] cpFlags = new byte[count];
+            long[] cpBlack = new long[count];
+            long[] cpWhite = new long[count];
+            for (int i = 0; i < count; i++) {
+                cpMoves[i] = in.get();
+                cpFlags[i] = in.get();
+                cpBlack[i] = in.getLong();
+                cpWhite[i] = in.getLong();
+                if ((cpMoves[i] & 0xFF) > squares.length || (cpBlack[i] & cpWhite[i]) != 0) {
+                    throw new IllegalArgumentException("Bad checkpoint");
+                }
+            }
+            game = new GameRecord(game, cpMoves, cpFlags, cpBlack, cpWhite);
+        }
+        in.position(end + CHECKSUM_BYTES);
+        return game;
+    }
+
+    /**
+     * Works out the length of the record at the buffer's position without
+     * moving the position
+     *
+     * @return the length in bytes, -1 if not enough of the record is in the
+     *         buffer to tell
+     * @throws IllegalArgumentException if the version is unknown
+     */
+    static int encodedLength(ByteBuffer in) {
+        int start = in.position();
+        if (in.remaining() < 2) {
+            return -1;
+        }
+        int version = in.get(start);
+        if (version != VERSION) {
+            throw new IllegalArgumentException("Unknown record version: " + version);
+        }
+        int flags = in.get(start + 1);
+        int countAt = start + 2;
+        if ((flags & CUSTOM_START) != 0) {
+            countAt += 17;
+        }
+        if (in.limit() <= countAt) {
+            return -1;
+        }
+        int length = countAt - start + 1 + (in.get(countAt) & 0xFF) + CHECKSUM_BYTES;
+        if ((flags & CHECKPOINTS) != 0) {
+            int checkpointsAt = countAt + 1 + (in.get(countAt) & 0xFF);
+            if (in.limit() <= checkpointsAt) {
+                return -1;
+            }
+            length += 1 + (in.get(checkpointsAt) & 0xFF) * CHECKPOINT_BYTES;
+        }
+        return length;
+    }
+
+    private static int checksum(ByteBuffer buffer, int start, int end) {
+        ByteBuffer bytes = buffer.duplicate();
+        bytes.limit(end);
+        bytes.position(start);
+        CRC32 crc = new CRC32();
+        crc.update(bytes);
+        return (int) crc.getValue();
+    }
+
+    /**
+     * Writes games to a file, replacing it. The games are written to a temp
+     * file next to it which is then renamed over it, so the file is always
+     * either the old games or all of the new ones, never cut off part way.
+     *
+     * @param file  - file to write
+     * @param games - games to write in order
+     * @throws IOException if the file can't be written, the old file is left
+     *                     as it was
+     */
+    public static void writeGames(Path file, Iterable<GameRecord> games) throws IOException {
+        Path dir = file.toAbsolutePath().getParent();
+        Path temp = Files.createTempFile(dir, file.getFileName().toString(), ".tmp");
+        boolean moved = false;
+        try {
+            FileChannel channel = FileChannel.open(temp, StandardOpenOption.WRITE);
+            try {
+                ByteBuffer buffer = ByteBuffer.allocateDirect(IO_BUFFER_BYTES);
+                buffer.putInt(FILE_MAGIC);
+                for (GameRecord game : games) {
+                    if (buffer.remaining() < MAX_LENGTH) {
+                        drain(channel, buffer);
+                    }
+                    game.encode(buffer);
+                }
+                drain(channel, buffer);
+                // the bytes have to be on disk before the rename is
+                channel.force(false);
+            } finally {
+                channel.close();
+            }
+            try {
+                Files.move(temp, file, StandardCopyOption.ATOMIC_MOVE,
+                        StandardCopyOption.REPLACE_EXISTING);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING);
+            }
+            moved = true;
+        } finally {
+            if (!moved) {
+                Files.deleteIfExists(temp);
+            }
+        }
+    }
+
+    private static void drain(FileChannel channel, ByteBuffer buffer) throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        buffer.clear();
+    }
+
+    /**
+     * Reads every game in a file written by writeGames
+     *
+     * @param file - file to read
+     * @return the games in order
+     * @throws IOException              if the file can't be read
+     * @throws IllegalArgumentException if the file isn't a game file or a
+     *                                  record is damaged
+     */
+    public static List<GameRecord> readGames(Path file) throws IOException {
+        List<GameRecord> games = new ArrayList<GameRecord>();
+        FileChannel channel = FileChannel.open(file, StandardOpenOption.READ);
+        try {
+            ByteBuffer buffer = ByteBuffer.allocateDirect(IO_BUFFER_BYTES);
+            boolean eof = fill(channel, buffer);
+            if (buffer.remaining() < 4 || buffer.getInt() != FILE_MAGIC) {
+                throw new IllegalArgumentException("Not a game record file");
+            }
+            while (true) {
+                int length = encodedLength(buffer);
+                if (length < 0 || length > buffer.remaining()) {
+                    // the next record runs past the buffer, read more
+                    if (eof) {
+                        break;
+                    }
+                    buffer.compact();
+                    eof = fill(channel, buffer);
+                    continue;
+                }
+                games.add(decode(buffer));
+            }
+            if (buffer.hasRemaining()) {
+                throw new IllegalArgumentException("Last record cut off");
+            }
+        } finally {
+            channel.close();
+        }
+        return games;
+    }
+
+    /**
+     * Reads until the buffer is full or the file ends, then flips the buffer
+     * for reading
+     *
+     * @return true if the file ended
+     */
+    private static boolean fill(FileChannel channel, ByteBuffer buffer) throws IOException {
+        boolean eof = false;
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer) < 0) {
+                eof = true;
+                break;
+            }
+        }
+        buffer.flip();
+        return eof;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof GameRecord)) {
+            return false;
+        }
+        GameRecord that = (GameRecord) o;
+        return this.black == that.black && this.white == that.white
+                && this.blackToMove == that.blackToMove
+                && this.passOccurred == that.passOccurred
+                && this.startTurn == that.startTurn
+                && Arrays.equals(this.moves, that.moves)
+                && Arrays.equals(this.checkpointMoves, that.checkpointMoves)
+                && Arrays.equals(this.checkpointFlags, that.checkpointFlags)
+                && Arrays.equals(this.checkpointBlack, that.checkpointBlack)
+                && Arrays.equals(this.checkpointWhite, that.checkpointWhite);
+    }
+
+    @Override
+    public int hashCode() {
+        return Long.hashCode(black * 31 + white) * 31 + Arrays.hashCode(moves);
+    }
+}
@@ -0,0 +1,623 @@
+package org.cis120.othello;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * This class is a computer player that picks moves with Monte Carlo tree
+ * search. Each playout walks down the tree picking children by UCT, which
+ * balances a child's win rate against how rarely it has been tried, adds a
+ * level to the tree where it stops, plays random moves to the end of the
+ * game from there on two masks, and counts the result back up the path. The
+ * most visited move is played.
+ *
+ * Several threads can grow the same tree at once. A thread counts its visit
+ * to a node on the way down and its result on the way back up, so until it
+ * is back a visit looks like a loss and other threads are steered to other
+ * moves (virtual loss). Nodes live in preallocated arrays updated with atomic
+ * operations, so no locks are taken.
+ *
+ * The arrays are sized once from the node cap and reused by every search, so
+ * a long search can't grow the heap. When they are full the threads stop
+ * after their playout and the tree is pruned: nodes visited less than a
+ * threshold lose their children, keeping their own counts, until at most
+ * half the arrays are used, and the nodes left are moved to the front. Then
+ * the threads carry on, so a long analysis keeps deepening the lines it
+ * visits most.
+ *
+ * @author fdustin
+ *
+ */
+public class MctsEngine implements Player {
+    // 2^20 nodes, about 18MB
+    private static final int DEFAULT_MAX_NODES = 1 << 20;
+    // a leaf gets children once it has been visited this often
+    private static final int EXPAND_VISITS = 2;
+    private static final double EXPLORATION = 1.0;
+    // move of the only child of a node whose player has to pass
+    private static final int PASS = BitBoard.SQUARES;
+    // firstChild values of nodes without children
+    private static final int UNEXPANDED = -1;
+    private static final int EXPANDING = -2;
+    private static final int LEAF = -3;
+    private static final int MAX_PATH = 128;
+
+    private long timeLimitMillis;
+    private long playoutLimit;
+    private long seed;
+    private int threads;
+    private ExecutorService helperPool;
+
+    // the tree, node i's children are nodes firstChild(i) on
+    private int maxNodes;
+    private byte[] moves;
+    private byte[] childCounts;
+    private AtomicIntegerArray firstChild;
+    private AtomicIntegerArray visits;
+    // results for the player who moved into the node, 2 for a win and 1 for
+    // a draw
+    private AtomicIntegerArray points;
+    private final AtomicInteger nextNode = new AtomicInteger();
+    // scratch space for pruning, which nodes stay and where their parent went
+    private int[] keep;
+
+    // state for the current search
+    private long rootOwn;
+    private long rootOpp;
+    private long deadline;
+    private final AtomicLong playouts = new AtomicLong();
+    private volatile boolean stopRequested;
+    // set when a node didn't fit, the threads stop so the tree can be pruned
+    private volatile boolean treeFull;
+    // set when pruning can't free enough room, the tree stops growing
+    private boolean treeFrozen;
+    private int prunes;
+    // xorshift state of each thread, kept when they stop for pruning
+    private long[] randomStates;
+    private SearchResult lastResult;
+
+    /**
+     * Creates an engine that searches for up to a second per move
+     */
+    public MctsEngine() {
+        this(1000, Long.MAX_VALUE);
+    }
+
+    /**
+     * Creates an engine with a time and playout budget
+     *
+     * @param timeLimitMillis - time per move, 0 for no limit
+     * @param playoutLimit    - most playouts per move
+     */
+    public MctsEngine(long timeLimitMillis, long playoutLimit) {
+        this.timeLimitMillis = timeLimitMillis;
+        this.playoutLimit = playoutLimit;
+        this.threads = 1;
+        setMaxNodes(DEFAULT_MAX_NODES);
+    }
+
+    public long getTimeLimitMillis() {
+        return timeLimitMillis;
+    }
+
+    /**
+     * sets the time per move in milliseconds, 0 or less for no limit
+     */
+    public void setTimeLimitMillis(long timeLimitMillis) {
+        this.timeLimitMillis = timeLimitMillis;
+    }
+
+    public long getPlayoutLimit() {
+        return playoutLimit;
+    }
+
+    /**
+     * sets the most playouts a single search may run
+     */
+    public void setPlayoutLimit(long playoutLimit) {
+        this.playoutLimit = playoutLimit;
+    }
+
+    /**
+     * Seeds the random playouts. With one thread the same seed and playout
+     * limit always give the same move.
+     */
+    public void setSeed(long seed) {
+        this.seed = seed;
+    }
+
+    public int getMaxNodes() {
+        return maxNodes;
+    }
+
+    /**
+     * Sets the most tree nodes a search keeps, which is what bounds its
+     * memory. The arrays are allocated here, not per search.
+     *
+     * @param maxNodes - node cap, at least 65 so the root can have children
+     */
+    public void setMaxNodes(int maxNodes) {
+        if (maxNodes <= PASS) {
+            throw new IllegalArgumentException("Need room for the root's children: "
+                    + maxNodes);
+        }
+        this.maxNodes = maxNodes;
+        moves = new byte[maxNodes];
+        childCounts = new byte[maxNodes];
+        firstChild = new AtomicIntegerArray(maxNodes);
+        visits = new AtomicIntegerArray(maxNodes);
+        points = new AtomicIntegerArray(maxNodes);
+        keep = new int[maxNodes];
+    }
+
+    /**
+     * returns the number of nodes the last search used
+     */
+    public int getNodeCount() {
+        return Math.min(nextNode.get(), maxNodes);
+    }
+
+    /**
+     * returns how many times the last search pruned a full tree
+     */
+    public int getPrunes() {
+        return prunes;
+    }
+
+    public int getThreads() {
+        return threads;
+    }
+
+    /**
+     * Sets how many threads grow the tree at once
+     *
+     * @param threads - number of search threads, at least 1
+     */
+    public void setThreads(int threads) {
+        if (threads < 1) {
+            throw new IllegalArgumentException("Need at least one thread: " + threads);
+        }
+        if (helperPool != null) {
+            helperPool.shutdownNow();
+            helperPool = null;
+        }
+        this.threads = threads;
+        if (threads == 1) {
+            return;
+        }
+        helperPool = Executors.newFixedThreadPool(threads - 1, new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread t = new Thread(r, "othello-mcts-helper");
+                // don't keep the program running
+                t.setDaemon(true);
+                return t;
+            }
+        });
+    }
+
+    /**
+     * returns the result of the most recent search, null before the first
+     */
+    public SearchResult getLastResult() {
+        return lastResult;
+    }
+
+    @Override
+    public int chooseMove(Othello game) {
+        return search(game).getBestMove();
+    }
+
+    /**
+     * Searches the position of a game for the player whose turn it is
+     *
+     * @param game - the game to search, it is not modified
+     * @return the most visited move, its win percentage as the score, the
+     *         deepest tree depth, and the playouts as the nodes, so
+     *         getNodesPerSecond is playouts per second
+     */
+    public SearchResult search(Othello game) {
+        if (game.getGameOver()) {
+            lastResult = new SearchResult(-1, 0, 0, 0, 0);
+            return lastResult;
+        }
+        if (game.getCurrentPlayer()) {
+            return search(game.getBlackPieces(), game.getWhitePieces());
+        }
+        return search(game.getWhitePieces(), game.getBlackPieces());
+    }
+
+    /**
+     * Searches a position for the player whose turn it is
+     *
+     * @return see search(Othello)
+     */
+    public SearchResult search(Position position) {
+        if (position.isGameOver()) {
+            lastResult = new SearchResult(-1, 0, 0, 0, 0);
+            return lastResult;
+        }
+        return search(position.getOwn(), position.getOpp());
+    }
+
+    /**
+     * Searches a position
+     *
+     * @param own - pieces of the player to move
+     * @param opp - pieces of the opponent
+     * @return see search(Othello)
+     */
+    public SearchResult search(long own, long opp) {
+        long start = System.nanoTime();
+        if (BitBoard.legalMoves(own, opp) == 0) {
+            lastResult = new SearchResult(-1, 0, 0, 0, System.nanoTime() - start);
+            return lastResult;
+        }
+        rootOwn = own;
+        rootOpp = opp;
+        if (timeLimitMillis > 0) {
+            deadline = start + timeLimitMillis * 1000000;
+        } else {
+            deadline = Long.MAX_VALUE;
+        }
+        playouts.set(0);
+        stopRequested = false;
+        treeFull = false;
+        treeFrozen = false;
+        prunes = 0;
+        randomStates = new long[threads];
+        for (int i = 0; i < threads; i++) {
+            // xorshift needs a state that isn't 0
+            randomStates[i] = (seed + i) * 0x9E3779B97F4A7C15L + 0x2545F4914F6CDD1DL;
+            if (randomStates[i] == 0) {
+                randomStates[i] = 1;
+            }
+        }
+        // every node from the last search is reused
+        nextNode.set(1);
+        clearNode(0);
+        expand(0, own, opp);
+
+        int depth = 0;
+        while (true) {
+            List<Future<Integer>> futures = new ArrayList<Future<Integer>>(threads - 1);
+            for (int i = 1; i < threads; i++) {
+                final int worker = i;
+                futures.add(helperPool.submit(new Callable<Integer>() {
+                    @Override
+                    public Integer call() {
+                        return work(worker);
+                    }
+                }));
+            }
+            depth = Math.max(depth, work(0));
+            for (Future<Integer> future : futures) {
+                try {
+                    depth = Math.max(depth, future.get());
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    stopRequested = true;
+                } catch (ExecutionException e) {
+                    throw new IllegalStateException("Helper search failed", e.getCause());
+                }
+            }
+            if (stopRequested || !treeFull) {
+                break;
+            }
+            // every thread is done with the tree, so it can be moved around
+            treeFrozen = !prune();
+            prunes++;
+            treeFull = false;
+        }
+        stopRequested = true;
+
+        // the most visited move is the one the search trusts most
+        int first = firstChild.get(0);
+        int best = first;
+        for (int c = first + 1; c < first + childCounts[0]; c++) {
+            if (visits.get(c) > visits.get(best)) {
+                best = c;
+            }
+        }
+        int score = 0;
+        if (visits.get(best) > 0) {
+            score = (int) (50L * points.get(best) / visits.get(best));
+        }
+        lastResult = new SearchResult(moves[best], score, depth, playouts.get(),
+                System.nanoTime() - start);
+        return lastResult;
+    }
+
+    /**
+     * Runs playouts until the budget is used up or the tree is full
+     *
+     * @param worker - which thread this is, 0 for the searching thread
+     * @return the deepest path followed in the tree
+     */
+    private int work(int worker) {
+        int[] path = new int[MAX_PATH];
+        long random = randomStates[worker];
+        int deepest = 0;
+        while (!stopRequested && !treeFull) {
+            long done = playouts.getAndIncrement();
+            if (done >= playoutLimit || ((done & 255) == 0 && System.nanoTime() >= deadline)) {
+                // this one isn't played
+                playouts.decrementAndGet();
+                stopRequested = true;
+                break;
+            }
+
+            // walk down to a leaf, counting the visits as we go
+            long own = rootOwn;
+            long opp = rootOpp;
+            int node = 0;
+            int depth = 0;
+            path[0] = 0;
+            visits.incrementAndGet(0);
+            while (depth < MAX_PATH - 1) {
+                int first = firstChild.get(node);
+                if (first == UNEXPANDED && visits.get(node) >= EXPAND_VISITS) {
+                    first = expand(node, own, opp);
+                }
+                if (first < 0) {
+                    break;
+                }
+                node = select(node, first);
+                visits.incrementAndGet(node);
+                int sq = moves[node];
+                if (sq != PASS) {
+                    long flips = BitBoard.flips(own, opp, sq);
+                    long placed = flips | (1L << sq);
+                    long mover = own | placed;
+                    own = opp & ~flips;
+                    opp = mover;
+                } else {
+                    long mover = own;
+                    own = opp;
+                    opp = mover;
+                }
+                depth++;
+                path[depth] = node;
+            }
+            deepest = Math.max(deepest, depth);
+
+            // play the rest of the game at random, counting turns so we know
+            // whose point of view the result is from
+            int plies = 0;
+            while (true) {
+                long legal = BitBoard.legalMoves(own, opp);
+                if (legal == 0) {
+                    if (BitBoard.legalMoves(opp, own) == 0) {
+                        break;
+                    }
+                    long mover = own;
+                    own = opp;
+                    opp = mover;
+                    plies++;
+                    continue;
+                }
+                random ^= random << 13;
+                random ^= random >>> 7;
+                random ^= random << 17;
+                int pick = (int) ((random >>> 1) % Long.bitCount(legal));
+                for (int i = 0; i < pick; i++) {
+                    legal &= legal - 1;
+                }
+                int sq = Long.numberOfTrailingZeros(legal);
+                long flips = BitBoard.flips(own, opp, sq);
+                long mover = own | flips | (1L << sq);
+                own = opp & ~flips;
+                opp = mover;
+                plies++;
+            }
+
+            // the disc difference for the player to move at the leaf, turned
+            // around for each level back up
+            int diff = Long.bitCount(own) - Long.bitCount(opp);
+            if ((plies & 1) != 0) {
+                diff = -diff;
+            }
+            for (int i = depth; i >= 0; i--) {
+                // the player who moved into a node is the one not to move
+                // there
+                if (diff < 0) {
+                    points.addAndGet(path[i], 2);
+                } else if (diff == 0) {
+                    points.addAndGet(path[i], 1);
+                }
+                diff = -diff;
+            }
+        }
+        randomStates[worker] = random;
+        return deepest;
+    }
+
+    /**
+     * Picks the child with the best UCT value, any child not tried yet first
+     */
+    private int select(int node, int first) {
+        int count = childCounts[node];
+        double logVisits = Math.log(visits.get(node));
+        int best = first;
+        double bestValue = Double.NEGATIVE_INFINITY;
+        for (int c = first; c < first + count; c++) {
+            int v = visits.get(c);
+            if (v == 0) {
+                return c;
+            }
+            double value = points.get(c) / (2.0 * v) + EXPLORATION * Math.sqrt(logVisits / v);
+            if (value > bestValue) {
+                bestValue = value;
+                best = c;
+            }
+        }
+        return best;
+    }
+
+    /**
+     * Gives a node its children, one per legal move or a pass
+     *
+     * @return the first child, or below 0 if the node doesn't get children
+     *         now: the game is over there, another thread is expanding it,
+     *         or there is no room left until the tree is pruned
+     */
+    private int expand(int node, long own, long opp) {
+        if (!firstChild.compareAndSet(node, UNEXPANDED, EXPANDING)) {
+            return firstChild.get(node);
+        }
+        long legal = BitBoard.legalMoves(own, opp);
+        int count = Long.bitCount(legal);
+        if (count == 0) {
+            if (BitBoard.legalMoves(opp, own) == 0) {
+                firstChild.set(node, LEAF);
+                return LEAF;
+            }
+            count = 1;
+        }
+        int start = nextNode.getAndAdd(count);
+        if (start + count > maxNodes) {
+            if (treeFrozen) {
+                // pruning didn't help, playouts carry on from here
+                firstChild.set(node, LEAF);
+                return LEAF;
+            }
+            // the node can be expanded again once the tree is pruned
+            firstChild.set(node, UNEXPANDED);
+            treeFull = true;
+            return UNEXPANDED;
+        }
+        for (int i = 0; i < count; i++) {
+            clearNode(start + i);
+            if (legal == 0) {
+                moves[start + i] = (byte) PASS;
+            } else {
+                moves[start + i] = (byte) Long.numberOfTrailingZeros(legal);
+                legal &= legal - 1;
+            }
+        }
+        childCounts[node] = (byte) count;
+        // written last so other threads see the children filled in
+        firstChild.set(node, start);
+        return start;
+    }
+
+    /**
+     * Makes room in a full tree. Nodes visited less than a threshold lose
+     * their children, the threshold doubling until at most half the arrays
+     * are kept, and the nodes left are moved to the front of the arrays in
+     * the order they were in. Children always come after their parent, so a
+     * node only ever moves to a slot that has already been dealt with. Only
+     * called while no playouts are running.
+     *
+     * @return whether the tree has room to grow again
+     */
+    private boolean prune() {
+        int used = Math.min(nextNode.get(), maxNodes);
+        int threshold = EXPAND_VISITS;
+        while (countKept(used, threshold) > maxNodes / 2 && threshold <= visits.get(0) / 2) {
+            threshold *= 2;
+        }
+
+        // keep holds the parent's new slot + 1 for the first child of a
+        // block that stays, -1 for the rest of the block and 0 for the nodes
+        // that go
+        Arrays.fill(keep, 0, used, 0);
+        int next = 1;
+        for (int i = 0; i < used; i++) {
+            int to = 0;
+            if (i > 0) {
+                if (keep[i] == 0) {
+                    continue;
+                }
+                to = next++;
+                if (keep[i] > 0) {
+                    firstChild.set(keep[i] - 1, to);
+                }
+            }
+            int first = firstChild.get(i);
+            int count = childCounts[i];
+            moves[to] = moves[i];
+            visits.set(to, visits.get(i));
+            points.set(to, points.get(i));
+            if (first < 0) {
+                firstChild.set(to, first);
+                childCounts[to] = 0;
+            } else if (i == 0 || visits.get(to) >= threshold) {
+                // the first child points the slot it moves to back here
+                keep[first] = to + 1;
+                for (int c = first + 1; c < first + count; c++) {
+                    keep[c] = -1;
+                }
+                childCounts[to] = (byte) count;
+            } else {
+                firstChild.set(to, UNEXPANDED);
+                childCounts[to] = 0;
+            }
+        }
+        nextNode.set(next);
+        return next <= maxNodes / 2;
+    }
+
+    /**
+     * returns how many nodes stay when the nodes visited less than
+     * threshold lose their children, the root always keeps its children
+     */
+    private int countKept(int used, int threshold) {
+        Arrays.fill(keep, 0, used, 0);
+        keep[0] = 1;
+        int kept = 0;
+        for (int i = 0; i < used; i++) {
+            if (keep[i] == 0) {
+                continue;
+            }
+            kept++;
+            int first = firstChild.get(i);
+            if (first >= 0 && (i == 0 || visits.get(i) >= threshold)) {
+                for (int c = first; c < first + childCounts[i]; c++) {
+                    keep[c] = 1;
+                }
+            }
+        }
+        return kept;
+    }
+
+    private void clearNode(int node) {
+        firstChild.set(node, UNEXPANDED);
+        visits.set(node, 0);
+        points.set(node, 0);
+        childCounts[node] = 0;
+    }
+
+    /**
+     * Plays out the opening position for a few seconds and prints the
+     * playouts per second and tree size.
+     *
+     * @param args - optional milliseconds per search (2000) and threads (1)
+     */
+    public static void main(String[] args) {
+        long millis = 2000;
+        int threads = 1;
+        if (args.length > 0) {
+            millis = Long.parseLong(args[0]);
+        }
+        if (args.length > 1) {
+            threads = Integer.parseInt(args[1]);
+        }
+        MctsEngine engine = new MctsEngine(millis, Long.MAX_VALUE);
+        engine.setThreads(threads);
+        SearchResult result = engine.search(new Othello());
+        System.out.println(result.toString().replace("nodes", "playouts"));
+        System.out.println(engine.getNodeCount() + " of " + engine.getMaxNodes()
+                + " tree nodes used, pruned " + engine.getPrunes() + " times");
+    }
+}
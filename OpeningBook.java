@@ -0,0 +1,198 @@
+package org.cis120.othello;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Map;
+import java.util.SortedMap;
+
+/**
+ * This class looks up the best move of opening positions in a book file, so
+ * engines don't have to search the same early positions every game.
+ *
+ * A position and its 7 rotations and reflections are one book entry. Entries
+ * are keyed by the Zobrist hash of the position's Symmetry canonical form
+ * and store the best move in that form, which is turned back to the board
+ * that was asked about on lookup. The file is the entries sorted by key and
+ * is read through a memory mapping with a binary search, so opening a book
+ * costs nothing and lookups only touch the pages they search.
+ *
+ * File layout:
+ *   magic               8 bytes, "OTHBOOK1"
+ *   entries             16 bytes each, sorted by key
+ *     key               8 bytes
+ *     score             4 bytes, from the mover's point of view
+ *     move              1 byte, square index in the canonical form
+ *     depth             1 byte, how deep the move was searched
+ *     unused            2 bytes
+ *
+ * OpeningBookBuilder writes books.
+ *
+ * @author fdustin
+ *
+ */
+public final class OpeningBook {
+    static final long MAGIC = 0x4F5448424F4F4B31L; // "OTHBOOK1"
+    static final int HEADER_BYTES = 8;
+    static final int ENTRY_BYTES = 16;
+
+    private static final int SCORE_OFFSET = 8;
+    private static final int MOVE_OFFSET = 12;
+    private static final int DEPTH_OFFSET = 13;
+
+    private final ByteBuffer entries;
+    private final int size;
+
+    /**
+     * Opens a book file
+     *
+     * @param file - the book to read
+     * @throws IOException              if the file can't be read
+     * @throws IllegalArgumentException if the file isn't a book
+     */
+    public OpeningBook(Path file) throws IOException {
+        FileChannel channel = FileChannel.open(file, StandardOpenOption.READ);
+        try {
+            long length = channel.size();
+            if (length < HEADER_BYTES || (length - HEADER_BYTES) % ENTRY_BYTES != 0
+                    || length > Integer.MAX_VALUE) {
+                throw new IllegalArgumentException("Not an opening book");
+            }
+            // the mapping stays valid after the channel is closed
+            ByteBuffer mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, length);
+            if (mapped.getLong(0) != MAGIC) {
+                throw new IllegalArgumentException("Not an opening book");
+            }
+            this.entries = mapped;
+            this.size = (int) ((length - HEADER_BYTES) / ENTRY_BYTES);
+        } finally {
+            channel.close();
+        }
+    }
+
+    /**
+     * returns the number of positions in the book
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Looks up the position of a game
+     *
+     * @return the book move, or null if the position isn't in the book or
+     *         the board isn't 8x8
+     */
+    public SearchResult lookup(Othello game) {
+        if (game.getGameOver() || game.getSize() != BitBoard.SIZE) {
+            return null;
+        }
+        return lookup(game.getBlackPieces(), game.getWhitePieces(), game.getCurrentPlayer());
+    }
+
+    /**
+     * Looks up a position. Safe to call from any number of threads at once.
+     *
+     * @param black       - mask of the black pieces
+     * @param white       - mask of the white pieces
+     * @param blackToMove - true if it is black's turn
+     * @return the book move, score and depth with no nodes or time, or null if
+     *         the position isn't in the book
+     */
+    public SearchResult lookup(long black, long white, boolean blackToMove) {
+        int t = Symmetry.canonicalTransform(black, white);
+        long key = Zobrist.hash(Symmetry.transform(black, t), Symmetry.transform(white, t),
+                blackToMove);
+        int lo = 0;
+        int hi = size - 1;
+        while (lo <= hi) {
+            int mid = (lo + hi) >>> 1;
+            int at = HEADER_BYTES + mid * ENTRY_BYTES;
+            long midKey = entries.getLong(at);
+            if (midKey < key) {
+                lo = mid + 1;
+            } else if (midKey > key) {
+                hi = mid - 1;
+            } else {
+                int move = Symmetry.transformSquare(entries.get(at + MOVE_OFFSET),
+                        Symmetry.inverse(t));
+                // a different position with the same key gives a bad move
+                long legal;
+                if (blackToMove) {
+                    legal = BitBoard.legalMoves(black, white);
+                } else {
+                    legal = BitBoard.legalMoves(white, black);
+                }
+                if ((legal & (1L << move)) == 0) {
+                    return null;
+                }
+                return new SearchResult(move, entries.getInt(at + SCORE_OFFSET),
+                        entries.get(at + DEPTH_OFFSET), 0, 0);
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Writes a book file. Like GameRecord.writeGames it writes a temp file
+     * next to it and renames it over the old one, so a crash leaves the old
+     * book or the whole new one, never a cut off file.
+     *
+     * @param file    - file to write, replaced if it exists
+     * @param entries - key to entry data from entryData, sorted by key
+     * @throws IOException if the file can't be written, the old file is left
+     *                     as it was
+     */
+    static void write(Path file, SortedMap<Long, Long> entries) throws IOException {
+        Path dir = file.toAbsolutePath().getParent();
+        Path temp = Files.createTempFile(dir, file.getFileName().toString(), ".tmp");
+        boolean moved = false;
+        try {
+            FileChannel channel = FileChannel.open(temp, StandardOpenOption.WRITE);
+            try {
+                ByteBuffer buffer = ByteBuffer.allocate(
+                        HEADER_BYTES + entries.size() * ENTRY_BYTES);
+                buffer.putLong(MAGIC);
+                for (Map.Entry<Long, Long> entry : entries.entrySet()) {
+                    long data = entry.getValue();
+                    buffer.putLong(entry.getKey());
+                    buffer.putInt((int) (data >> 32));
+                    buffer.put((byte) (data & 0xFF));
+                    buffer.put((byte) ((data >>> 8) & 0xFF));
+                    buffer.putShort((short) 0);
+                }
+                buffer.flip();
+                while (buffer.hasRemaining()) {
+                    channel.write(buffer);
+                }
+                // the bytes have to be on disk before the rename is
+                channel.force(false);
+            } finally {
+                channel.close();
+            }
+            try {
+                Files.move(temp, file, StandardCopyOption.ATOMIC_MOVE,
+                        StandardCopyOption.REPLACE_EXISTING);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING);
+            }
+            moved = true;
+        } finally {
+            if (!moved) {
+                Files.deleteIfExists(temp);
+            }
+        }
+    }
+
+    /**
+     * packs an entry's move, score and depth for write
+     */
+    static long entryData(int move, int score, int depth) {
+        return ((long) score << 32) | ((depth & 0xFF) << 8) | (move & 0xFF);
+    }
+}
@@ -0,0 +1,242 @@
+package org.cis120.othello;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * This class makes opening books. Positions are collected first, either
+ * every position in the first few moves or the ones reached in a set of
+ * games such as self-play games from a GameDatabase, and then build searches
+ * each of them with an AlphaBetaEngine and writes the best moves.
+ *
+ * Positions are collected in their canonical form, so the rotations and
+ * reflections of a position are only searched once.
+ *
+ * @author fdustin
+ *
+ */
+public class OpeningBookBuilder {
+    // 1MB tables, there is an engine per thread
+    private static final int ENGINE_TABLE_BITS = 16;
+
+    private final int maxPlies;
+    // book key to the position in its canonical form, black, white and 1 if
+    // black is to move
+    private final Map<Long, long[]> positions = new HashMap<Long, long[]>();
+
+    /**
+     * Creates a builder for a book covering the first moves of a game
+     *
+     * @param maxPlies - positions after more moves than this aren't added
+     */
+    public OpeningBookBuilder(int maxPlies) {
+        if (maxPlies < 0 || maxPlies > 60) {
+            throw new IllegalArgumentException("Book moves must be 0 to 60: " + maxPlies);
+        }
+        this.maxPlies = maxPlies;
+    }
+
+    /**
+     * returns the number of positions collected
+     */
+    public int size() {
+        return positions.size();
+    }
+
+    /**
+     * Adds every position reachable from the opening in up to maxPlies moves
+     */
+    public void addAllPositions() {
+        Othello start = new Othello();
+        addTree(start.getBlackPieces(), start.getWhitePieces(), true, 0);
+    }
+
+    private void addTree(long black, long white, boolean blackToMove, int plies) {
+        long own = white;
+        long opp = black;
+        if (blackToMove) {
+            own = black;
+            opp = white;
+        }
+        long moves = BitBoard.legalMoves(own, opp);
+        if (moves == 0) {
+            if (BitBoard.legalMoves(opp, own) != 0) {
+                // a pass isn't a move, carry on from the other side
+                addTree(black, white, !blackToMove, plies);
+            }
+            return;
+        }
+        if (plies > maxPlies || !add(black, white, blackToMove)) {
+            // deeper than the book, or already added with everything after it
+            return;
+        }
+        for (long m = moves; m != 0; m &= m - 1) {
+            int sq = Long.numberOfTrailingZeros(m);
+            long flips = BitBoard.flips(own, opp, sq);
+            long placed = (1L << sq) | flips;
+            if (blackToMove) {
+                addTree(black | placed, white & ~flips, false, plies + 1);
+            } else {
+                addTree(black & ~flips, white | placed, true, plies + 1);
+            }
+        }
+    }
+
+    /**
+     * Adds the positions a game passes through in its first maxPlies moves
+     *
+     * @param game - a game that starts from the opening, others are skipped
+     */
+    public void addGame(GameRecord game) {
+        if (!game.isFromOpening()) {
+            return;
+        }
+        BitBoard board = new BitBoard(game.getBlack(), game.getWhite());
+        boolean blackToMove = true;
+        int plies = Math.min(game.getMoveCount(), maxPlies + 1);
+        for (int i = 0; i < plies; i++) {
+            if (board.legalMoves(blackToMove) == 0) {
+                blackToMove = !blackToMove;
+            }
+            add(board.getBlack(), board.getWhite(), blackToMove);
+            board.play(game.getMove(i), blackToMove);
+            blackToMove = !blackToMove;
+        }
+    }
+
+    /**
+     * Adds a position in its canonical form
+     *
+     * @return false if it was already added
+     */
+    private boolean add(long black, long white, boolean blackToMove) {
+        int t = Symmetry.canonicalTransform(black, white);
+        long bookBlack = Symmetry.transform(black, t);
+        long bookWhite = Symmetry.transform(white, t);
+        Long key = Zobrist.hash(bookBlack, bookWhite, blackToMove);
+        if (positions.containsKey(key)) {
+            return false;
+        }
+        long side = 0;
+        if (blackToMove) {
+            side = 1;
+        }
+        positions.put(key, new long[] { bookBlack, bookWhite, side });
+        return true;
+    }
+
+    /**
+     * Searches every collected position and writes the book
+     *
+     * @param file    - file to write, replaced if it exists
+     * @param depth   - search depth for each position
+     * @param threads - number of positions searched at once
+     * @throws IOException if the book can't be written
+     */
+    public void build(Path file, final int depth, int threads) throws IOException {
+        if (threads < 1) {
+            throw new IllegalArgumentException("Need at least one thread: " + threads);
+        }
+        final List<Map.Entry<Long, long[]>> work =
+                new ArrayList<Map.Entry<Long, long[]>>(positions.entrySet());
+        final SortedMap<Long, Long> entries = new TreeMap<Long, Long>();
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        try {
+            List<Future<Void>> futures = new ArrayList<Future<Void>>();
+            for (int i = 0; i < threads; i++) {
+                final int first = i;
+                final int step = threads;
+                futures.add(pool.submit(new Callable<Void>() {
+                    @Override
+                    public Void call() {
+                        // engines keep per search state, one per thread
+                        AlphaBetaEngine engine = new AlphaBetaEngine(depth, 0);
+                        engine.setTranspositionTable(new TranspositionTable(ENGINE_TABLE_BITS));
+                        for (int n = first; n < work.size(); n += step) {
+                            long[] p = work.get(n).getValue();
+                            SearchResult result;
+                            if (p[2] == 1) {
+                                result = engine.search(p[0], p[1], true);
+                            } else {
+                                result = engine.search(p[1], p[0], false);
+                            }
+                            long data = OpeningBook.entryData(result.getBestMove(),
+                                    result.getScore(), result.getDepth());
+                            synchronized (entries) {
+                                entries.put(work.get(n).getKey(), data);
+                            }
+                        }
+                        return null;
+                    }
+                }));
+            }
+            for (Future<Void> future : futures) {
+                future.get();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while building the book", e);
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("Book search failed", e.getCause());
+        } finally {
+            pool.shutdownNow();
+        }
+        OpeningBook.write(file, entries);
+    }
+
+    /**
+     * Builds a book and prints how long it took.
+     *
+     * @param args - optional book file (files/opening.book), book moves (6),
+     *             search depth (8), threads (all processors), and a game
+     *             database to take positions from instead of every position
+     */
+    public static void main(String[] args) throws IOException {
+        Path file = Paths.get("files/opening.book");
+        int plies = 6;
+        int depth = 8;
+        int threads = Runtime.getRuntime().availableProcessors();
+        if (args.length > 0) {
+            file = Paths.get(args[0]);
+        }
+        if (args.length > 1) {
+            plies = Integer.parseInt(args[1]);
+        }
+        if (args.length > 2) {
+            depth = Integer.parseInt(args[2]);
+        }
+        if (args.length > 3) {
+            threads = Integer.parseInt(args[3]);
+        }
+        OpeningBookBuilder builder = new OpeningBookBuilder(plies);
+        if (args.length > 4) {
+            GameDatabase db = new GameDatabase(Paths.get(args[4]));
+            try {
+                for (long i = 0; i < db.size(); i++) {
+                    builder.addGame(db.read(i));
+                }
+            } finally {
+                db.close();
+            }
+        } else {
+            builder.addAllPositions();
+        }
+        long start = System.nanoTime();
+        builder.build(file, depth, threads);
+        double seconds = (System.nanoTime() - start) / 1e9;
+        System.out.println(String.format("searched %d positions to depth %d in %.2fs, "
+                + "wrote %s", builder.size(), depth, seconds, file));
+    }
+}
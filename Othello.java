@@ -2,6 +2,10 @@ package org.cis120.othello;
 
 import java.util.*;
 import java.io.*;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
 import java.nio.file.Paths;
 
 /**
@@ -10,47 +14,119 @@ import java.nio.file.Paths;
  */
 public class Othello {
 
+    // getCell values
     // value 0 -> Empty Space
     // value 1 -> Black Space
     // value 2 -> White Space
-    private int[][] board;
+    private BitBoard board;
+    // squares per side. Boards other than 8x8 are kept in wideBoard instead
+    // and board is null, engines, hashing and game records only take 8x8
+    private int size;
+    private WideBoard wideBoard;
+    private long[] wideMoves;
+    private int wideMoveCount;
+    // the flips of the wide move being played or undone
+    private long[] wideFlips;
     private int numTurns;
     private boolean isP1Turn;
     private boolean gameOver;
     // helps track is passes occur, if two passes occur, it's gameover
     private boolean passOccurred;
-    private Set<Pair> validMoves;
-    // add synchonrous scoring?
+    // bit r * 8 + c is set when (r, c) is a valid move for the current player
+    private long validMoves;
+    // kept up to date by every move, no rescanning of the board needed
     private int blackScore;
     private int whiteScore;
+    // Zobrist hash of the pieces, kept up to date by every move
+    private long pieceHash;
     private String winner;
-    // stores the game model
-    // head represents the most recent turn
-    // game history needs to written to the csv files
-    LinkedList<StorageOthello> gameHistory;
+    // the game history is the first turn we can undo back to (reset, load or
+    // setBoard) plus the moves made since then, stored as flip deltas
+    private StorageOthello historyStart;
+    private UndoLog undoLog = new UndoLog();
+
+    // games are saved as game records, older saves are 4 turn CSV files
+    private static final String SAVE_FILE = "files/saved_othello.game";
+    private static final String CSV_SAVE_FILE = "files/saved_othello.csv";
 
     public Othello() {
+        this(BitBoard.SIZE);
+    }
+
+    /**
+     * Creates a game on a board of any even size from 6x6 to 16x16. Only 8x8
+     * games can be played by the engines, hashed or saved.
+     *
+     * @param size - squares per side
+     */
+    public Othello(int size) {
+        if (size < WideBoard.MIN_SIZE || size > WideBoard.MAX_SIZE || size % 2 != 0) {
+            throw new IllegalArgumentException("Board size must be even and from "
+                    + WideBoard.MIN_SIZE + " to " + WideBoard.MAX_SIZE + ": " + size);
+        }
+        this.size = size;
         reset();
     }
 
     /**
-     * Scores the current game board
+     * Creates an 8x8 game starting from a position, which becomes the start
+     * of its history. The turns are counted as the pieces placed since the
+     * opening.
+     *
+     * @param position - where the game starts
+     */
+    public Othello(Position position) {
+        this.size = BitBoard.SIZE;
+        gameOver = false;
+        winner = "In Progress";
+        BitBoard start = new BitBoard(position.getBlack(), position.getWhite());
+        loadTurn(
+                new StorageOthello(
+                        start.toArray(), start.countBlack() + start.countWhite() - 4,
+                        position.getBlackToMove(), position.getPassOccurred(),
+                        start.countBlack(), start.countWhite()
+                )
+        );
+        findValidMoves();
+        checkPass();
+    }
+
+    /**
+     * Scores the current game board by recounting every piece. Moves keep the
+     * scores up to date on their own, this is only needed after the board is
+     * replaced wholesale.
      */
     public void score() {
-        int newBlackScore = 0;
-        int newWhiteScore = 0;
-        for (int i = 0; i < 8; i++) {
-            for (int j = 0; j < 8; j++) {
-                if (board[i][j] == 1) {
-                    newBlackScore++;
-                }
-                if (board[i][j] == 2) {
-                    newWhiteScore++;
-                }
-            }
+        if (wideBoard != null) {
+            blackScore = wideBoard.countBlack();
+            whiteScore = wideBoard.countWhite();
+            return;
+        }
+        blackScore = board.countBlack();
+        whiteScore = board.countWhite();
+    }
+
+    /**
+     * Debugging check that the incremental scores agree with a full recount.
+     * Used in assert statements so it only runs with -ea (as in the tests).
+     */
+    private boolean scoresMatchBoard() {
+        if (wideBoard != null) {
+            return blackScore == wideBoard.countBlack() && whiteScore == wideBoard.countWhite();
         }
-        blackScore = newBlackScore;
-        whiteScore = newWhiteScore;
+        return blackScore == board.countBlack() && whiteScore == board.countWhite();
+    }
+
+    /**
+     * Debugging check that the incremental hash agrees with hashing the board
+     * from scratch
+     */
+    private boolean hashMatchesBoard() {
+        if (wideBoard != null) {
+            // only 8x8 boards are hashed
+            return true;
+        }
+        return pieceHash == Zobrist.hashPieces(board.getBlack(), board.getWhite());
     }
 
     /**
@@ -59,60 +135,23 @@ public class Othello {
      */
     private boolean validMove(int r, int c) {
         // check if space is open and game isn't over
-        if (board[r][c] != 0 || gameOver) {
+        if (getCell(r, c) != 0 || gameOver) {
             return false;
         }
 
         // now check if the move is in ValidMoves
-        Pair testMove = new Pair(r, c);
-        if (validMoves.contains(testMove)) {
-            return true;
+        if (wideBoard != null) {
+            return WideBoard.isSet(wideMoves, WideBoard.square(r, c));
         }
-
-        return false;
+        return (validMoves & (1L << BitBoard.square(r, c))) != 0;
     }
 
     /**
-     * Helper Method to if a move is valid in a given direction
-     * 
-     * @param r
-     * @param c
-     * @param vertical
-     * @param horizontal
-     * @param currentColor
-     * @param oppositePiece
-     * @return
+     * returns true if the player to move can play on (r, c). Nothing is
+     * allocated, so painting can ask about every square.
      */
-    private boolean checkMoveInDirection(
-            int r, int c, int vertical, int horizontal,
-            int currentColor, int oppositePiece
-    ) {
-        // apply the direction
-        int i = r + vertical;
-        int j = c + horizontal;
-        // check for bounds and check the immediate piece is opposite color
-        if (!inBounds(i, j)) {
-            return false;
-        } else {
-            if (board[i][j] != oppositePiece) {
-                return false;
-            }
-        }
-        // while we're in bounds, keep moving in the direction on the board
-        // till we find the opposite piece
-        while (inBounds(i, j)) {
-            if (board[i][j] == 0) {
-                return false;
-            }
-            if (board[i][j] == currentColor) {
-                // add the original move in to the valid moves
-                validMoves.add(new Pair(r, c));
-                return true;
-            }
-            i = i + vertical;
-            j = j + horizontal;
-        }
-        return false;
+    public boolean isValidMove(int r, int c) {
+        return inBounds(r, c) && validMove(r, c);
     }
 
     /**
@@ -123,125 +162,19 @@ public class Othello {
      * @return - boolean indicating if the coordinates are within the game board
      */
     private boolean inBounds(int i, int j) {
-        return i >= 0 && i < board.length && j >= 0 && j < board[0].length;
+        return i >= 0 && i < size && j >= 0 && j < size;
     }
 
     /**
-     * flips the pieces based on a valid move
-     * 
-     * @param r
-     * @param c
-     */
-    private void flipPieces(int r, int c) {
-        // flip the pieces based on the piece to be inserted
-        // follow similar stuff as findValidMoves
-        // base this on current turn too
-        int currentColor = 0;
-        int oppositePiece = 0;
-        if (isP1Turn) {
-            currentColor = 1;
-            oppositePiece = 2;
-        } else {
-            currentColor = 2;
-            oppositePiece = 1;
-        }
-
-        // ensure the direction is valid (has a piece of the current color at the end)
-        if (checkMoveInDirection(r, c, -1, -1, currentColor, oppositePiece)) {
-            flipInDirection(r, c, -1, -1, currentColor, oppositePiece);
-        }
-
-        if (checkMoveInDirection(r, c, -1, 0, currentColor, oppositePiece)) {
-            flipInDirection(r, c, -1, 0, currentColor, oppositePiece);
-        }
-
-        if (checkMoveInDirection(r, c, -1, 1, currentColor, oppositePiece)) {
-            flipInDirection(r, c, -1, 1, currentColor, oppositePiece);
-        }
-
-        if (checkMoveInDirection(r, c, 0, -1, currentColor, oppositePiece)) {
-            flipInDirection(r, c, 0, -1, currentColor, oppositePiece);
-        }
-
-        if (checkMoveInDirection(r, c, 0, 1, currentColor, oppositePiece)) {
-            flipInDirection(r, c, 0, 1, currentColor, oppositePiece);
-        }
-
-        if (checkMoveInDirection(r, c, 1, -1, currentColor, oppositePiece)) {
-            flipInDirection(r, c, 1, -1, currentColor, oppositePiece);
-        }
-        if (checkMoveInDirection(r, c, 1, 0, currentColor, oppositePiece)) {
-            flipInDirection(r, c, 1, 0, currentColor, oppositePiece);
-        }
-        if (checkMoveInDirection(r, c, 1, 1, currentColor, oppositePiece)) {
-            flipInDirection(r, c, 1, 1, currentColor, oppositePiece);
-        }
-    }
-
-    /**
-     * Helper function that flips the piece colors given a direction
-     * 
-     * @param r
-     * @param c
-     * @param vertical
-     * @param horizontal
-     * @param currentColor
-     * @param oppositePiece
-     */
-    private void flipInDirection(
-            int r, int c, int vertical, int horizontal,
-            int currentColor, int oppositePiece
-    ) {
-        // apply the direction
-        int i = r + vertical;
-        int j = c + horizontal;
-        // do the same iteration
-        while (inBounds(i, j)) {
-            // flips pieces until the other color is reached
-            if (board[i][j] == currentColor) {
-                // exit
-                return;
-            }
-            // set the pieces to the opposite color
-            if (board[i][j] == oppositePiece) {
-                board[i][j] = currentColor;
-            }
-            i = i + vertical;
-            j = j + horizontal;
-        }
-    }
-
-    /**
-     * Populates the ValidMoves set with all the valid moves for the current
-     * player's turn
+     * Populates the ValidMoves mask with all the valid moves for the current
+     * player's turn. Package-private so the benchmarks can time it.
      */
-    private void findValidMoves() {
-        validMoves.clear();
-        int currentColor = 0;
-        int oppositePiece = 0;
-        if (isP1Turn) {
-            currentColor = 1;
-            oppositePiece = 2;
-        } else {
-            currentColor = 2;
-            oppositePiece = 1;
-        }
-        // now check all the directions for every point
-        for (int row = 0; row < board.length; row++) {
-            for (int col = 0; col < board[0].length; col++) {
-                if (board[row][col] != 0) {
-                    continue;
-                }
-                checkMoveInDirection(row, col, -1, -1, currentColor, oppositePiece);
-                checkMoveInDirection(row, col, -1, 0, currentColor, oppositePiece);
-                checkMoveInDirection(row, col, -1, 1, currentColor, oppositePiece);
-                checkMoveInDirection(row, col, 0, -1, currentColor, oppositePiece);
-                checkMoveInDirection(row, col, 0, 1, currentColor, oppositePiece);
-                checkMoveInDirection(row, col, 1, -1, currentColor, oppositePiece);
-                checkMoveInDirection(row, col, 1, 0, currentColor, oppositePiece);
-                checkMoveInDirection(row, col, 1, 1, currentColor, oppositePiece);
-            }
+    void findValidMoves() {
+        if (wideBoard != null) {
+            wideMoveCount = wideBoard.legalMoves(isP1Turn, wideMoves);
+            return;
         }
+        validMoves = board.legalMoves(isP1Turn);
     }
 
     /**
@@ -251,8 +184,10 @@ public class Othello {
         // first check for passes
         // else if validMoves is empty and last turn wasn't a pass; switch the turn
         // else validMoves is empty and last turn was a pass, start the gameOver process
-        score();
-        if (!validMoves.isEmpty()) {
+        assert scoresMatchBoard() : "Black " + blackScore + " White " + whiteScore
+                + " does not match the board";
+        assert hashMatchesBoard() : "Hash does not match the board";
+        if (validMoves != 0 || wideMoveCount != 0) {
             passOccurred = false;
             return;
         }
@@ -293,26 +228,35 @@ public class Othello {
         if (!validMove(r, c)) {
             return false;
         }
-        // if it is, then add the piece
+        // if it is, then add the piece and flip the piece colors
+        int flipped;
+        if (wideBoard != null) {
+            int sq = WideBoard.square(r, c);
+            flipped = wideBoard.play(sq, isP1Turn, wideFlips);
+            // record the move so it can be undone
+            undoLog.pushWide(sq, wideFlips, isP1Turn, passOccurred);
+        } else {
+            int sq = BitBoard.square(r, c);
+            long flipMask = board.play(sq, isP1Turn);
+            // record the move so it can be undone
+            undoLog.push(sq, flipMask, isP1Turn, passOccurred);
+            pieceHash ^= Zobrist.moveKey(sq, flipMask, isP1Turn);
+            flipped = Long.bitCount(flipMask);
+        }
+        // the mover gains the placed piece and the flipped ones
         if (isP1Turn) {
-            board[r][c] = 1;
+            blackScore += flipped + 1;
+            whiteScore -= flipped;
         } else {
-            board[r][c] = 2;
+            whiteScore += flipped + 1;
+            blackScore -= flipped;
         }
-        // flip the piece colors
-        flipPieces(r, c);
         // increment numTurns
         numTurns++;
         // flip the player turns
         isP1Turn = !isP1Turn;
         // recalculate valid moves
         findValidMoves();
-        // record the gameState here
-        StorageOthello newTurn = new StorageOthello(
-                this.getGameBoard(), this.getNumTurns(),
-                this.getCurrentPlayer(), this.getPassOccurred()
-        );
-        gameHistory.addFirst(newTurn);
         return true;
     }
 
@@ -321,34 +265,44 @@ public class Othello {
      * black always goes first
      */
     public void reset() {
-        board = new int[8][8];
+        if (size == BitBoard.SIZE) {
+            board = new BitBoard();
+            wideBoard = null;
+            wideMoveCount = 0;
+        } else {
+            board = null;
+            wideBoard = new WideBoard(size);
+            wideMoves = wideBoard.newMask();
+            wideFlips = wideBoard.newMask();
+            validMoves = 0L;
+        }
         // add the 4 pieces in the middle
-        board[3][3] = 2;
-        board[4][4] = 2;
-        board[3][4] = 1;
-        board[4][3] = 1;
+        int mid = size / 2;
+        putCell(mid - 1, mid - 1, 2);
+        putCell(mid, mid, 2);
+        putCell(mid - 1, mid, 1);
+        putCell(mid, mid - 1, 1);
+        blackScore = 2;
+        whiteScore = 2;
+        if (board != null) {
+            pieceHash = Zobrist.hashPieces(board.getBlack(), board.getWhite());
+        }
 
         numTurns = 0;
         isP1Turn = true;
         gameOver = false;
         passOccurred = false;
-        validMoves = new TreeSet<Pair>();
         winner = "In Progress";
-        gameHistory = new LinkedList<StorageOthello>();
 
-        // put turn zero don't put in reference but in copies
-        StorageOthello newTurn = new StorageOthello(
-                this.getGameBoard(), this.getNumTurns(),
-                this.getCurrentPlayer(), this.getPassOccurred()
-        );
-        gameHistory.addFirst(newTurn);
+        // turn zero starts the history
+        startHistory();
 
         findValidMoves();
         checkPass();
     }
 
     /**
-     * undoes the previous move using builtIn LinkedList functionality
+     * undoes the previous move by un-flipping the pieces it flipped
      */
     public boolean undoMove() {
         // cannot undo when a gameOver occurs
@@ -356,237 +310,222 @@ public class Othello {
             return false;
         }
         // handles undoing with only 1 turn in history
-        if (gameHistory.size() == 1) {
+        if (undoLog.isEmpty()) {
             return false;
         }
-        // delete the current head
-        gameHistory.removeFirst();
-        // load the new head
-        loadLastTurn();
+        int last = undoLog.size() - 1;
+        boolean blackMoved = undoLog.getBlackMoved(last);
+        int flipped;
+        if (wideBoard != null) {
+            undoLog.getWideFlips(last, wideFlips);
+            wideBoard.undo(undoLog.getSquare(last), wideFlips, blackMoved);
+            flipped = WideBoard.count(wideFlips);
+        } else {
+            long flipMask = undoLog.getFlips(last);
+            board.undo(undoLog.getSquare(last), flipMask, blackMoved);
+            pieceHash ^= Zobrist.moveKey(undoLog.getSquare(last), flipMask, blackMoved);
+            flipped = Long.bitCount(flipMask);
+        }
+        if (blackMoved) {
+            blackScore -= flipped + 1;
+            whiteScore += flipped;
+        } else {
+            whiteScore -= flipped + 1;
+            blackScore += flipped;
+        }
+        numTurns--;
+        undoLog.pop();
+        // restore the flags of the turn before, then redo its pass check
+        if (undoLog.isEmpty()) {
+            isP1Turn = historyStart.getIsP1Turn();
+            passOccurred = historyStart.getPassOccurred();
+        } else {
+            isP1Turn = !undoLog.getBlackMoved(last - 1);
+            passOccurred = undoLog.getPassOccurred(last - 1);
+        }
+        findValidMoves();
+        checkPass();
         return true;
     }
 
+    /**
+     * Makes the current state the first turn of the history, dropping any
+     * moves recorded before it
+     */
+    private void startHistory() {
+        historyStart = new StorageOthello(
+                this.getGameBoard(), this.getNumTurns(),
+                this.getCurrentPlayer(), this.getPassOccurred(),
+                this.getBlackScore(), this.getWhiteScore()
+        );
+        undoLog.clear();
+    }
+
     /**
      * allows the loading of game from a given gameBoard, number of turns,
-     * currentTurn, and gameover state
-     */
-    private void loadLastTurn() {
-        StorageOthello curr = gameHistory.peekFirst();
-        this.board = curr.getBoard();
-        this.numTurns = curr.getNumTurns();
-        this.isP1Turn = curr.getIsP1Turn();
-        this.passOccurred = curr.getPassOccurred();
-        findValidMoves();
-        score();
-        checkPass();
+     * currentTurn, and gameover state. The turn becomes the start of the
+     * history.
+     */
+    private void loadTurn(StorageOthello turn) {
+        // saved games are always 8x8
+        this.size = BitBoard.SIZE;
+        this.wideBoard = null;
+        this.wideMoveCount = 0;
+        this.board = BitBoard.fromArray(turn.getBoard());
+        this.numTurns = turn.getNumTurns();
+        this.isP1Turn = turn.getIsP1Turn();
+        this.passOccurred = turn.getPassOccurred();
+        this.blackScore = turn.getBlackScore();
+        this.whiteScore = turn.getWhiteScore();
+        this.pieceHash = Zobrist.hashPieces(board.getBlack(), board.getWhite());
+        startHistory();
     }
 
-    public void saveToGameFile() {
-        // write the at least the previous 4 turns down game history down
-        File file = Paths.get("files/saved_othello.csv").toFile();
-        BufferedWriter bw = null;
-        try {
-            FileWriter fw = new FileWriter(file, false);
-            bw = new BufferedWriter(fw);
-        } catch (FileNotFoundException e) {
-            System.out.println("File not found. Oh noey.");
-        } catch (IOException e) {
-            System.out.println("Error occurred while constructing the Writer");
+    /**
+     * Tries to reach a turn from the current board with a single move and
+     * records that move in the undo log.
+     * 
+     * @param turn - the turn following the current board
+     * @return false if the turn can't be reached by one move
+     */
+    private boolean replayTurn(StorageOthello turn) {
+        BitBoard next = BitBoard.fromArray(turn.getBoard());
+        long occupied = board.getBlack() | board.getWhite();
+        long placed = (next.getBlack() | next.getWhite()) & ~occupied;
+        if (Long.bitCount(placed) != 1) {
+            return false;
         }
+        int sq = Long.numberOfTrailingZeros(placed);
+        boolean blackMoved = (next.getBlack() & placed) != 0;
+        BitBoard expected = board.copy();
+        long flipMask = expected.play(sq, blackMoved);
+        if (flipMask == 0 || !expected.equals(next)) {
+            return false;
+        }
+        // the mover had a move so a pass wasn't pending
+        undoLog.push(sq, flipMask, blackMoved, false);
+        pieceHash ^= Zobrist.moveKey(sq, flipMask, blackMoved);
+        this.board = expected;
+        this.numTurns = turn.getNumTurns();
+        this.isP1Turn = turn.getIsP1Turn();
+        this.passOccurred = turn.getPassOccurred();
+        this.blackScore = turn.getBlackScore();
+        this.whiteScore = turn.getWhiteScore();
+        return true;
+    }
 
-        // calculate how many turns to write
-        int turnsToWrite = 0;
-        int turnsPlayed = gameHistory.size();
+    /**
+     * Saves the whole game history, the first turn and every move since
+     */
+    public void saveToGameFile() {
+        saveToGameFile(0);
+    }
 
-        if (turnsPlayed >= 4) {
-            turnsToWrite = 4;
-        } else {
-            turnsToWrite = turnsPlayed;
-        }
-        // write the next four turns, most recent on top
-        for (int i = 0; i < turnsToWrite; i++) {
-            // use turns wrote to retrieve a turn
-            StorageOthello o = gameHistory.get(i);
-            // call generateStringsTo get each turn as 9 strings
-            List<String> turnAsStrings = generateStringsForATurn(o);
-            // write the list of strings to generate
-            try {
-                for (String toWrite : turnAsStrings) {
-                    bw.write(toWrite);
-                    bw.newLine();
-                }
-            } catch (IOException e) {
-                System.out.println("Error occurred during the writing process");
-                return;
-            }
+    /**
+     * Saves the whole game history with a full board every few moves, so
+     * loading can start from the last one instead of replaying every move.
+     * Moves before the checkpoint a game is loaded from can't be undone.
+     *
+     * @param checkpointInterval - moves between checkpoints, 0 for none
+     */
+    public void saveToGameFile(int checkpointInterval) {
+        GameRecord record = toRecord();
+        if (checkpointInterval > 0) {
+            record = record.withCheckpoints(checkpointInterval);
         }
-
-        // flush the file
         try {
-            bw.flush();
-            bw.close();
+            writeSaveFile(record);
         } catch (IOException e) {
-            System.out.println("Error occurred when flushing and closing the file");
-            return;
+            System.out.println("Error occurred during the writing process");
         }
     }
 
-    /*
-     * Converts a turn into a list of Strings
-     */
-    private List<String> generateStringsForATurn(StorageOthello o) {
-        List<String> turnAsStrings = new LinkedList<String>();
-        // 9 lines per turn
-        // numTurns, isP1Turn, passOccurred
-        String stateString = "" + o.getNumTurns() +
-                "," + o.getIsP1Turn() + "," + o.getPassOccurred();
-        turnAsStrings.add(stateString);
-
-        int[][] turnBoard = o.getBoard();
-        // 8 lines for the boardSpaces
-        // make sure to read row by row (so increment by the first index of int[][])
-        for (int i = 0; i < 8; i++) {
-            // do the first board entry to prevent trailing commas
-            String boardRow = "" + turnBoard[i][0];
-            for (int j = 1; j < 8; j++) {
-                boardRow = boardRow + "," + turnBoard[i][j];
-            }
-            turnAsStrings.add(boardRow);
-        }
-
-        return turnAsStrings;
+    /**
+     * Writes a game to the save file. Only touches the record, so it can run
+     * on any thread while the game goes on.
+     *
+     * @param record - the game to save, from toRecord
+     * @throws IOException if the file can't be written, an earlier save is
+     *                     left as it was
+     */
+    public static void writeSaveFile(GameRecord record) throws IOException {
+        GameRecord.writeGames(Paths.get(SAVE_FILE), Collections.singletonList(record));
     }
 
     public void loadFromGameFile() {
-        File file = Paths.get("files/saved_othello.csv").toFile();
-        BufferedReader br = null;
         try {
-            FileReader fr = new FileReader(file);
-            br = new BufferedReader(fr);
-        } catch (FileNotFoundException e) {
+            readSaveFile();
+        } catch (NoSuchFileException e) {
             System.out.println("File not found");
-            return;
-        } catch (NullPointerException e) {
-            System.out.println("Null file path");
-            return;
-        }
-
-        // generate the gameHistory from the file
-
-        // clear the existing game history
-        this.gameHistory.clear();
-
-        // the strings at the top will represent the most recent turn
-        try {
-            // handle the case where the file is empty
-            while (br.ready()) {
-                // array should only be 9 strings
-                String[] turnAsString = new String[9];
-                for (int i = 0; i < 9; i++) {
-                    // feed a List of 9 lines to the
-                    String line = br.readLine();
-                    turnAsString[i] = line;
-                }
-                // convert the String to a StorageOthello for use
-                StorageOthello turnToAdd = generateTurnFromString(turnAsString);
-                gameHistory.addLast(turnToAdd);
-            }
-            br.close();
         } catch (IOException e) {
             System.out.println("Error occurred while reading. Game reset");
             this.reset();
-            return;
         } catch (IllegalArgumentException e) {
             System.out.println("Game reset: " + e.getMessage());
             this.reset();
-            return;
         }
-        loadLastTurn();
-        // update the state to check for gameOver's
-        checkPass();
     }
 
-    private StorageOthello generateTurnFromString(String[] turnAsString) {
-
-        // split each string into arrays, 1st array is length 3, next 8 are length 8
-        // throw an illegalArugement Exception for inValidStrings
-        String[] firstLine = turnAsString[0].split(",");
-        if (firstLine.length > 3) {
-            throw new IllegalArgumentException("Bad format of Game state line.");
+    /**
+     * Loads the saved game, reporting problems instead of printing them
+     *
+     * @throws NoSuchFileException      if no game has been saved
+     * @throws IOException              if the save can't be read
+     * @throws IllegalArgumentException if the save is damaged, the game is
+     *                                  left in an unknown state
+     */
+    public void readSaveFile() throws IOException {
+        Path saved = Paths.get(SAVE_FILE);
+        if (!Files.exists(saved)) {
+            // saves from before game records hold the last 4 turns as CSV
+            loadFromCsvFile();
+            return;
         }
-        for (int i = 0; i < 3; i++) {
-            if (!checkValidRead(firstLine[i], true)) {
-                throw new IllegalArgumentException("Illegal First Line: " + firstLine[i]);
-            }
+        List<GameRecord> games = GameRecord.readGames(saved);
+        if (games.isEmpty()) {
+            throw new IllegalArgumentException("No turns saved");
         }
-        int numTurnsToAdd = Integer.parseInt(firstLine[0]);
-        boolean isP1TurnToAdd = Boolean.parseBoolean(firstLine[1]);
-        boolean passOccurredToAdd = Boolean.parseBoolean(firstLine[2]);
+        loadRecord(games.get(0));
+    }
 
-        // now fill the board
-        int[][] boardToAdd = new int[8][8];
-        for (int i = 1; i < 9; i++) {
-            String[] boardRow = turnAsString[i].split(",");
-            if (boardRow.length > 8) {
-                throw new IllegalArgumentException("Bad format of Game Board lines");
-            }
+    private void loadFromCsvFile() throws IOException {
+        // generate the game history from the file
+        LinkedList<StorageOthello> loadedHistory = new LinkedList<StorageOthello>();
 
-            // check for valid strings within each row
-            for (int j = 0; j < 8; j++) {
-                if (!checkValidRead(boardRow[j], false)) {
-                    throw new IllegalArgumentException("Illegal In board: " + boardRow[j]);
-                }
-                boardToAdd[i - 1][j] = Integer.parseInt(boardRow[j]);
+        // the turns at the top of the file are the most recent
+        String error;
+        FileChannel channel = FileChannel.open(Paths.get(CSV_SAVE_FILE));
+        try {
+            TurnParser turns = new TurnParser(channel);
+            while (turns.hasNext()) {
+                loadedHistory.addLast(turns.next());
             }
+            error = turns.getError();
+        } finally {
+            channel.close();
         }
-        int[][] boardCopy = new int[8][8];
-        for (int i = 0; i < 8; i++) {
-            for (int j = 0; j < 8; j++) {
-                boardCopy[i][j] = boardToAdd[i][j];
-            }
+        if (error != null) {
+            throw new IllegalArgumentException(error);
         }
-
-        // generate the StorageOthello
-        StorageOthello turn = new StorageOthello(
-                boardCopy, numTurnsToAdd,
-                isP1TurnToAdd, passOccurredToAdd
-        );
-        return turn;
-    }
-
-    /*
-     * Checks if a string is valid to be converted for use as in a StorageOthello
-     */
-    private boolean checkValidRead(String test, boolean isFirstLine) {
-        // check if the first line is int, boolean, boolean
-        // check if the next 8 lines are all 0's, 1's, or 2's
-        boolean isValid = false;
-        if (isFirstLine) {
-            if (test.equals("false") || test.equals("true")) {
-                isValid = true;
-            } else {
-                try {
-                    Integer.parseInt(test);
-                    isValid = true;
-                } catch (NumberFormatException e) {
-                    isValid = false;
-                }
-            }
-        } else {
-            try {
-                int testInt = Integer.parseInt(test);
-
-                if (testInt == 0 || testInt == 1 || testInt == 2) {
-                    isValid = true;
-                } else {
-                    isValid = false;
-                }
-
-            } catch (NumberFormatException e) {
-                isValid = false;
+        if (loadedHistory.isEmpty()) {
+            throw new IllegalArgumentException("No turns saved");
+        }
+        // start from the oldest turn and replay forward, turns that don't follow
+        // from the one before restart the history
+        gameOver = false;
+        winner = "In Progress";
+        Iterator<StorageOthello> oldestFirst = loadedHistory.descendingIterator();
+        loadTurn(oldestFirst.next());
+        while (oldestFirst.hasNext()) {
+            StorageOthello turn = oldestFirst.next();
+            if (!replayTurn(turn)) {
+                loadTurn(turn);
             }
         }
-        return isValid;
+        findValidMoves();
+        checkPass();
+        // update the state to check for gameOver's
+        checkPass();
     }
 
     // utility getters
@@ -633,17 +572,121 @@ public class Othello {
      * returns the value of the input game space
      */
     public int getCell(int r, int c) {
-        return board[r][c];
+        if (wideBoard != null) {
+            return wideBoard.getCell(r, c);
+        }
+        return board.getCell(r, c);
+    }
+
+    /**
+     * sets a space on whichever board the game uses, leaving the scores and
+     * hash alone
+     */
+    private void putCell(int r, int c, int val) {
+        if (wideBoard != null) {
+            wideBoard.setCell(r, c, val);
+        } else {
+            board.setCell(r, c, val);
+        }
+    }
+
+    /**
+     * returns the number of squares per side
+     */
+    public int getSize() {
+        return size;
+    }
+
+    /**
+     * the masks, hash and game records are 64 bits, one per square of an 8x8
+     * board
+     */
+    private void requireStandardSize() {
+        if (wideBoard != null) {
+            throw new IllegalStateException("Only 8x8 games support this, the board is "
+                    + size + "x" + size);
+        }
+    }
+
+    /**
+     * Returns the Zobrist hash of the current position, including whose turn
+     * it is. Equal positions have equal hashes however they were reached.
+     * 
+     * @return 64 bit hash of the position
+     */
+    public long getHash() {
+        requireStandardSize();
+        if (isP1Turn) {
+            return pieceHash;
+        }
+        return pieceHash ^ Zobrist.SIDE_KEY;
+    }
+
+    /**
+     * Takes the current position, which stays as it is whatever happens to
+     * the game afterwards
+     *
+     * @return the pieces, whose turn it is and the pass flag
+     */
+    public Position getPosition() {
+        requireStandardSize();
+        return new Position(board.getBlack(), board.getWhite(), isP1Turn, passOccurred);
+    }
+
+    /**
+     * Returns the black pieces as a mask, bit r * 8 + c is set when (r, c) is
+     * black
+     * 
+     * @return mask of the black pieces
+     */
+    public long getBlackPieces() {
+        requireStandardSize();
+        return board.getBlack();
+    }
+
+    /**
+     * Returns the white pieces as a mask, bit r * 8 + c is set when (r, c) is
+     * white
+     * 
+     * @return mask of the white pieces
+     */
+    public long getWhitePieces() {
+        requireStandardSize();
+        return board.getWhite();
+    }
+
+    /**
+     * Returns the valid moves for the currentPlayer as a mask, bit r * 8 + c is
+     * set when (r, c) is a valid move. Nothing is allocated, so this is the call
+     * to use in loops, e.g. with a SquareIterator.
+     * 
+     * @return mask of the valid moves
+     */
+    public long legalMoveMask() {
+        requireStandardSize();
+        return validMoves;
     }
 
     /*
      * returns a set of valid moves for the currentPlayer
+     * builds a new set on every call, prefer legalMoveMask in hot code
      */
     public Set<Pair> getValidMoves() {
         Set<Pair> copiedSet = new TreeSet<Pair>();
-        for (Pair p : validMoves) {
-            Pair copyToAdd = new Pair(p.getFirst(), p.getSecond());
-            copiedSet.add(copyToAdd);
+        if (wideBoard != null) {
+            for (int r = 0; r < size; r++) {
+                for (int c = 0; c < size; c++) {
+                    if (WideBoard.isSet(wideMoves, WideBoard.square(r, c))) {
+                        copiedSet.add(new Pair(r, c));
+                    }
+                }
+            }
+            return copiedSet;
+        }
+        SquareIterator it = new SquareIterator(validMoves);
+        while (it.hasNext()) {
+            int sq = it.nextInt();
+            copiedSet.add(new Pair(BitBoard.row(sq), BitBoard.col(sq)));
         }
         return copiedSet;
     }
@@ -654,13 +697,10 @@ public class Othello {
      * @return
      */
     public int[][] getGameBoard() {
-        int[][] boardCopy = new int[8][8];
-        for (int i = 0; i < board.length; i++) {
-            for (int j = 0; j < board[i].length; j++) {
-                boardCopy[i][j] = board[i][j];
-            }
+        if (wideBoard != null) {
+            return wideBoard.toArray();
         }
-        return boardCopy;
+        return board.toArray();
     }
 
     /**
@@ -682,26 +722,153 @@ public class Othello {
     }
 
     /**
-     * Generate a copied list of the current gameHistory
+     * Generate a list of the turns in the game history, most recent first.
+     * The turns are rebuilt by stepping back through the undo log.
      * 
      * @return
      */
     public LinkedList<StorageOthello> getGameHistory() {
-        LinkedList<StorageOthello> copy = new LinkedList<StorageOthello>();
-        for (StorageOthello o : gameHistory) {
-            StorageOthello copyToAdd = new StorageOthello(
-                    o.getBoard(), o.getNumTurns(),
-                    o.getIsP1Turn(), o.getPassOccurred()
+        LinkedList<StorageOthello> history = new LinkedList<StorageOthello>();
+        if (wideBoard != null) {
+            // the whole history is built either way, so go forwards from its
+            // start rather than unflipping each move
+            WideBoard b = WideBoard.fromArray(historyStart.getBoard());
+            int black = historyStart.getBlackScore();
+            int white = historyStart.getWhiteScore();
+            history.addFirst(historyStart);
+            for (int i = 0; i < undoLog.size(); i++) {
+                boolean blackMoved = undoLog.getBlackMoved(i);
+                int flipped = b.play(undoLog.getSquare(i), blackMoved);
+                if (blackMoved) {
+                    black += flipped + 1;
+                    white -= flipped;
+                } else {
+                    white += flipped + 1;
+                    black -= flipped;
+                }
+                history.addFirst(
+                        new StorageOthello(
+                                b.toArray(), historyStart.getNumTurns() + i + 1, !blackMoved,
+                                undoLog.getPassOccurred(i), black, white
+                        )
+                );
+            }
+            return history;
+        }
+        BitBoard b = board.copy();
+        int turns = numTurns;
+        int black = blackScore;
+        int white = whiteScore;
+        for (int i = undoLog.size() - 1; i >= 0; i--) {
+            boolean blackMoved = undoLog.getBlackMoved(i);
+            history.addLast(
+                    new StorageOthello(
+                            b.toArray(), turns, !blackMoved,
+                            undoLog.getPassOccurred(i), black, white
+                    )
             );
-            copy.add(copyToAdd);
+            long flipMask = undoLog.getFlips(i);
+            b.undo(undoLog.getSquare(i), flipMask, blackMoved);
+            int flipped = Long.bitCount(flipMask);
+            if (blackMoved) {
+                black -= flipped + 1;
+                white += flipped;
+            } else {
+                white -= flipped + 1;
+                black += flipped;
+            }
+            turns--;
         }
-        return copy;
+        history.addLast(historyStart);
+        return history;
+    }
+
+    /**
+     * Generates a compact record of the game history, the first turn of the
+     * history and the squares played since
+     *
+     * @return a new GameRecord
+     */
+    public GameRecord toRecord() {
+        requireStandardSize();
+        BitBoard start = BitBoard.fromArray(historyStart.getBoard());
+        byte[] moves = new byte[undoLog.size()];
+        for (int i = 0; i < moves.length; i++) {
+            moves[i] = (byte) undoLog.getSquare(i);
+        }
+        return new GameRecord(
+                start.getBlack(), start.getWhite(), historyStart.getIsP1Turn(),
+                historyStart.getPassOccurred(), historyStart.getNumTurns(), moves
+        );
+    }
+
+    /**
+     * Replaces the game with one rebuilt from a record. If the record has
+     * checkpoints the game starts from the last one and only the moves after
+     * it are replayed, otherwise every recorded move is replayed. The replayed
+     * moves can be undone afterwards.
+     *
+     * @param record - the game to load
+     * @throws IllegalArgumentException if a recorded move isn't legal, the
+     *                                  game is reset
+     */
+    public void loadRecord(GameRecord record) {
+        BitBoard start = new BitBoard(record.getBlack(), record.getWhite());
+        int played = 0;
+        boolean blackToMove = record.getBlackToMove();
+        boolean pass = record.getPassOccurred();
+        int last = record.getCheckpointCount() - 1;
+        if (last >= 0) {
+            start = new BitBoard(record.getCheckpointBlack(last), record.getCheckpointWhite(last));
+            played = record.getCheckpointMove(last);
+            blackToMove = record.getCheckpointBlackToMove(last);
+            pass = record.getCheckpointPassOccurred(last);
+        }
+        gameOver = false;
+        winner = "In Progress";
+        loadTurn(
+                new StorageOthello(
+                        start.toArray(), record.getStartTurn() + played, blackToMove,
+                        pass, start.countBlack(), start.countWhite()
+                )
+        );
+        findValidMoves();
+        checkPass();
+        for (int i = played; i < record.getMoveCount(); i++) {
+            int sq = record.getMove(i);
+            if (gameOver || !playTurn(BitBoard.row(sq), BitBoard.col(sq))) {
+                reset();
+                throw new IllegalArgumentException("Illegal move in record: " + sq);
+            }
+            checkPass();
+        }
+        // update the state to check for gameOver's
+        checkPass();
     }
 
     // setters for only for testing purposes
     // private methods in public release
     public void setGameSpace(int r, int c, int val) {
-        board[r][c] = val;
+        if (wideBoard != null) {
+            adjustScore(wideBoard.getCell(r, c), -1);
+            wideBoard.setCell(r, c, val);
+            adjustScore(wideBoard.getCell(r, c), 1);
+            return;
+        }
+        int sq = BitBoard.square(r, c);
+        adjustScore(board.getCell(r, c), -1);
+        pieceHash ^= Zobrist.pieceKey(sq, board.getCell(r, c));
+        board.setCell(r, c, val);
+        adjustScore(board.getCell(r, c), 1);
+        pieceHash ^= Zobrist.pieceKey(sq, board.getCell(r, c));
+    }
+
+    private void adjustScore(int cell, int delta) {
+        if (cell == 1) {
+            blackScore += delta;
+        } else if (cell == 2) {
+            whiteScore += delta;
+        }
     }
 
     public void changeTurn() {
@@ -711,17 +878,19 @@ public class Othello {
     public void setBoard(int[][] inputBoard, boolean turnDesired, boolean passOccurred) {
         for (int i = 0; i < inputBoard.length; i++) {
             for (int j = 0; j < inputBoard[i].length; j++) {
-                board[i][j] = inputBoard[i][j];
+                putCell(i, j, inputBoard[i][j]);
             }
         }
         isP1Turn = turnDesired;
         numTurns++;
         this.passOccurred = passOccurred;
-        StorageOthello newTurn = new StorageOthello(
-                this.getGameBoard(), this.getNumTurns(),
-                this.getCurrentPlayer(), this.getPassOccurred()
-        );
-        gameHistory.addFirst(newTurn);
+        // the whole board was replaced so recount once
+        score();
+        if (board != null) {
+            pieceHash = Zobrist.hashPieces(board.getBlack(), board.getWhite());
+        }
+        // the new board can't be undone by un-flipping, so it starts the history
+        startHistory();
 
         findValidMoves();
     }
@@ -734,14 +903,14 @@ public class Othello {
         System.out.println("\n\nTurn " + numTurns + ":\n");
         System.out.println("Black: " + blackScore + " White: " + whiteScore);
         System.out.println("passOccurred: " + passOccurred + " gameOver: " + gameOver);
-        for (int i = 0; i < board.length; i++) {
-            for (int j = 0; j < board[i].length; j++) {
-                System.out.print(board[i][j]);
-                if (j < 7) {
+        for (int i = 0; i < size; i++) {
+            for (int j = 0; j < size; j++) {
+                System.out.print(getCell(i, j));
+                if (j < size - 1) {
                     System.out.print(" | ");
                 }
             }
-            if (i < 7) {
+            if (i < size - 1) {
                 System.out.println("\n-----------------------------");
             }
         }
@@ -772,7 +941,7 @@ public class Othello {
     public boolean compareBoard(int[][] inputBoard) {
         for (int i = 0; i < inputBoard.length; i++) {
             for (int j = 0; j < inputBoard[i].length; j++) {
-                if (inputBoard[i][j] != board[i][j]) {
+                if (inputBoard[i][j] != getCell(i, j)) {
                     return false;
                 }
             }
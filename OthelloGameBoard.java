@@ -2,8 +2,18 @@ package org.cis120.othello;
 
 import java.awt.*;
 import java.awt.event.*;
+import java.awt.image.BufferedImage;
 import javax.swing.*;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.util.*;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
 
 /**
  * This class will serve as the View-Controller for the Othello game
@@ -22,42 +32,439 @@ public class OthelloGameBoard extends JPanel {
     private JLabel setupStatus;
     private JLabel blackScore;
     private JLabel whiteScore;
+    // think time and speed of the last engine move
+    private JLabel engineStatus;
 
-    // Game constants 8x8 grid
+    // engines playing each color, null when a person plays that color
+    private Player blackPlayer;
+    private Player whitePlayer;
+    // true while an engine is picking a move on a worker thread
+    private boolean engineThinking;
+    // changes whenever the game is changed by something other than a move, so
+    // an engine move for an old position is thrown away
+    private int gameVersion;
+
+    // engine moves wait here until the last move has been shown, so moves
+    // come at most one per MOVE_FRAMES however fast the engines are
+    private final ArrayDeque<EngineMove> pendingMoves = new ArrayDeque<EngineMove>();
+    // 8x8 squares whose pieces are being turned over, and how far along
+    private long flipping;
+    private int frame;
+    private final javax.swing.Timer frameTimer;
+    private static final int FRAME_MILLIS = 16;
+    // the turn over takes FLIP_FRAMES and the next engine move is played
+    // MOVE_FRAMES after the last one at the soonest
+    private static final int FLIP_FRAMES = 12;
+    private static final int MOVE_FRAMES = 20;
+
+    // book moves for the engines and the hint, null if there is no book
+    private final OpeningBook book;
+    private boolean showHints;
+    // the book move being marked, -1 for none
+    private int hintSquare = -1;
+
+    // scores every valid move on its own thread while analysis is on
+    private final Analyzer analyzer;
+    private boolean analysis;
+    // the scores for the current position by square, null until the first
+    // depth is done, the best of them and whether they're final results
+    private int[] analysisScores;
+    private int analysisBest;
+    private boolean analysisExact;
+
+    // what each square looked like after the last change, so only the
+    // squares that change are repainted
+    private long[][] shown;
+    // the empty grid, drawn once per board size
+    private BufferedImage grid;
+    private int gridSize;
+    // bits of a square's look in shown, on top of its 0/1/2 cell value
+    private static final int BLACK_MOVE = 4;
+    private static final int WHITE_MOVE = 8;
+    private static final int BOOK_MOVE = 16;
+    private static final int ANALYZED = 32;
+    private static final int BEST_MOVE = 64;
+    private static final int EXACT_SCORE = 128;
+    // analysis scores are drawn in the same font whatever the board size
+    private static final Font SCORE_FONT = new Font(Font.SANS_SERIF, Font.BOLD, 16);
+    // trained evaluation for the engines, null to use the built in one
+    private final PatternWeights patternWeights;
+
+    // saves and loads run one at a time in order, off the event thread
+    private static final ExecutorService FILE_IO = Executors.newSingleThreadExecutor(
+            new ThreadFactory() {
+                @Override
+                public Thread newThread(Runnable r) {
+                    Thread thread = new Thread(r, "othello-file-io");
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+
+    private static final String BOOK_FILE = "files/opening.book";
+    private static final String PATTERNS_FILE = "files/patterns.weights";
+
+    // the board is drawn this big whatever its size
     public static final int BOARD_WIDTH = 800;
     public static final int BOARD_HEIGHT = 800;
 
     // constructor for OthelloGameBoard
     // we pass in references for labels we want to update using the game's internal
     // state
-    public OthelloGameBoard(JLabel setupStatus, JLabel blackScore, JLabel whiteScore) {
+    public OthelloGameBoard(
+            JLabel setupStatus, JLabel blackScore, JLabel whiteScore, JLabel engineStatus
+    ) {
         setBorder(BorderFactory.createLineBorder(Color.BLACK));
         setFocusable(true);
+        setBackground(Color.GREEN);
 
         o = new Othello();
         this.setupStatus = setupStatus;
         this.blackScore = blackScore;
         this.whiteScore = whiteScore;
+        this.engineStatus = engineStatus;
+        this.book = openBook();
+        this.patternWeights = loadPatternWeights();
+        this.analyzer = new Analyzer(new Analyzer.Listener() {
+            @Override
+            public void analyzed(
+                    final Position position, final int depth, final int[] scores
+            ) {
+                SwingUtilities.invokeLater(new Runnable() {
+                    @Override
+                    public void run() {
+                        showAnalysis(position, depth, scores);
+                    }
+                });
+            }
+        }, patternWeights);
+
+        // frames are timed on the event thread, so they never wait for an
+        // engine and engines never wait for them
+        frameTimer = new javax.swing.Timer(FRAME_MILLIS, new ActionListener() {
+            @Override
+            public void actionPerformed(ActionEvent e) {
+                nextFrame();
+            }
+        });
 
         addMouseListener(new MouseAdapter() {
             @Override
             public void mouseReleased(MouseEvent e) {
+                // engines move on their own
+                if (currentEngine() != null) {
+                    return;
+                }
                 Point p = e.getPoint();
 
-                // will vary from 0 to 7
-                o.playTurn(p.y / 100, p.x / 100);
-                // checks if turn needs to be passed, flips turn if so
-                o.checkPass();
+                // will vary from 0 to the size - 1, playTurn ignores clicks
+                // past the last square
+                int side = squareSide();
+                playMove(p.y / side, p.x / side);
+            }
+        });
+    }
+
+    /*
+     * Opens the opening book if there is one, it's built by
+     * OpeningBookBuilder
+     */
+    private static OpeningBook openBook() {
+        Path file = Paths.get(BOOK_FILE);
+        if (!Files.exists(file)) {
+            return null;
+        }
+        try {
+            return new OpeningBook(file);
+        } catch (IOException | IllegalArgumentException e) {
+            System.out.println("Opening book not loaded: " + e.getMessage());
+            return null;
+        }
+    }
+
+    /*
+     * Loads trained pattern weights if there are any, they're made by
+     * PatternTrainer
+     */
+    private static PatternWeights loadPatternWeights() {
+        Path file = Paths.get(PATTERNS_FILE);
+        if (!Files.exists(file)) {
+            return null;
+        }
+        try {
+            return PatternWeights.load(file);
+        } catch (IOException | IllegalArgumentException e) {
+            System.out.println("Pattern weights not loaded: " + e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * returns the trained evaluation weights, null if there aren't any
+     */
+    public PatternWeights getPatternWeights() {
+        return patternWeights;
+    }
+
+    /**
+     * returns the opening book, null if there isn't one
+     */
+    public OpeningBook getOpeningBook() {
+        return book;
+    }
+
+    /**
+     * Sets whether the book move is marked on the board
+     */
+    public void setShowHints(boolean showHints) {
+        this.showHints = showHints;
+        repaintChanges();
+    }
+
+    /**
+     * Sets whether every valid move is scored in the background and the
+     * scores drawn on the board
+     */
+    public void setAnalysis(boolean analysis) {
+        this.analysis = analysis;
+        restartAnalysis();
+        repaintChanges();
+    }
+
+    /*
+     * Stops analysing the old position and starts on the current one. Called
+     * whenever the game changes, before the board is repainted.
+     */
+    private void restartAnalysis() {
+        analysisScores = null;
+        if (analysis && o.getSize() == BitBoard.SIZE && !o.getGameOver()) {
+            analyzer.analyze(o.getPosition());
+        } else {
+            analyzer.stop();
+        }
+    }
+
+    /*
+     * Shows the scores of a finished depth, if they're still for the position
+     * on the board
+     */
+    private void showAnalysis(Position position, int depth, int[] scores) {
+        if (!analysis || o.getSize() != BitBoard.SIZE || !position.equals(o.getPosition())) {
+            return;
+        }
+        analysisScores = scores;
+        // searching as many plies as there are empty squares reaches the end
+        analysisExact = depth >= Long.bitCount(~(position.getBlack() | position.getWhite()));
+        analysisBest = Integer.MIN_VALUE;
+        for (long m = position.legalMoves(); m != 0; m &= m - 1) {
+            analysisBest = Math.max(analysisBest, scores[Long.numberOfTrailingZeros(m)]);
+        }
+        repaintChanges();
+    }
+
+    /*
+     * Plays a move for whoever's turn it is and lets an engine reply
+     */
+    private void playMove(int r, int c) {
+        long black = 0L;
+        long white = 0L;
+        if (o.getSize() == BitBoard.SIZE) {
+            black = o.getBlackPieces();
+            white = o.getWhitePieces();
+        }
+        o.playTurn(r, c);
+        if (o.getSize() == BitBoard.SIZE) {
+            // the pieces that changed color get turned over
+            startFlips((black & o.getWhitePieces()) | (white & o.getBlackPieces()));
+        }
+        // checks if turn needs to be passed, flips turn if so
+        o.checkPass();
+        restartAnalysis();
+
+        // if a turn did pass, run again and see if we need to gameOver
+        if (o.getPassOccurred()) {
+            checkGame();
+        } else {
+            updateStatus();
+            repaintChanges();
+        }
+        startEngineTurn();
+    }
+
+    /**
+     * Sets who plays a color
+     * 
+     * @param black  - true to set the black player, false for white
+     * @param player - the engine to play the color, null for a person
+     */
+    public void setPlayer(boolean black, Player player) {
+        gameVersion++;
+        if (black) {
+            blackPlayer = player;
+        } else {
+            whitePlayer = player;
+        }
+        startEngineTurn();
+    }
+
+    /*
+     * returns the engine whose turn it is, null if it is a person's turn.
+     * Engines only play 8x8 games.
+     */
+    private Player currentEngine() {
+        if (o.getSize() != BitBoard.SIZE) {
+            return null;
+        }
+        if (o.getCurrentPlayer()) {
+            return blackPlayer;
+        }
+        return whitePlayer;
+    }
+
+    /*
+     * If an engine is to move, picks its move on a worker thread so painting
+     * carries on, then queues it for the frame timer to play
+     */
+    private void startEngineTurn() {
+        final Player engine = currentEngine();
+        if (engineThinking || !pendingMoves.isEmpty() || engine == null || o.getGameOver()) {
+            return;
+        }
+        engineThinking = true;
+        final int version = gameVersion;
+        final boolean black = o.getCurrentPlayer();
+        // the engine gets a game of its own so it never sees a half made move
+        final Othello position = new Othello(o.getPosition());
+
+        new SwingWorker<SearchResult, Void>() {
+            @Override
+            protected SearchResult doInBackground() {
+                return think(engine, position);
+            }
 
-                // if a turn did pass, run again and see if we need to gameOver
-                if (o.getPassOccurred()) {
-                    checkGame();
+            @Override
+            protected void done() {
+                engineThinking = false;
+                SearchResult result;
+                try {
+                    result = get();
+                } catch (InterruptedException | ExecutionException e) {
+                    setupStatus.setText("Engine failed: " + e.getCause());
                     return;
                 }
-                updateStatus();
-                repaint();
+                pendingMoves.addLast(new EngineMove(version, black, result));
+                frameTimer.start();
             }
-        });
+        }.execute();
+    }
+
+    /*
+     * Runs an engine, with the search statistics of the engines that keep
+     * them and just the time for the rest
+     */
+    private static SearchResult think(Player engine, Othello position) {
+        if (engine instanceof AlphaBetaEngine) {
+            return ((AlphaBetaEngine) engine).search(position);
+        }
+        if (engine instanceof MctsEngine) {
+            return ((MctsEngine) engine).search(position);
+        }
+        long start = System.nanoTime();
+        int move = engine.chooseMove(position);
+        return new SearchResult(move, 0, 0, 0, System.nanoTime() - start);
+    }
+
+    /*
+     * Starts turning over pieces
+     */
+    private void startFlips(long flips) {
+        flipping = flips;
+        frame = 0;
+        frameTimer.start();
+    }
+
+    /*
+     * Stops any turning over and drops queued engine moves, for when the game
+     * is replaced
+     */
+    private void stopAnimation() {
+        flipping = 0L;
+        frame = MOVE_FRAMES;
+        pendingMoves.clear();
+        frameTimer.stop();
+    }
+
+    /*
+     * Called every frame by the timer. Turns over the flipped pieces a step
+     * at a time, then plays the next queued engine move once the last move
+     * has been shown for MOVE_FRAMES.
+     */
+    private void nextFrame() {
+        if (frame < MOVE_FRAMES) {
+            frame++;
+            if (flipping != 0) {
+                repaintSquares(flipping);
+                if (frame >= FLIP_FRAMES) {
+                    flipping = 0L;
+                }
+            }
+            return;
+        }
+        EngineMove next = pendingMoves.pollFirst();
+        if (next == null) {
+            frameTimer.stop();
+            return;
+        }
+        SearchResult result = next.result;
+        // the game changed while the engine was thinking, think again
+        if (next.version != gameVersion || result.getBestMove() < 0) {
+            startEngineTurn();
+            return;
+        }
+        showEngineStatus(next.black, result);
+        playMove(BitBoard.row(result.getBestMove()), BitBoard.col(result.getBestMove()));
+    }
+
+    private void showEngineStatus(boolean black, SearchResult result) {
+        if (engineStatus == null) {
+            return;
+        }
+        String color = "White";
+        if (black) {
+            color = "Black";
+        }
+        String text = color + " engine: " + result.getElapsedMillis() + " ms";
+        if (result.getNodes() > 0) {
+            text += String.format(", %,d nodes/s", result.getNodesPerSecond());
+        }
+        engineStatus.setText(text);
+    }
+
+    /*
+     * Repaints the 8x8 squares of a mask
+     */
+    private void repaintSquares(long squares) {
+        int side = squareSide();
+        for (long m = squares; m != 0; m &= m - 1) {
+            int sq = Long.numberOfTrailingZeros(m);
+            repaint(side * BitBoard.col(sq), side * BitBoard.row(sq), side, side);
+        }
+    }
+
+    /*
+     * An engine's move waiting to be played
+     */
+    private static final class EngineMove {
+        // the gameVersion it was searched in
+        private final int version;
+        private final boolean black;
+        private final SearchResult result;
+
+        EngineMove(int version, boolean black, SearchResult result) {
+            this.version = version;
+            this.black = black;
+            this.result = result;
+        }
     }
 
     /*
@@ -67,7 +474,7 @@ public class OthelloGameBoard extends JPanel {
         // check for a gameOver
         o.checkPass();
         updateStatus();
-        repaint();
+        repaintChanges();
         requestFocusInWindow();
     }
 
@@ -75,40 +482,144 @@ public class OthelloGameBoard extends JPanel {
      * Resets the internal game state
      */
     public void reset() {
+        gameVersion++;
+        stopAnimation();
         o.reset();
+        restartAnalysis();
         updateStatus();
-        repaint();
+        repaintChanges();
         requestFocusInWindow();
+        startEngineTurn();
     }
 
     /*
-     * Undoes the previous move
+     * Starts a new game on a board of another size
+     *
+     * @param size - squares per side, an even number from 6 to 16
+     */
+    public void newGame(int size) {
+        int oldSize = o.getSize();
+        gameVersion++;
+        stopAnimation();
+        o = new Othello(size);
+        firePropertyChange("boardSize", oldSize, size);
+        restartAnalysis();
+        updateStatus();
+        repaintChanges();
+        requestFocusInWindow();
+        startEngineTurn();
+    }
+
+    /*
+     * Returns the number of squares per side of the current game
+     */
+    public int getBoardSize() {
+        return o.getSize();
+    }
+
+    /*
+     * Undoes the previous move, against an engine its reply is undone as well
+     * so it's a person's turn again
      */
     public void undo() {
-        o.undoMove();
+        gameVersion++;
+        stopAnimation();
+        boolean hasPerson = blackPlayer == null || whitePlayer == null;
+        while (o.undoMove() && hasPerson && currentEngine() != null) {
+            // keep undoing
+        }
+        restartAnalysis();
         updateStatus();
-        repaint();
+        repaintChanges();
         requestFocusInWindow();
+        startEngineTurn();
     }
 
     /*
-     * Saves the previous 4 turns or less
+     * Saves the game on the file thread so the board never waits on the disk.
+     * The record is taken now, moves made while it's written aren't saved.
      */
     public void save() {
-        o.saveToGameFile();
-        updateStatus();
-        repaint();
+        if (o.getSize() != BitBoard.SIZE) {
+            JOptionPane.showMessageDialog(this, "Game not saved: only 8x8 games can be saved");
+            return;
+        }
+        final GameRecord record = o.toRecord();
+        FILE_IO.execute(new SwingWorker<Void, Void>() {
+            @Override
+            protected Void doInBackground() throws IOException {
+                Othello.writeSaveFile(record);
+                return null;
+            }
+
+            @Override
+            protected void done() {
+                try {
+                    get();
+                    JOptionPane.showMessageDialog(OthelloGameBoard.this, "Game Saved");
+                } catch (InterruptedException | ExecutionException e) {
+                    JOptionPane.showMessageDialog(OthelloGameBoard.this,
+                            "Game not saved: " + failureReason(e));
+                }
+            }
+        });
         requestFocusInWindow();
     }
 
     /*
-     * Loads the saved game history from files/saved_othello.csv
+     * Loads the saved game on the file thread into a game of its own, then
+     * swaps it in. If the save can't be loaded the current game carries on.
      */
     public void load() {
-        o.loadFromGameFile();
-        updateStatus();
-        repaint();
-        requestFocusInWindow();
+        FILE_IO.execute(new SwingWorker<Othello, Void>() {
+            @Override
+            protected Othello doInBackground() throws IOException {
+                Othello loaded = new Othello();
+                loaded.readSaveFile();
+                return loaded;
+            }
+
+            @Override
+            protected void done() {
+                Othello loaded;
+                try {
+                    loaded = get();
+                } catch (InterruptedException | ExecutionException e) {
+                    JOptionPane.showMessageDialog(OthelloGameBoard.this,
+                            "Game not loaded: " + failureReason(e));
+                    return;
+                }
+                int oldSize = o.getSize();
+                gameVersion++;
+                stopAnimation();
+                o = loaded;
+                // saved games are 8x8, tell the size picker if that changed
+                firePropertyChange("boardSize", oldSize, o.getSize());
+                restartAnalysis();
+                updateStatus();
+                repaintChanges();
+                JOptionPane.showMessageDialog(OthelloGameBoard.this, "Game Loaded");
+                requestFocusInWindow();
+                startEngineTurn();
+            }
+        });
+    }
+
+    /*
+     * returns a message for why a save or load failed
+     */
+    private static String failureReason(Exception e) {
+        Throwable cause = e;
+        if (e instanceof ExecutionException && e.getCause() != null) {
+            cause = e.getCause();
+        }
+        if (cause instanceof NoSuchFileException) {
+            return "No game saved";
+        }
+        if (cause.getMessage() == null) {
+            return cause.toString();
+        }
+        return cause.getMessage();
     }
 
     /**
@@ -145,55 +656,212 @@ public class OthelloGameBoard extends JPanel {
         }
     }
 
+    /*
+     * Repaints the squares that look different since the last call, the
+     * placed and flipped pieces, the old and new move marks and the changed
+     * analysis scores. A new board size repaints everything.
+     */
+    private void repaintChanges() {
+        hintSquare = -1;
+        // mark the book move, looked up rather than searched so it's free
+        if (showHints && book != null) {
+            SearchResult hint = book.lookup(o);
+            if (hint != null) {
+                hintSquare = hint.getBestMove();
+            }
+        }
+        int size = o.getSize();
+        if (shown == null || shown.length != size) {
+            shown = new long[size][size];
+            for (int i = 0; i < size; i++) {
+                for (int j = 0; j < size; j++) {
+                    shown[i][j] = squareLook(i, j);
+                }
+            }
+            repaint();
+            return;
+        }
+        int side = squareSide();
+        for (int i = 0; i < size; i++) {
+            for (int j = 0; j < size; j++) {
+                long look = squareLook(i, j);
+                if (look != shown[i][j]) {
+                    shown[i][j] = look;
+                    repaint(side * j, side * i, side, side);
+                }
+            }
+        }
+    }
+
+    /*
+     * returns the piece and marks a square is drawn with, as bits, and its
+     * analysis score in the top half
+     */
+    private long squareLook(int r, int c) {
+        long look = o.getCell(r, c);
+        if (o.isValidMove(r, c)) {
+            if (o.getCurrentPlayer()) {
+                look |= BLACK_MOVE;
+            } else {
+                look |= WHITE_MOVE;
+            }
+        }
+        // book moves are only for 8x8 games
+        if (hintSquare >= 0 && hintSquare == BitBoard.square(r, c)) {
+            look |= BOOK_MOVE;
+        }
+        // analysis is only for 8x8 games
+        if (analysisScores != null && o.isValidMove(r, c)) {
+            int score = analysisScores[BitBoard.square(r, c)];
+            look |= ANALYZED | ((long) score << 32);
+            if (score == analysisBest) {
+                look |= BEST_MOVE;
+            }
+            if (analysisExact) {
+                look |= EXACT_SCORE;
+            }
+        }
+        return look;
+    }
+
+    /*
+     * Draws the lines of the empty board
+     */
+    private static BufferedImage drawGrid(int size, int side) {
+        int edge = side * size;
+        BufferedImage image = new BufferedImage(edge + 1, edge + 1, BufferedImage.TYPE_INT_RGB);
+        Graphics g = image.getGraphics();
+        g.setColor(Color.GREEN);
+        g.fillRect(0, 0, edge + 1, edge + 1);
+        g.setColor(Color.black);
+        int pos = 0;
+        for (int i = 0; i <= size; i++) {
+            // size + 1 lines vertical
+            g.drawLine(pos, 0, pos, edge);
+            // size + 1 lines horizontal
+            g.drawLine(0, pos, edge, pos);
+            pos += side;
+        }
+        g.dispose();
+        return image;
+    }
+
     @Override
     public void paintComponent(Graphics g) {
         super.paintComponent(g);
-        setBackground(Color.GREEN);
-        // draw the board grid here
-        // do this based on the cell values
-        // Draws board grid
-        int gridSideLength = 100;
-        int pos = 0;
-        for (int i = 0; i < 9; i++) {
-            // nine lines vertical
-            g.drawLine(pos, 0, pos, BOARD_HEIGHT);
-            // nine lines horizontal
-            g.drawLine(0, pos, BOARD_WIDTH, pos);
-            pos += gridSideLength;
+        int size = o.getSize();
+        int side = squareSide();
+        // the grid only changes with the board size
+        if (grid == null || gridSize != size) {
+            grid = drawGrid(size, side);
+            gridSize = size;
         }
+        g.drawImage(grid, 0, 0, null);
 
-        // draw the current pieces
-        for (int i = 0; i < 8; i++) {
-            for (int j = 0; j < 8; j++) {
+        // only the squares that were repainted need their pieces drawn
+        Rectangle clip = g.getClipBounds();
+        if (clip == null) {
+            clip = new Rectangle(0, 0, getWidth(), getHeight());
+        }
+        int firstRow = Math.max(0, clip.y / side);
+        int lastRow = Math.min(size - 1, (clip.y + clip.height - 1) / side);
+        int firstCol = Math.max(0, clip.x / side);
+        int lastCol = Math.min(size - 1, (clip.x + clip.width - 1) / side);
+        // pieces take up 80% of a square
+        int margin = side / 10;
+        int piece = side - 2 * margin;
+        if (analysisScores != null) {
+            g.setFont(SCORE_FONT);
+        }
+        for (int i = firstRow; i <= lastRow; i++) {
+            for (int j = firstCol; j <= lastCol; j++) {
                 int val = o.getCell(i, j);
+                int width = piece;
+                if (flipping != 0 && size == BitBoard.SIZE
+                        && (flipping & (1L << BitBoard.square(i, j))) != 0) {
+                    // turned over pieces shrink to an edge showing their old
+                    // color, then grow back showing the new one
+                    int half = FLIP_FRAMES / 2;
+                    width = piece * Math.abs(frame - half) / half;
+                    if (frame < half) {
+                        val = 3 - val;
+                    }
+                }
+                int x = margin + side * j + (piece - width) / 2;
                 // draw black piece
                 if (val == 1) {
                     g.setColor(Color.black);
-                    g.fillOval(10 + 100 * j, 10 + 100 * i, 80, 80);
+                    g.fillOval(x, margin + side * i, width, piece);
                 }
                 // draw white piece
                 if (val == 2) {
                     g.setColor(Color.white);
-                    g.fillOval(10 + 100 * j, 10 + 100 * i, 80, 80);
+                    g.fillOval(x, margin + side * i, width, piece);
+                }
+                // draw the valid moves as open circles in the color of whose
+                // turn it is
+                if (o.isValidMove(i, j)) {
+                    if (o.getCurrentPlayer()) {
+                        g.setColor(Color.black);
+                    } else {
+                        g.setColor(Color.white);
+                    }
+                    g.drawOval(margin + side * j, margin + side * i, piece, piece);
+                }
+                if (hintSquare >= 0 && hintSquare == BitBoard.square(i, j)) {
+                    g.setColor(Color.red);
+                    g.fillOval(side * j + side * 2 / 5, side * i + side * 2 / 5,
+                            side / 5, side / 5);
+                }
+                if (analysisScores != null && o.isValidMove(i, j)) {
+                    drawScore(g, analysisScores[BitBoard.square(i, j)], i, j);
                 }
-
             }
         }
+        g.setColor(Color.black);
+    }
 
-        // draw the valid moves
-        // also draw the valid circle spaces as a different color - based on whose turn
-        // it is
-        Set<Pair> validMoves = o.getValidMoves();
-        for (Pair p : validMoves) {
-            if (o.getCurrentPlayer()) {
-                g.setColor(Color.black);
-            } else {
-                g.setColor(Color.white);
-            }
-            g.drawOval(10 + 100 * p.getSecond(), 10 + 100 * p.getFirst(), 80, 80);
+    /*
+     * Writes a move's analysis score below the middle of its square, the best
+     * move in red
+     */
+    private void drawScore(Graphics g, int score, int r, int c) {
+        if (score == analysisBest) {
+            g.setColor(Color.red);
+        } else if (o.getCurrentPlayer()) {
+            g.setColor(Color.black);
+        } else {
+            g.setColor(Color.white);
         }
-        // set the color back??
-        g.setColor(Color.black);
+        String text = scoreText(score, analysisExact);
+        int side = squareSide();
+        int width = g.getFontMetrics().stringWidth(text);
+        g.drawString(text, side * c + (side - width) / 2, side * r + side * 4 / 5);
+    }
+
+    /*
+     * returns a score as the engine's evaluation, which isn't in discs. A win
+     * or loss found by searching to the end is W or L and the final disc
+     * margin, and a tie once the search is exact is a draw.
+     */
+    private static String scoreText(int score, boolean exact) {
+        if (score > AlphaBetaEngine.WIN_SCORE) {
+            return "W+" + (score - AlphaBetaEngine.WIN_SCORE);
+        }
+        if (score < -AlphaBetaEngine.WIN_SCORE) {
+            return "L" + (score + AlphaBetaEngine.WIN_SCORE);
+        }
+        if (exact) {
+            return "Draw";
+        }
+        return String.format("%+d", score);
+    }
+
+    /*
+     * returns the width of a square in pixels, 100 on an 8x8 board
+     */
+    private int squareSide() {
+        return BOARD_WIDTH / o.getSize();
     }
 
     /**
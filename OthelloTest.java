@@ -3,6 +3,14 @@ package org.cis120.othello;
 import org.junit.jupiter.api.*;
 import static org.junit.jupiter.api.Assertions.*;
 
+import java.io.File;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.util.*;
 
 // Tests for the game model
@@ -36,7 +44,7 @@ public class OthelloTest {
     @Test
     public void testResetAndConstructor() {
         assertTrue(o.compareBoard(resetBoard));
-        assertEquals(o.gameHistory.size(), 1);
+        assertEquals(o.getGameHistory().size(), 1);
         assertFalse(o.getGameOver());
         assertTrue(o.getCurrentPlayer());
         assertEquals(o.getNumTurns(), 0);
@@ -158,6 +166,19 @@ public class OthelloTest {
         assertEquals(expectedValidMoves, o.getValidMoves());
     }
 
+    @Test
+    public void testLegalMoveMaskMatchesValidMoves() {
+        assertTrue(o.playTurn(2, 3));
+        Set<Pair> fromMask = new TreeSet<Pair>();
+        SquareIterator it = new SquareIterator(o.legalMoveMask());
+        while (it.hasNext()) {
+            int sq = it.nextInt();
+            fromMask.add(new Pair(sq / 8, sq % 8));
+        }
+        assertEquals(o.getValidMoves(), fromMask);
+        assertEquals(3, Long.bitCount(o.legalMoveMask()));
+    }
+
     // check for a situation where a player must pass
 
     // check for game overs
@@ -208,6 +229,47 @@ public class OthelloTest {
         assertEquals(1, o.getBlackScore());
     }
 
+    @Test
+    public void testScoreUpdatesWithTurnsAndUndo() {
+        assertTrue(o.playTurn(3, 2));
+        assertEquals(4, o.getBlackScore());
+        assertEquals(1, o.getWhiteScore());
+        assertTrue(o.playTurn(2, 2));
+        assertEquals(3, o.getBlackScore());
+        assertEquals(3, o.getWhiteScore());
+        assertTrue(o.undoMove());
+        assertEquals(4, o.getBlackScore());
+        assertEquals(1, o.getWhiteScore());
+        o.setGameSpace(0, 0, 2);
+        assertEquals(2, o.getWhiteScore());
+    }
+
+    @Test
+    public void testHashSameForTranspositions() {
+        Othello other = new Othello();
+        long start = o.getHash();
+        assertTrue(o.playTurn(2, 3));
+        assertTrue(o.playTurn(2, 2));
+        assertTrue(o.playTurn(3, 2));
+        assertTrue(other.playTurn(3, 2));
+        assertTrue(other.playTurn(2, 2));
+        assertTrue(other.playTurn(2, 3));
+        assertTrue(o.compareBoard(other.getGameBoard()));
+        assertEquals(o.getHash(), other.getHash());
+        assertTrue(o.undoMove());
+        assertTrue(o.undoMove());
+        assertTrue(o.undoMove());
+        assertEquals(start, o.getHash());
+        assertNotEquals(start, other.getHash());
+    }
+
+    @Test
+    public void testPairHashCodeMatchesEquals() {
+        assertEquals(new Pair(3, 4).hashCode(), new Pair(3, 4).hashCode());
+        Set<Pair> moves = new HashSet<Pair>(o.getValidMoves());
+        assertTrue(moves.contains(new Pair(2, 3)));
+    }
+
     // test loading a game state to the game
     @Test
     public void testSaveAndLoad() {
@@ -227,4 +289,775 @@ public class OthelloTest {
         assertTrue(o.compareBoard(expectedBoard));
     }
 
+    @Test
+    public void testUndoAfterLoad() {
+        assertTrue(o.playTurn(3, 2));
+        assertTrue(o.playTurn(2, 2));
+        o.saveToGameFile();
+        o.reset();
+        o.loadFromGameFile();
+        assertEquals(3, o.getGameHistory().size());
+        assertTrue(o.undoMove());
+        assertTrue(o.undoMove());
+        assertFalse(o.undoMove());
+        assertTrue(o.getCurrentPlayer());
+        assertTrue(o.compareBoard(resetBoard));
+        assertEquals(2, o.getBlackScore());
+        assertEquals(2, o.getWhiteScore());
+    }
+
+    @Test
+    public void testPerftMatchesKnownCounts() {
+        // the first finished games show up at depth 9
+        for (int depth = 1; depth <= 9; depth++) {
+            assertEquals(Perft.KNOWN[depth], Perft.perft(o, depth));
+        }
+        assertTrue(o.compareBoard(resetBoard));
+        assertEquals(0, o.getNumTurns());
+        assertEquals(Perft.KNOWN[10], Perft.perft(10));
+        assertEquals(Perft.KNOWN[8], Perft.parallelPerft(8, 2));
+    }
+
+    // plays a seeded random game to the end
+    private void playRandomGame(Othello game, long seed) {
+        Random random = new Random(seed);
+        while (!game.getGameOver()) {
+            // after a pass the other player may have no move either,
+            // checking again ends the game
+            if (game.legalMoveMask() == 0) {
+                game.checkPass();
+                continue;
+            }
+            int sq = RandomPlayer.pick(game.legalMoveMask(), random);
+            game.playTurn(sq / 8, sq % 8);
+            game.checkPass();
+        }
+    }
+
+    @Test
+    public void testRecordOfFullGame() {
+        playRandomGame(o, 12);
+        GameRecord record = o.toRecord();
+        assertTrue(record.isFromOpening());
+        assertEquals(o.getNumTurns(), record.getMoveCount());
+        byte[] bytes = record.toBytes();
+        assertTrue(bytes.length < 100);
+        assertEquals(record, GameRecord.decode(ByteBuffer.wrap(bytes)));
+
+        Othello loaded = new Othello();
+        loaded.loadRecord(record);
+        assertTrue(loaded.compareBoard(o.getGameBoard()));
+        assertTrue(loaded.getGameOver());
+        assertEquals(o.getWinner(), loaded.getWinner());
+        assertEquals(o.getBlackScore(), loaded.getBlackScore());
+        assertEquals(o.getNumTurns(), loaded.getNumTurns());
+    }
+
+    @Test
+    public void testRecordFromCustomStartUndoes() {
+        assertTrue(o.playTurn(3, 2));
+        // the board can't be undone past setBoard, so it starts the record
+        o.setBoard(o.getGameBoard(), false, false);
+        int turns = o.getNumTurns();
+        assertTrue(o.playTurn(2, 2));
+        GameRecord record = o.toRecord();
+        assertFalse(record.isFromOpening());
+
+        Othello loaded = new Othello();
+        loaded.loadRecord(GameRecord.decode(ByteBuffer.wrap(record.toBytes())));
+        assertTrue(loaded.compareBoard(o.getGameBoard()));
+        assertEquals(turns + 1, loaded.getNumTurns());
+        assertTrue(loaded.undoMove());
+        assertEquals(turns, loaded.getNumTurns());
+        assertEquals(0, loaded.getCell(2, 2));
+        assertFalse(loaded.getCurrentPlayer());
+        assertFalse(loaded.undoMove());
+    }
+
+    @Test
+    public void testRecordChecksumAndIllegalMoves() {
+        assertTrue(o.playTurn(3, 2));
+        byte[] bytes = o.toRecord().toBytes();
+        bytes[3] ^= 1;
+        try {
+            GameRecord.decode(ByteBuffer.wrap(bytes));
+            fail("a changed move should fail the checksum");
+        } catch (IllegalArgumentException e) {
+            // expected
+        }
+
+        // (0, 0) isn't a legal first move
+        try {
+            o.loadRecord(new GameRecord(new byte[] { 0 }));
+            fail("the move isn't legal");
+        } catch (IllegalArgumentException e) {
+            assertTrue(o.compareBoard(resetBoard));
+        }
+    }
+
+    @Test
+    public void testRecordFileRoundTrip() throws IOException {
+        List<GameRecord> games = new ArrayList<GameRecord>();
+        for (int i = 0; i < 3000; i++) {
+            Othello game = new Othello();
+            playRandomGame(game, i);
+            games.add(game.toRecord());
+        }
+        Path file = Files.createTempFile("games", ".bin");
+        try {
+            GameRecord.writeGames(file, games);
+            // more than one read buffer worth
+            assertTrue(Files.size(file) > 1 << 16);
+            assertEquals(games, GameRecord.readGames(file));
+        } finally {
+            Files.delete(file);
+        }
+    }
+
+    @Test
+    public void testFailedWriteKeepsOldFile() throws IOException {
+        Path dir = Files.createTempDirectory("games");
+        Path file = dir.resolve("saved.game");
+        playRandomGame(o, 1);
+        GameRecord old = o.toRecord();
+        try {
+            GameRecord.writeGames(file, Collections.singletonList(old));
+            // the second game can't be encoded, so the write fails part way
+            try {
+                GameRecord.writeGames(file, Arrays.asList(old, null));
+                fail("null isn't a game");
+            } catch (NullPointerException e) {
+                assertEquals(Collections.singletonList(old), GameRecord.readGames(file));
+            }
+            // and no temp file is left behind
+            assertEquals(1, dir.toFile().list().length);
+        } finally {
+            for (File f : dir.toFile().listFiles()) {
+                f.delete();
+            }
+            Files.delete(dir);
+        }
+    }
+
+    @Test
+    public void testGameDatabaseAcrossSegments() throws Exception {
+        Path dir = Files.createTempDirectory("games");
+        Path file = dir.resolve("games.db");
+        final List<GameRecord> games = new ArrayList<GameRecord>();
+        for (int i = 0; i < 500; i++) {
+            Othello game = new Othello();
+            playRandomGame(game, i);
+            games.add(game.toRecord());
+        }
+        try {
+            // 1KB segments so records cross from one segment into the next
+            GameDatabase db = new GameDatabase(file, 10);
+            assertEquals(0, db.appendAll(games.subList(0, 300)));
+            assertEquals(300, db.append(games.get(300)));
+            assertEquals(games.get(123), db.read(123));
+            assertEquals(301, db.size());
+            db.close();
+
+            // reopening finds the games and appends after them
+            final GameDatabase reopened = new GameDatabase(file, 10);
+            assertEquals(301, reopened.size());
+            reopened.appendAll(games.subList(301, 500));
+            Thread[] readers = new Thread[4];
+            final boolean[] ok = new boolean[readers.length];
+            for (int t = 0; t < readers.length; t++) {
+                final int id = t;
+                readers[t] = new Thread(new Runnable() {
+                    public void run() {
+                        try {
+                            for (int i = id; i < 500; i += 2) {
+                                if (!games.get(i).equals(reopened.read(i))) {
+                                    return;
+                                }
+                            }
+                            ok[id] = true;
+                        } catch (IOException e) {
+                            // ok stays false
+                        }
+                    }
+                });
+                readers[t].start();
+            }
+            for (Thread reader : readers) {
+                reader.join();
+            }
+            for (boolean readerOk : ok) {
+                assertTrue(readerOk);
+            }
+            try {
+                reopened.read(500);
+                fail("there is no game 500");
+            } catch (IndexOutOfBoundsException e) {
+                // expected
+            }
+            reopened.close();
+        } finally {
+            Files.deleteIfExists(file);
+            Files.deleteIfExists(dir.resolve("games.db.idx"));
+            Files.delete(dir);
+        }
+    }
+
+    private static TurnParser parserOf(String text) {
+        return new TurnParser(ByteBuffer.wrap(text.getBytes()));
+    }
+
+    private static final String TURN_4 = "4,true,false\n"
+            + "0,0,0,0,0,0,0,0\n" + "0,2,0,0,0,0,0,0\n" + "0,1,2,1,0,0,0,0\n"
+            + "0,0,0,2,1,0,0,0\n" + "0,0,0,0,0,0,0,0\n" + "0,0,0,0,0,0,0,0\n"
+            + "0,0,0,0,0,0,0,0\n" + "0,0,0,0,0,0,0,0\n";
+
+    @Test
+    public void testTurnParserReadsTurns() {
+        // crlf endings and no newline at the very end are fine too
+        String second = TURN_4.replace("4,true", "3,false").replace("\n", "\r\n");
+        TurnParser parser = parserOf(TURN_4 + second.substring(0, second.length() - 2));
+        assertTrue(parser.hasNext());
+        StorageOthello turn = parser.next();
+        assertEquals(4, turn.getNumTurns());
+        assertTrue(turn.getIsP1Turn());
+        assertFalse(turn.getPassOccurred());
+        assertEquals(2, turn.getBoard()[1][1]);
+        assertEquals(3, turn.getBlackScore());
+        assertEquals(3, turn.getWhiteScore());
+        StorageOthello next = parser.next();
+        assertEquals(3, next.getNumTurns());
+        assertFalse(next.getIsP1Turn());
+        assertFalse(parser.hasNext());
+        assertNull(parser.getError());
+    }
+
+    @Test
+    public void testTurnParserReportsBadInput() {
+        TurnParser parser = parserOf(TURN_4 + TURN_4.replace("0,1,2,1", "0,1,3,1"));
+        assertEquals(1, parser.stream().count());
+        assertEquals("Illegal In board on line 13", parser.getError());
+
+        parser = parserOf("4,yes,false\n");
+        assertFalse(parser.hasNext());
+        assertNotNull(parser.getError());
+
+        // a turn cut off part way
+        parser = parserOf(TURN_4.substring(0, 60));
+        assertFalse(parser.hasNext());
+        assertNotNull(parser.getError());
+
+        // empty input is no turns, not an error
+        parser = parserOf("");
+        assertFalse(parser.hasNext());
+        assertNull(parser.getError());
+    }
+
+    @Test
+    public void testTurnParserStreamsLargeFile() throws IOException {
+        Path file = Files.createTempFile("turns", ".csv");
+        try {
+            Writer out = Files.newBufferedWriter(file);
+            for (int i = 0; i < 2000; i++) {
+                out.write(TURN_4);
+            }
+            out.close();
+            FileChannel channel = FileChannel.open(file);
+            TurnParser parser = new TurnParser(channel);
+            int turns = 0;
+            while (parser.hasNext()) {
+                assertEquals(4, parser.next().getNumTurns());
+                turns++;
+            }
+            assertEquals(2000, turns);
+            assertNull(parser.getError());
+            channel.close();
+        } finally {
+            Files.delete(file);
+        }
+    }
+
+    @Test
+    public void testLoadOldCsvSave() throws IOException {
+        // without a game record save the CSV one is loaded
+        Files.deleteIfExists(Paths.get("files/saved_othello.game"));
+        Path csv = Paths.get("files/saved_othello.csv");
+        Files.write(csv, TURN_4.getBytes());
+        o.loadFromGameFile();
+        assertEquals(4, o.getNumTurns());
+        assertEquals(2, o.getCell(1, 1));
+
+        Files.write(csv, TURN_4.replace("true", "maybe").getBytes());
+        o.loadFromGameFile();
+        assertTrue(o.compareBoard(resetBoard));
+    }
+
+    @Test
+    public void testReadSaveFileReportsErrors() throws IOException {
+        Path saved = Paths.get("files/saved_othello.game");
+        Files.write(saved, new byte[] { 1, 2, 3, 4, 5 });
+        try {
+            o.readSaveFile();
+            fail("the save is damaged");
+        } catch (IllegalArgumentException e) {
+            assertEquals("Not a game record file", e.getMessage());
+        } finally {
+            Files.delete(saved);
+        }
+
+        // loadFromGameFile prints the error and resets instead
+        o.playTurn(2, 3);
+        Files.write(saved, new byte[] { 1, 2, 3, 4, 5 });
+        o.loadFromGameFile();
+        Files.delete(saved);
+        assertTrue(o.compareBoard(resetBoard));
+    }
+
+    @Test
+    public void testSaveKeepsWholeHistory() {
+        Random random = new Random(3);
+        for (int i = 0; i < 30; i++) {
+            int sq = RandomPlayer.pick(o.legalMoveMask(), random);
+            o.playTurn(sq / 8, sq % 8);
+            o.checkPass();
+        }
+        int[][] board = o.getGameBoard();
+        o.saveToGameFile();
+        o.reset();
+        o.loadFromGameFile();
+        assertTrue(o.compareBoard(board));
+        assertEquals(30, o.getNumTurns());
+        // every move can be undone, not just the last 3
+        for (int i = 0; i < 30; i++) {
+            assertTrue(o.undoMove());
+        }
+        assertFalse(o.undoMove());
+        assertTrue(o.compareBoard(resetBoard));
+    }
+
+    @Test
+    public void testLoadFromCheckpoint() {
+        Random random = new Random(4);
+        for (int i = 0; i < 25; i++) {
+            int sq = RandomPlayer.pick(o.legalMoveMask(), random);
+            o.playTurn(sq / 8, sq % 8);
+            o.checkPass();
+        }
+        int[][] board = o.getGameBoard();
+        boolean player = o.getCurrentPlayer();
+        GameRecord record = o.toRecord().withCheckpoints(10);
+        assertEquals(2, record.getCheckpointCount());
+        assertEquals(20, record.getCheckpointMove(1));
+        assertEquals(record, GameRecord.decode(ByteBuffer.wrap(record.toBytes())));
+
+        o.saveToGameFile(10);
+        o.reset();
+        o.loadFromGameFile();
+        assertTrue(o.compareBoard(board));
+        assertEquals(player, o.getCurrentPlayer());
+        assertEquals(25, o.getNumTurns());
+        // replay started at the checkpoint after move 20
+        for (int i = 0; i < 5; i++) {
+            assertTrue(o.undoMove());
+        }
+        assertFalse(o.undoMove());
+        assertEquals(20, o.getNumTurns());
+    }
+
+    @Test
+    public void testCheckpointsMatchFullReplay() {
+        // whole games have passes, checkpoints right after them have to pick
+        // the same player to move as replaying does
+        for (int seed = 0; seed < 200; seed++) {
+            Othello game = new Othello();
+            Random random = new Random(seed);
+            int stop = 40 + random.nextInt(21);
+            while (!game.getGameOver() && game.getNumTurns() < stop) {
+                // after a pass the other player may have no move either,
+                // checking again ends the game
+                if (game.legalMoveMask() == 0) {
+                    game.checkPass();
+                    continue;
+                }
+                int sq = RandomPlayer.pick(game.legalMoveMask(), random);
+                game.playTurn(sq / 8, sq % 8);
+                game.checkPass();
+            }
+            GameRecord record = game.toRecord();
+            Othello full = new Othello();
+            full.loadRecord(record);
+            Othello jumped = new Othello();
+            jumped.loadRecord(record.withCheckpoints(1));
+            assertTrue(jumped.compareBoard(full.getGameBoard()));
+            assertEquals(full.getCurrentPlayer(), jumped.getCurrentPlayer());
+            assertEquals(full.getPassOccurred(), jumped.getPassOccurred());
+            assertEquals(full.getGameOver(), jumped.getGameOver());
+            assertEquals(full.getNumTurns(), jumped.getNumTurns());
+        }
+    }
+
+    @Test
+    public void testSymmetryTransforms() {
+        // (0, 1) and (2, 3) under each basic transform
+        long b = (1L << 1) | (1L << 19);
+        assertEquals((1L << 6) | (1L << 20), Symmetry.transform(b, Symmetry.MIRROR));
+        assertEquals((1L << 57) | (1L << 43), Symmetry.transform(b, Symmetry.FLIP));
+        assertEquals((1L << 8) | (1L << 26), Symmetry.transform(b, Symmetry.TRANSPOSE));
+        Random random = new Random(5);
+        for (int i = 0; i < 100; i++) {
+            long x = random.nextLong();
+            for (int t = 0; t < Symmetry.COUNT; t++) {
+                long y = Symmetry.transform(x, t);
+                assertEquals(x, Symmetry.transform(y, Symmetry.inverse(t)));
+                for (int sq = 0; sq < 64; sq++) {
+                    // squares move like the pieces on them
+                    assertEquals((x >>> sq) & 1,
+                            (y >>> Symmetry.transformSquare(sq, t)) & 1);
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testSymmetryCanonicalForm() {
+        Random random = new Random(6);
+        for (int i = 0; i < 20; i++) {
+            Othello game = new Othello();
+            for (int j = 0; j < 20 && !game.getGameOver(); j++) {
+                int sq = RandomPlayer.pick(game.legalMoveMask(), random);
+                game.playTurn(sq / 8, sq % 8);
+                game.checkPass();
+            }
+            long black = game.getBlackPieces();
+            long white = game.getWhitePieces();
+            int c = Symmetry.canonicalTransform(black, white);
+            long canonicalBlack = Symmetry.transform(black, c);
+            long canonicalWhite = Symmetry.transform(white, c);
+            // every version of the position has the same canonical form
+            for (int t = 0; t < Symmetry.COUNT; t++) {
+                long b = Symmetry.transform(black, t);
+                long w = Symmetry.transform(white, t);
+                int u = Symmetry.canonicalTransform(b, w);
+                assertEquals(canonicalBlack, Symmetry.transform(b, u));
+                assertEquals(canonicalWhite, Symmetry.transform(w, u));
+                // and its legal moves turn with it
+                assertEquals(Symmetry.transform(BitBoard.legalMoves(black, white), t),
+                        BitBoard.legalMoves(b, w));
+            }
+        }
+    }
+
+    @Test
+    public void testCanonicalGameRecord() {
+        playRandomGame(o, 9);
+        GameRecord record = o.toRecord().withCheckpoints(10);
+        GameRecord canonical = record.canonical();
+        // the opening is canonical and the first move is (2, 3) for every game
+        assertTrue(canonical.isFromOpening());
+        assertEquals(19, canonical.getMove(0));
+        for (int t = 0; t < Symmetry.COUNT; t++) {
+            GameRecord turned = record.transform(t);
+            assertEquals(canonical, turned.canonical());
+            // turned games replay to the turned final board
+            Othello replay = new Othello();
+            replay.loadRecord(turned);
+            assertEquals(Symmetry.transform(o.getBlackPieces(), t), replay.getBlackPieces());
+        }
+    }
+
+    @Test
+    public void testWideBoardMatchesBitBoard() {
+        // the same random games played on both 8x8 boards
+        for (long seed = 0; seed < 20; seed++) {
+            Random random = new Random(seed);
+            BitBoard bits = BitBoard.fromArray(resetBoard);
+            WideBoard wide = WideBoard.fromArray(resetBoard);
+            long[] wideMoves = wide.newMask();
+            boolean blackToMove = true;
+            while (true) {
+                long moves = bits.legalMoves(blackToMove);
+                if (moves == 0) {
+                    blackToMove = !blackToMove;
+                    moves = bits.legalMoves(blackToMove);
+                    if (moves == 0) {
+                        break;
+                    }
+                }
+                assertEquals(Long.bitCount(moves), wide.legalMoves(blackToMove, wideMoves));
+                for (int sq = 0; sq < BitBoard.SQUARES; sq++) {
+                    int wideSq = WideBoard.square(BitBoard.row(sq), BitBoard.col(sq));
+                    assertEquals((moves & (1L << sq)) != 0, WideBoard.isSet(wideMoves, wideSq));
+                }
+                int sq = RandomPlayer.pick(moves, random);
+                long flips = bits.play(sq, blackToMove);
+                int wideSq = WideBoard.square(BitBoard.row(sq), BitBoard.col(sq));
+                assertEquals(Long.bitCount(flips), wide.play(wideSq, blackToMove));
+                blackToMove = !blackToMove;
+            }
+            assertTrue(Arrays.deepEquals(bits.toArray(), wide.toArray()));
+        }
+    }
+
+    @Test
+    public void testWideBoardLegalMovesEverySize() {
+        // a move is legal exactly when playing it flips something, which play
+        // finds by walking the board instead of shifting masks
+        for (int size = WideBoard.MIN_SIZE; size <= WideBoard.MAX_SIZE; size++) {
+            Random random = new Random(size);
+            WideBoard b = new WideBoard(size);
+            int mid = size / 2;
+            b.setCell(mid - 1, mid - 1, 2);
+            b.setCell(mid, mid, 2);
+            b.setCell(mid - 1, mid, 1);
+            b.setCell(mid, mid - 1, 1);
+            long[] moves = b.newMask();
+            boolean blackToMove = true;
+            int passes = 0;
+            while (passes < 2) {
+                int count = b.legalMoves(blackToMove, moves);
+                List<Integer> legal = new ArrayList<Integer>();
+                for (int r = 0; r < size; r++) {
+                    for (int c = 0; c < size; c++) {
+                        int sq = WideBoard.square(r, c);
+                        boolean flips = b.getCell(r, c) == 0 && b.copy().play(sq, blackToMove) > 0;
+                        assertEquals(flips, WideBoard.isSet(moves, sq), size + " " + r + " " + c);
+                        if (flips) {
+                            legal.add(sq);
+                        }
+                    }
+                }
+                assertEquals(legal.size(), count);
+                if (count == 0) {
+                    passes++;
+                } else {
+                    passes = 0;
+                    b.play(legal.get(random.nextInt(count)), blackToMove);
+                }
+                blackToMove = !blackToMove;
+            }
+            assertTrue(b.countBlack() + b.countWhite() <= size * size);
+        }
+    }
+
+    @Test
+    public void testGamesOnEveryBoardSize() {
+        for (int size = 6; size <= 16; size += 2) {
+            Othello game = new Othello(size);
+            assertEquals(size, game.getSize());
+            assertEquals(4, game.getValidMoves().size());
+            assertEquals(size, game.getGameBoard().length);
+            assertEquals(1, game.getCell(size / 2, size / 2 - 1));
+            assertFalse(game.playTurn(size, 0));
+
+            // undo puts back the board and the scores
+            Random random = new Random(size);
+            int[][] before = null;
+            int blackBefore = 0;
+            for (int i = 0; i < 10; i++) {
+                before = game.getGameBoard();
+                blackBefore = game.getBlackScore();
+                List<Pair> moves = new ArrayList<Pair>(game.getValidMoves());
+                Pair move = moves.get(random.nextInt(moves.size()));
+                assertTrue(game.playTurn(move.getFirst(), move.getSecond()));
+                game.checkPass();
+            }
+            LinkedList<StorageOthello> history = game.getGameHistory();
+            assertEquals(11, history.size());
+            assertTrue(game.compareBoard(history.getFirst().getBoard()));
+            assertEquals(game.getBlackScore(), history.getFirst().getBlackScore());
+            assertTrue(game.undoMove());
+            assertTrue(game.compareBoard(before));
+            assertEquals(blackBefore, game.getBlackScore());
+            assertEquals(Arrays.deepToString(history.get(1).getBoard()),
+                    Arrays.deepToString(game.getGameBoard()));
+
+            // and the game plays out to the end
+            while (!game.getGameOver()) {
+                List<Pair> moves = new ArrayList<Pair>(game.getValidMoves());
+                if (moves.isEmpty()) {
+                    game.checkPass();
+                    continue;
+                }
+                Pair move = moves.get(random.nextInt(moves.size()));
+                assertTrue(game.playTurn(move.getFirst(), move.getSecond()));
+                game.checkPass();
+            }
+            int[][] board = game.getGameBoard();
+            int black = 0;
+            for (int[] row : board) {
+                for (int cell : row) {
+                    if (cell == 1) {
+                        black++;
+                    }
+                }
+            }
+            assertEquals(black, game.getBlackScore());
+            assertTrue(game.getBlackScore() + game.getWhiteScore() <= size * size);
+        }
+    }
+
+    @Test
+    public void testWideUndoToStart() {
+        // more moves than fit an 8x8 board, so the undo log has to grow
+        Othello game = new Othello(16);
+        Random random = new Random(21);
+        for (int i = 0; i < 100 && !game.getGameOver(); i++) {
+            List<Pair> moves = new ArrayList<Pair>(game.getValidMoves());
+            Pair move = moves.get(random.nextInt(moves.size()));
+            assertTrue(game.playTurn(move.getFirst(), move.getSecond()));
+            game.checkPass();
+        }
+        LinkedList<StorageOthello> history = game.getGameHistory();
+        for (int i = 1; i < history.size(); i++) {
+            assertTrue(game.undoMove());
+            StorageOthello turn = history.get(i);
+            assertTrue(game.compareBoard(turn.getBoard()));
+            assertEquals(turn.getBlackScore(), game.getBlackScore());
+            assertEquals(turn.getWhiteScore(), game.getWhiteScore());
+            assertEquals(turn.getIsP1Turn(), game.getCurrentPlayer());
+        }
+        assertFalse(game.undoMove());
+        assertTrue(game.compareBoard(new Othello(16).getGameBoard()));
+    }
+
+    @Test
+    public void testBoardSizeLimits() {
+        int[] bad = { 4, 7, 18 };
+        for (int size : bad) {
+            try {
+                new Othello(size);
+                fail(size + " isn't a board size");
+            } catch (IllegalArgumentException e) {
+                // expected
+            }
+        }
+        // masks, hashes and records are 8x8 only
+        Othello wide = new Othello(10);
+        try {
+            wide.legalMoveMask();
+            fail("10x10 moves don't fit a long");
+        } catch (IllegalStateException e) {
+            // expected
+        }
+        try {
+            wide.toRecord();
+            fail("records are 8x8");
+        } catch (IllegalStateException e) {
+            // expected
+        }
+        assertEquals(o.getHash(), new Othello(8).getHash());
+    }
+
+    @Test
+    public void testPositionIsImmutable() {
+        Position start = Position.start();
+        assertEquals(o.getPosition(), start);
+        assertEquals(o.legalMoveMask(), start.legalMoves());
+        Position next = start.play(19);
+        // the start is left as it was
+        assertEquals(4, Long.bitCount(start.legalMoves()));
+        assertEquals(2, start.countBlack());
+        assertTrue(start.getBlackToMove());
+        assertEquals(4, next.countBlack());
+        assertFalse(next.getBlackToMove());
+        o.playTurn(2, 3);
+        assertEquals(o.getPosition(), next);
+        assertEquals(o.getHash(), next.getHash());
+        assertEquals(next.hashCode(), o.getPosition().hashCode());
+        try {
+            start.play(0);
+            fail("(0, 0) isn't a legal first move");
+        } catch (IllegalArgumentException e) {
+            // expected
+        }
+        try {
+            start.pass();
+            fail("black has moves");
+        } catch (IllegalStateException e) {
+            // expected
+        }
+        try {
+            new Position(1L, 1L, true, false);
+            fail("a square can't be both colors");
+        } catch (IllegalArgumentException e) {
+            // expected
+        }
+    }
+
+    @Test
+    public void testPositionFollowsGame() {
+        for (long seed = 0; seed < 10; seed++) {
+            Random random = new Random(seed);
+            Othello game = new Othello();
+            Position p = Position.start();
+            while (!game.getGameOver()) {
+                int sq = RandomPlayer.pick(game.legalMoveMask(), random);
+                game.playTurn(BitBoard.row(sq), BitBoard.col(sq));
+                game.checkPass();
+                p = p.play(sq);
+                if (p.legalMoves() == 0 && !p.isGameOver()) {
+                    p = p.pass();
+                }
+                if (p.isGameOver()) {
+                    game.checkPass();
+                    assertTrue(game.getGameOver());
+                    assertEquals(game.getBlackScore(), p.countBlack());
+                } else {
+                    assertEquals(game.getPosition(), p);
+                }
+            }
+        }
+
+        // a game started from a position plays on from it
+        Position mid = Position.start().play(19).play(18);
+        Othello resumed = new Othello(mid);
+        assertEquals(mid, resumed.getPosition());
+        assertEquals(2, resumed.getNumTurns());
+        assertFalse(resumed.undoMove());
+        int sq = Long.numberOfTrailingZeros(mid.legalMoves());
+        assertTrue(resumed.playTurn(BitBoard.row(sq), BitBoard.col(sq)));
+        assertEquals(mid.play(sq), resumed.getPosition());
+        assertTrue(resumed.undoMove());
+        assertEquals(mid, resumed.getPosition());
+    }
+
+    // counts positions like Perft, with a pass using up a move
+    private static long positionPerft(Position p, int depth) {
+        if (depth == 0 || p.isGameOver()) {
+            return 1;
+        }
+        long moves = p.legalMoves();
+        if (moves == 0) {
+            return positionPerft(p.pass(), depth - 1);
+        }
+        long count = 0;
+        for (long m = moves; m != 0; m &= m - 1) {
+            count += positionPerft(p.play(Long.numberOfTrailingZeros(m)), depth - 1);
+        }
+        return count;
+    }
+
+    @Test
+    public void testPositionsSharedBetweenThreads() throws InterruptedException {
+        final Position shared = Position.start().play(19);
+        final long[] counts = new long[4];
+        Thread[] threads = new Thread[counts.length];
+        for (int i = 0; i < threads.length; i++) {
+            final int index = i;
+            threads[i] = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    counts[index] = positionPerft(shared, 6);
+                }
+            });
+            threads[i].start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        // every opening move leads to the same counts by symmetry
+        for (long count : counts) {
+            assertEquals(Perft.KNOWN[7] / 4, count);
+        }
+        assertEquals(Position.start().play(19), shared);
+    }
 }
@@ -40,6 +40,11 @@ public class Pair implements Comparable<Pair> {
         return this.first.equals(that.first) && this.second.equals(that.second);
     }
 
+    @Override
+    public int hashCode() {
+        return 31 * this.first + this.second;
+    }
+
     @Override
     public String toString() {
         return "[" + this.first + ", " + this.second + "]";
@@ -0,0 +1,118 @@
+package org.cis120.othello;
+
+/**
+ * This class evaluates positions with PatternWeights. It keeps the base 3
+ * index of every pattern placement for one position and updates them as
+ * moves are played and undone, so an evaluation is only adding up one
+ * weight per placement. A move only changes the placements that include the
+ * placed and flipped squares.
+ *
+ * An evaluator holds the state of one position, so each search thread needs
+ * its own. They can all share the same weights. Nothing is allocated after
+ * construction.
+ *
+ * @author fdustin
+ *
+ */
+public final class PatternEvaluator {
+    private final PatternWeights weights;
+    // each placement's index plus where its table starts, so evaluating is
+    // one load per placement
+    private final int[] entries = new int[PatternWeights.PLACEMENTS];
+    private int empties;
+
+    public PatternEvaluator(PatternWeights weights) {
+        this.weights = weights;
+        setPosition(0L, 0L);
+    }
+
+    public PatternWeights getWeights() {
+        return weights;
+    }
+
+    /**
+     * Starts tracking a position
+     *
+     * @param black - mask of the black pieces
+     * @param white - mask of the white pieces
+     */
+    public void setPosition(long black, long white) {
+        PatternWeights.indexes(black, white, entries);
+        for (int q = 0; q < entries.length; q++) {
+            entries[q] += PatternWeights.tableOffset(q);
+        }
+        empties = Long.bitCount(~(black | white));
+    }
+
+    /**
+     * Updates the indexes for a move
+     *
+     * @param sq         - square of the placed piece
+     * @param flips      - mask of the flipped pieces
+     * @param blackMoved - true if black placed the piece
+     */
+    public void play(int sq, long flips, boolean blackMoved) {
+        // a black piece is digit 1 and a white one digit 2, so flipping to
+        // black takes one power of its square away and to white adds one
+        if (blackMoved) {
+            add(sq, 1);
+            for (long m = flips; m != 0; m &= m - 1) {
+                add(Long.numberOfTrailingZeros(m), -1);
+            }
+        } else {
+            add(sq, 2);
+            for (long m = flips; m != 0; m &= m - 1) {
+                add(Long.numberOfTrailingZeros(m), 1);
+            }
+        }
+        empties--;
+    }
+
+    /**
+     * Takes back a move made with play
+     */
+    public void undo(int sq, long flips, boolean blackMoved) {
+        if (blackMoved) {
+            add(sq, -1);
+            for (long m = flips; m != 0; m &= m - 1) {
+                add(Long.numberOfTrailingZeros(m), 1);
+            }
+        } else {
+            add(sq, -2);
+            for (long m = flips; m != 0; m &= m - 1) {
+                add(Long.numberOfTrailingZeros(m), -1);
+            }
+        }
+        empties++;
+    }
+
+    private void add(int sq, int digits) {
+        int[] placements = PatternWeights.SQUARE_PLACEMENTS[sq];
+        int[] powers = PatternWeights.SQUARE_POWERS[sq];
+        for (int i = 0; i < placements.length; i++) {
+            entries[placements[i]] += digits * powers[i];
+        }
+    }
+
+    /**
+     * Evaluates the current position
+     *
+     * @param blackToMove - true to score it for black, false for white
+     * @return the expected final disc difference for the player, in
+     *         hundredths of a disc
+     */
+    public int evaluate(boolean blackToMove) {
+        int score = weights.evaluate(entries, PatternWeights.stage(empties));
+        if (blackToMove) {
+            return score;
+        }
+        return -score;
+    }
+
+    /**
+     * returns the index of a placement, for checking the updates
+     */
+    int getIndex(int placement) {
+        return entries[placement] - PatternWeights.tableOffset(placement);
+    }
+}
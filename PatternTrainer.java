@@ -0,0 +1,223 @@
+package org.cis120.othello;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Random;
+
+/**
+ * This class fits PatternWeights to the games in a GameDatabase. Every
+ * position of a finished game should evaluate to the game's final disc
+ * difference, and stochastic gradient descent moves the weights of each
+ * position's patterns towards that a little at a time. Games are visited in
+ * a new random order every pass and replayed as they go, so the positions
+ * never all have to be in memory.
+ *
+ * Self-play games from engines with random opening moves make good training
+ * games. Random games work too but the weights then learn how random
+ * players do.
+ *
+ * @author fdustin
+ *
+ */
+public class PatternTrainer {
+    private final float[] weights =
+            new float[PatternWeights.STAGES * PatternWeights.STAGE_SIZE];
+    private final double learningRate;
+    // follows the indexes of the position being replayed
+    private final PatternEvaluator tracker = new PatternEvaluator(new PatternWeights());
+    // totals for the current pass
+    private double squaredError;
+    private long positions;
+
+    /**
+     * Creates a trainer starting from zero weights
+     *
+     * @param learningRate - how far each position moves its weights, as a
+     *                     part of its error per pattern placement
+     */
+    public PatternTrainer(double learningRate) {
+        if (learningRate <= 0) {
+            throw new IllegalArgumentException("Learning rate must be positive: "
+                    + learningRate);
+        }
+        this.learningRate = learningRate;
+    }
+
+    /**
+     * Makes one pass over the games, updating the weights after each position
+     *
+     * @param db     - the games to learn from, unfinished ones are skipped
+     * @param random - picks the order of the games
+     * @return the mean squared error in discs before each update
+     * @throws IOException if a game can't be read
+     */
+    public double train(GameDatabase db, Random random) throws IOException {
+        int games = (int) Math.min(db.size(), Integer.MAX_VALUE);
+        int[] order = new int[games];
+        for (int i = 0; i < games; i++) {
+            order[i] = i;
+        }
+        // shuffle
+        for (int i = games - 1; i > 0; i--) {
+            int j = random.nextInt(i + 1);
+            int swap = order[i];
+            order[i] = order[j];
+            order[j] = swap;
+        }
+        squaredError = 0;
+        positions = 0;
+        for (int i = 0; i < games; i++) {
+            replay(db.read(order[i]), true);
+        }
+        return meanSquaredError();
+    }
+
+    /**
+     * Measures how well the current weights predict the games without
+     * changing them
+     *
+     * @return the mean squared error in discs
+     * @throws IOException if a game can't be read
+     */
+    public double error(GameDatabase db) throws IOException {
+        squaredError = 0;
+        positions = 0;
+        for (long i = 0; i < db.size(); i++) {
+            replay(db.read(i), false);
+        }
+        return meanSquaredError();
+    }
+
+    private double meanSquaredError() {
+        if (positions == 0) {
+            return 0;
+        }
+        return squaredError / positions;
+    }
+
+    /**
+     * returns the weights learned so far, rounded to hundredths of a disc
+     */
+    public PatternWeights toWeights() {
+        short[] rounded = new short[weights.length];
+        for (int i = 0; i < weights.length; i++) {
+            long w = Math.round(weights[i] * 100.0);
+            rounded[i] = (short) Math.max(Short.MIN_VALUE, Math.min(Short.MAX_VALUE, w));
+        }
+        return new PatternWeights(rounded);
+    }
+
+    /**
+     * Plays through a finished game, scoring every position against the
+     * result and adding to squaredError and positions
+     */
+    private void replay(GameRecord game, boolean update) {
+        BitBoard end = endOf(game);
+        if (end == null) {
+            return;
+        }
+        double target = end.countBlack() - end.countWhite();
+
+        BitBoard board = new BitBoard(game.getBlack(), game.getWhite());
+        tracker.setPosition(game.getBlack(), game.getWhite());
+        boolean blackToMove = game.getBlackToMove();
+        int empties = Long.bitCount(~(game.getBlack() | game.getWhite()));
+        for (int i = 0; i <= game.getMoveCount(); i++) {
+            squaredError += fit(target, PatternWeights.stage(empties), update);
+            positions++;
+            if (i == game.getMoveCount()) {
+                break;
+            }
+            if (board.legalMoves(blackToMove) == 0) {
+                blackToMove = !blackToMove;
+            }
+            int sq = game.getMove(i);
+            long flips = board.play(sq, blackToMove);
+            tracker.play(sq, flips, blackToMove);
+            blackToMove = !blackToMove;
+            empties--;
+        }
+    }
+
+    /**
+     * Moves the weights of the tracked position towards the target
+     *
+     * @return the squared error before the update
+     */
+    private double fit(double target, int stage, boolean update) {
+        double predicted = 0;
+        for (int q = 0; q < PatternWeights.PLACEMENTS; q++) {
+            predicted += weights[PatternWeights.weightIndex(stage, q, tracker.getIndex(q))];
+        }
+        double error = target - predicted;
+        if (update) {
+            float step = (float) (learningRate * error);
+            for (int q = 0; q < PatternWeights.PLACEMENTS; q++) {
+                weights[PatternWeights.weightIndex(stage, q, tracker.getIndex(q))] += step;
+            }
+        }
+        return error * error;
+    }
+
+    /**
+     * returns the board at the end of a game, null if it isn't finished
+     */
+    private static BitBoard endOf(GameRecord game) {
+        BitBoard board = new BitBoard(game.getBlack(), game.getWhite());
+        boolean blackToMove = game.getBlackToMove();
+        for (int i = 0; i < game.getMoveCount(); i++) {
+            if (board.legalMoves(blackToMove) == 0) {
+                blackToMove = !blackToMove;
+            }
+            board.play(game.getMove(i), blackToMove);
+            blackToMove = !blackToMove;
+        }
+        if (board.legalMoves(true) != 0 || board.legalMoves(false) != 0) {
+            return null;
+        }
+        return board;
+    }
+
+    /**
+     * Trains weights and prints the error after every pass.
+     *
+     * @param args - game database, then optional weights file
+     *             (files/patterns.weights), passes (10) and learning rate
+     *             (0.002)
+     */
+    public static void main(String[] args) throws IOException {
+        if (args.length < 1) {
+            System.out.println("usage: PatternTrainer database [weights file] [passes] [rate]");
+            return;
+        }
+        Path out = Paths.get("files/patterns.weights");
+        int passes = 10;
+        double rate = 0.002;
+        if (args.length > 1) {
+            out = Paths.get(args[1]);
+        }
+        if (args.length > 2) {
+            passes = Integer.parseInt(args[2]);
+        }
+        if (args.length > 3) {
+            rate = Double.parseDouble(args[3]);
+        }
+        PatternTrainer trainer = new PatternTrainer(rate);
+        Random random = new Random(120);
+        GameDatabase db = new GameDatabase(Paths.get(args[0]));
+        try {
+            for (int pass = 1; pass <= passes; pass++) {
+                long start = System.nanoTime();
+                double error = trainer.train(db, random);
+                double seconds = (System.nanoTime() - start) / 1e9;
+                System.out.println(String.format("pass %d: mean squared error %.2f discs^2, "
+                        + "%.0f positions/s", pass, error, trainer.positions / seconds));
+            }
+        } finally {
+            db.close();
+        }
+        trainer.toWeights().save(out);
+        System.out.println("wrote " + out);
+    }
+}
@@ -0,0 +1,293 @@
+package org.cis120.othello;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ShortBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * This class holds the weight tables of the pattern evaluation and where the
+ * patterns are on the board.
+ *
+ * A pattern is a line or block of squares, like an edge or the 3x3 corner,
+ * placed on the board once for each of its rotations and reflections that
+ * covers different squares. The pieces on a placed pattern, read as a base 3
+ * number with 0 empty, 1 black and 2 white, index a weight table for that
+ * pattern, so every arrangement of pieces on an edge has a weight of its
+ * own. The placements of a pattern share a table. Games change a lot between
+ * the opening and the end, so there is a set of tables per stage, a stage
+ * being 4 moves.
+ *
+ * Weights are in hundredths of a disc of final disc difference for black,
+ * the same scale AlphaBetaEngine evaluates in. Weights never change once
+ * made, so one set can be shared by every thread. PatternEvaluator keeps the
+ * indexes of a position and PatternTrainer makes weights.
+ *
+ * @author fdustin
+ *
+ */
+public final class PatternWeights {
+    private static final long MAGIC = 0x4F54485041545431L; // "OTHPATT1"
+
+    public static final int STAGES = 15;
+    private static final int MOVES_PER_STAGE = 4;
+
+    // each pattern's squares in base 3 digit order, least significant first
+    private static final int[][] SHAPES = {
+        // edge plus the X squares
+        { 0, 1, 2, 3, 4, 5, 6, 7, 9, 14 },
+        // 3x3 corner
+        { 0, 1, 2, 8, 9, 10, 16, 17, 18 },
+        // 2x5 corner
+        { 0, 1, 2, 3, 4, 8, 9, 10, 11, 12 },
+        // rows 1, 2 and 3
+        { 8, 9, 10, 11, 12, 13, 14, 15 },
+        { 16, 17, 18, 19, 20, 21, 22, 23 },
+        { 24, 25, 26, 27, 28, 29, 30, 31 },
+        // diagonals of 8 down to 4 squares
+        { 0, 9, 18, 27, 36, 45, 54, 63 },
+        { 1, 10, 19, 28, 37, 46, 55 },
+        { 2, 11, 20, 29, 38, 47 },
+        { 3, 12, 21, 30, 39 },
+        { 4, 13, 22, 31 } };
+
+    // which pattern each placement is and the board squares of its digits
+    static final int[] PLACEMENT_PATTERN;
+    static final int[][] PLACEMENT_SQUARES;
+    public static final int PLACEMENTS;
+    // where each pattern's table starts in a stage, the same for each of its
+    // placements, and how big a stage is
+    private static final int[] TABLE_OFFSET = new int[SHAPES.length];
+    private static final int[] PLACEMENT_OFFSET;
+    static final int STAGE_SIZE;
+    // placements that include each square and the value of its digit there
+    static final int[][] SQUARE_PLACEMENTS = new int[BitBoard.SQUARES][];
+    static final int[][] SQUARE_POWERS = new int[BitBoard.SQUARES][];
+
+    static {
+        int[] pattern = new int[64];
+        int[][] squares = new int[64][];
+        int count = 0;
+        for (int p = 0; p < SHAPES.length; p++) {
+            int first = count;
+            for (int t = 0; t < Symmetry.COUNT; t++) {
+                long covered = 0;
+                int[] placed = new int[SHAPES[p].length];
+                for (int i = 0; i < placed.length; i++) {
+                    placed[i] = Symmetry.transformSquare(SHAPES[p][i], t);
+                    covered |= 1L << placed[i];
+                }
+                // a symmetric pattern turned onto its own squares is the
+                // same placement read in another order
+                boolean repeat = false;
+                for (int q = first; q < count; q++) {
+                    if (coverage(squares[q]) == covered) {
+                        repeat = true;
+                    }
+                }
+                if (!repeat) {
+                    pattern[count] = p;
+                    squares[count] = placed;
+                    count++;
+                }
+            }
+        }
+        PLACEMENTS = count;
+        PLACEMENT_PATTERN = new int[count];
+        PLACEMENT_SQUARES = new int[count][];
+        System.arraycopy(pattern, 0, PLACEMENT_PATTERN, 0, count);
+        System.arraycopy(squares, 0, PLACEMENT_SQUARES, 0, count);
+
+        int size = 0;
+        for (int p = 0; p < SHAPES.length; p++) {
+            TABLE_OFFSET[p] = size;
+            size += power3(SHAPES[p].length);
+        }
+        STAGE_SIZE = size;
+        PLACEMENT_OFFSET = new int[count];
+        for (int q = 0; q < count; q++) {
+            PLACEMENT_OFFSET[q] = TABLE_OFFSET[pattern[q]];
+        }
+
+        for (int sq = 0; sq < BitBoard.SQUARES; sq++) {
+            int n = 0;
+            for (int q = 0; q < count; q++) {
+                for (int s : squares[q]) {
+                    if (s == sq) {
+                        n++;
+                    }
+                }
+            }
+            SQUARE_PLACEMENTS[sq] = new int[n];
+            SQUARE_POWERS[sq] = new int[n];
+            n = 0;
+            for (int q = 0; q < count; q++) {
+                for (int i = 0; i < squares[q].length; i++) {
+                    if (squares[q][i] == sq) {
+                        SQUARE_PLACEMENTS[sq][n] = q;
+                        SQUARE_POWERS[sq][n] = power3(i);
+                        n++;
+                    }
+                }
+            }
+        }
+    }
+
+    private final short[] weights;
+
+    /**
+     * Creates weights that are all zero
+     */
+    public PatternWeights() {
+        this(new short[STAGES * STAGE_SIZE]);
+    }
+
+    /**
+     * Wraps a weight array, which must not be changed afterwards
+     */
+    PatternWeights(short[] weights) {
+        if (weights.length != STAGES * STAGE_SIZE) {
+            throw new IllegalArgumentException("Expected " + STAGES * STAGE_SIZE
+                    + " weights, got " + weights.length);
+        }
+        this.weights = weights;
+    }
+
+    /**
+     * Reads weights written by save
+     *
+     * @throws IOException              if the file can't be read
+     * @throws IllegalArgumentException if the file isn't a weights file
+     */
+    public static PatternWeights load(Path file) throws IOException {
+        FileChannel channel = FileChannel.open(file, StandardOpenOption.READ);
+        try {
+            long expected = 8 + 2L * STAGES * STAGE_SIZE;
+            if (channel.size() != expected) {
+                throw new IllegalArgumentException("Not a pattern weights file");
+            }
+            ByteBuffer bytes = ByteBuffer.allocate((int) expected);
+            while (bytes.hasRemaining()) {
+                if (channel.read(bytes) < 0) {
+                    throw new IllegalArgumentException("Pattern weights cut off");
+                }
+            }
+            bytes.flip();
+            if (bytes.getLong() != MAGIC) {
+                throw new IllegalArgumentException("Not a pattern weights file");
+            }
+            short[] weights = new short[STAGES * STAGE_SIZE];
+            bytes.asShortBuffer().get(weights);
+            return new PatternWeights(weights);
+        } finally {
+            channel.close();
+        }
+    }
+
+    /**
+     * Writes the weights to a file, replacing it
+     */
+    public void save(Path file) throws IOException {
+        ByteBuffer bytes = ByteBuffer.allocate(8 + 2 * weights.length);
+        bytes.putLong(MAGIC);
+        ShortBuffer shorts = bytes.asShortBuffer();
+        shorts.put(weights);
+        bytes.position(bytes.position() + 2 * weights.length);
+        bytes.flip();
+        FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE,
+                StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING);
+        try {
+            while (bytes.hasRemaining()) {
+                channel.write(bytes);
+            }
+        } finally {
+            channel.close();
+        }
+    }
+
+    /**
+     * Adds up the weights of a position
+     *
+     * @param entries - where each placement's weight is in a stage, its base
+     *                3 index plus tableOffset
+     * @param stage   - from stage()
+     * @return the expected final disc difference for black, in hundredths
+     */
+    int evaluate(int[] entries, int stage) {
+        int base = stage * STAGE_SIZE;
+        int sum = 0;
+        for (int q = 0; q < PLACEMENTS; q++) {
+            sum += weights[base + entries[q]];
+        }
+        return sum;
+    }
+
+    /**
+     * returns where a placement's table starts in a stage
+     */
+    static int tableOffset(int placement) {
+        return PLACEMENT_OFFSET[placement];
+    }
+
+    /**
+     * returns where the weight for a placement's index is in the weight array
+     */
+    static int weightIndex(int stage, int placement, int index) {
+        return stage * STAGE_SIZE + PLACEMENT_OFFSET[placement] + index;
+    }
+
+    /**
+     * returns the stage of a position with some number of empty squares
+     */
+    public static int stage(int empties) {
+        int stage = (BitBoard.SQUARES - 4 - empties) / MOVES_PER_STAGE;
+        if (stage < 0) {
+            return 0;
+        }
+        if (stage >= STAGES) {
+            return STAGES - 1;
+        }
+        return stage;
+    }
+
+    /**
+     * Computes the index of every placement from scratch
+     *
+     * @param black   - mask of the black pieces
+     * @param white   - mask of the white pieces
+     * @param indexes - filled with PLACEMENTS indexes
+     */
+    static void indexes(long black, long white, int[] indexes) {
+        for (int q = 0; q < PLACEMENTS; q++) {
+            int[] squares = PLACEMENT_SQUARES[q];
+            int index = 0;
+            for (int i = squares.length - 1; i >= 0; i--) {
+                index *= 3;
+                if ((black & (1L << squares[i])) != 0) {
+                    index += 1;
+                } else if ((white & (1L << squares[i])) != 0) {
+                    index += 2;
+                }
+            }
+            indexes[q] = index;
+        }
+    }
+
+    private static long coverage(int[] squares) {
+        long covered = 0;
+        for (int sq : squares) {
+            covered |= 1L << sq;
+        }
+        return covered;
+    }
+
+    private static int power3(int n) {
+        int p = 1;
+        for (int i = 0; i < n; i++) {
+            p *= 3;
+        }
+        return p;
+    }
+}
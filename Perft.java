@@ -0,0 +1,227 @@
+package org.cis120.othello;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * This class counts the positions reachable from a position in a fixed number
+ * of moves (perft). The counts from the opening are well known, so they check
+ * that move generation follows the rules, and timing them measures how fast
+ * moves are generated.
+ *
+ * A pass counts as a move, and a finished game counts as one position no
+ * matter how much depth is left.
+ *
+ * @author fdustin
+ *
+ */
+public class Perft {
+    /**
+     * published perft counts from the opening, KNOWN[d] is the count at depth d
+     */
+    public static final long[] KNOWN = { 1L, 4L, 12L, 56L, 244L, 1396L, 8200L, 55092L,
+        390216L, 3005288L, 24571284L, 212258800L, 1939886636L };
+
+    // parallel perft forks subtrees at least this deep, smaller ones are
+    // counted by the thread that reaches them
+    private static final int SPLIT_DEPTH = 6;
+
+    private Perft() {
+    }
+
+    /**
+     * Counts positions by playing every move through the game model. This is
+     * much slower than the bitboard count but checks Othello's own rules.
+     *
+     * @param game  - the game to count from, it is returned to its starting
+     *              position when the count finishes
+     * @param depth - number of moves to look ahead
+     * @return the number of positions at that depth
+     */
+    public static long perft(Othello game, int depth) {
+        if (depth == 0 || game.getGameOver() || game.legalMoveMask() == 0) {
+            return 1;
+        }
+        long count = 0;
+        boolean mover = game.getCurrentPlayer();
+        SquareIterator it = new SquareIterator(game.legalMoveMask());
+        while (it.hasNext()) {
+            int sq = it.nextInt();
+            game.playTurn(BitBoard.row(sq), BitBoard.col(sq));
+            game.checkPass();
+            if (game.legalMoveMask() == 0) {
+                // nobody can move, the game is over
+                count++;
+            } else if (game.getCurrentPlayer() == mover) {
+                // the opponent had to pass, which uses up a move
+                if (depth == 1) {
+                    count++;
+                } else {
+                    count += perft(game, depth - 2);
+                }
+            } else {
+                count += perft(game, depth - 1);
+            }
+            game.undoMove();
+        }
+        return count;
+    }
+
+    /**
+     * Counts positions from the opening
+     *
+     * @param depth - number of moves to look ahead
+     * @return the number of positions at that depth
+     */
+    public static long perft(int depth) {
+        Othello game = new Othello();
+        return perft(game.getBlackPieces(), game.getWhitePieces(), depth, false);
+    }
+
+    /**
+     * Counts positions with bitboard moves
+     *
+     * @param own    - pieces of the player to move
+     * @param opp    - pieces of the opponent
+     * @param depth  - number of moves to look ahead
+     * @param passed - true if the last move was a pass
+     * @return the number of positions at that depth
+     */
+    public static long perft(long own, long opp, int depth, boolean passed) {
+        if (depth == 0) {
+            return 1;
+        }
+        long moves = BitBoard.legalMoves(own, opp);
+        if (moves == 0) {
+            if (passed) {
+                return 1;
+            }
+            return perft(opp, own, depth - 1, true);
+        }
+        // every move at the last step is one position, no need to play them
+        if (depth == 1) {
+            return Long.bitCount(moves);
+        }
+        long count = 0;
+        while (moves != 0) {
+            int sq = Long.numberOfTrailingZeros(moves);
+            moves &= moves - 1;
+            long flips = BitBoard.flips(own, opp, sq);
+            count += perft(opp & ~flips, own | flips | (1L << sq), depth - 1, false);
+        }
+        return count;
+    }
+
+    /**
+     * Counts positions from the opening on several threads. Subtrees are split
+     * across a work-stealing pool starting from the root moves.
+     *
+     * @param depth   - number of moves to look ahead
+     * @param threads - size of the pool
+     * @return the number of positions at that depth
+     */
+    public static long parallelPerft(int depth, int threads) {
+        Othello game = new Othello();
+        ForkJoinPool pool = new ForkJoinPool(threads);
+        try {
+            return pool.invoke(
+                    new Subtree(game.getBlackPieces(), game.getWhitePieces(), depth, false)
+            );
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    /**
+     * Counts one subtree, forking a task per move while the subtree is deep
+     */
+    private static class Subtree extends RecursiveTask<Long> {
+        private static final long serialVersionUID = 1L;
+
+        private final long own;
+        private final long opp;
+        private final int depth;
+        private final boolean passed;
+
+        Subtree(long own, long opp, int depth, boolean passed) {
+            this.own = own;
+            this.opp = opp;
+            this.depth = depth;
+            this.passed = passed;
+        }
+
+        @Override
+        protected Long compute() {
+            if (depth < SPLIT_DEPTH) {
+                return perft(own, opp, depth, passed);
+            }
+            long moves = BitBoard.legalMoves(own, opp);
+            if (moves == 0) {
+                if (passed) {
+                    return 1L;
+                }
+                return new Subtree(opp, own, depth - 1, true).compute();
+            }
+            Subtree[] children = new Subtree[Long.bitCount(moves)];
+            for (int i = 0; i < children.length; i++) {
+                int sq = Long.numberOfTrailingZeros(moves);
+                moves &= moves - 1;
+                long flips = BitBoard.flips(own, opp, sq);
+                children[i] = new Subtree(opp & ~flips, own | flips | (1L << sq), depth - 1, false);
+            }
+            invokeAll(children);
+            long count = 0;
+            for (Subtree child : children) {
+                count += child.join();
+            }
+            return count;
+        }
+    }
+
+    /**
+     * Counts every depth up to a limit, checks the counts against the
+     * published ones and prints the speed. Then times the deepest count on
+     * 1, 2, 4, ... threads.
+     *
+     * @param args - optional depth, 10 by default, and thread count, all
+     *             processors by default
+     */
+    public static void main(String[] args) {
+        int depth = 10;
+        int maxThreads = Runtime.getRuntime().availableProcessors();
+        if (args.length > 0) {
+            depth = Integer.parseInt(args[0]);
+        }
+        if (args.length > 1) {
+            maxThreads = Integer.parseInt(args[1]);
+        }
+        for (int d = 1; d <= depth; d++) {
+            long start = System.nanoTime();
+            long count = perft(d);
+            long nanos = System.nanoTime() - start;
+            String check = "unknown";
+            if (d < KNOWN.length) {
+                if (count == KNOWN[d]) {
+                    check = "ok";
+                } else {
+                    check = "WRONG, expected " + KNOWN[d];
+                }
+            }
+            System.out.println(String.format("perft %2d: %12d %s %6dms %.0f nodes/s", d, count,
+                    check, nanos / 1000000, count * 1e9 / Math.max(nanos, 1)));
+        }
+
+        long single = 0;
+        for (int threads = 1; threads <= maxThreads; threads *= 2) {
+            long start = System.nanoTime();
+            long count = parallelPerft(depth, threads);
+            long nanos = System.nanoTime() - start;
+            if (threads == 1) {
+                single = nanos;
+            }
+            System.out.println(String.format("parallel perft %d on %d threads: %d %dms %.0f "
+                    + "nodes/s speedup %.2f", depth, threads, count, nanos / 1000000,
+                    count * 1e9 / Math.max(nanos, 1), (double) single / Math.max(nanos, 1)));
+        }
+    }
+}
@@ -0,0 +1,19 @@
+package org.cis120.othello;
+
+/**
+ * This interface is implemented by anything that can pick moves for one side
+ * of an Othello game, so OthelloGameBoard can let an engine play either
+ * color.
+ * 
+ * @author fdustin
+ *
+ */
+public interface Player {
+    /**
+     * Picks a move for the player whose turn it is in the game
+     * 
+     * @param game - the game to move in, it is not modified
+     * @return square index r * 8 + c of the move, or -1 if there is no move
+     */
+    int chooseMove(Othello game);
+}
@@ -0,0 +1,210 @@
+package org.cis120.othello;
+
+/**
+ * This class is an immutable 8x8 Othello position: the pieces, whose turn it
+ * is and whether the turn before was passed. Playing a move makes a new
+ * Position and leaves this one as it was, so positions can be handed between
+ * threads and shared by search workers, playouts and the GUI without locks or
+ * copies. A position is two longs and two booleans, cheap to make and to keep.
+ *
+ * Othello.getPosition takes the position of a game and new Othello(position)
+ * starts a game from one.
+ *
+ * @author fdustin
+ *
+ */
+public final class Position {
+    private static final Position START = new Othello().getPosition();
+
+    private final long black;
+    private final long white;
+    private final boolean blackToMove;
+    private final boolean passOccurred;
+
+    /**
+     * Creates a position
+     *
+     * @param black        - mask of the black pieces, bit r * 8 + c for (r, c)
+     * @param white        - mask of the white pieces
+     * @param blackToMove  - true if it is black's turn
+     * @param passOccurred - true if the turn before this one was passed
+     * @throws IllegalArgumentException if a square is both colors
+     */
+    public Position(long black, long white, boolean blackToMove, boolean passOccurred) {
+        if ((black & white) != 0) {
+            throw new IllegalArgumentException("Squares can't be black and white: "
+                    + Long.toHexString(black & white));
+        }
+        this.black = black;
+        this.white = white;
+        this.blackToMove = blackToMove;
+        this.passOccurred = passOccurred;
+    }
+
+    /**
+     * returns the opening position, black to move
+     */
+    public static Position start() {
+        return START;
+    }
+
+    public long getBlack() {
+        return black;
+    }
+
+    public long getWhite() {
+        return white;
+    }
+
+    public boolean getBlackToMove() {
+        return blackToMove;
+    }
+
+    public boolean getPassOccurred() {
+        return passOccurred;
+    }
+
+    /**
+     * returns the pieces of the player to move
+     */
+    public long getOwn() {
+        if (blackToMove) {
+            return black;
+        }
+        return white;
+    }
+
+    /**
+     * returns the pieces of the player waiting
+     */
+    public long getOpp() {
+        if (blackToMove) {
+            return white;
+        }
+        return black;
+    }
+
+    public int countBlack() {
+        return Long.bitCount(black);
+    }
+
+    public int countWhite() {
+        return Long.bitCount(white);
+    }
+
+    /**
+     * returns the legal moves of the player to move as a mask
+     */
+    public long legalMoves() {
+        return BitBoard.legalMoves(getOwn(), getOpp());
+    }
+
+    /**
+     * returns true if the player to move may play on sq
+     */
+    public boolean isLegal(int sq) {
+        return sq >= 0 && sq < BitBoard.SQUARES && (legalMoves() & (1L << sq)) != 0;
+    }
+
+    /**
+     * returns true if neither player has a move
+     */
+    public boolean isGameOver() {
+        return legalMoves() == 0 && BitBoard.legalMoves(getOpp(), getOwn()) == 0;
+    }
+
+    /**
+     * Plays a move for the player to move
+     *
+     * @param sq - square index of the move
+     * @return the position after the move, the other player to move
+     * @throws IllegalArgumentException if the move isn't legal
+     */
+    public Position play(int sq) {
+        if (!isLegal(sq)) {
+            throw new IllegalArgumentException("Illegal move: " + sq);
+        }
+        long own = getOwn();
+        long opp = getOpp();
+        long flipped = BitBoard.flips(own, opp, sq);
+        own |= flipped | (1L << sq);
+        opp &= ~flipped;
+        if (blackToMove) {
+            return new Position(own, opp, false, false);
+        }
+        return new Position(opp, own, true, false);
+    }
+
+    /**
+     * Passes the turn of a player with no moves
+     *
+     * @return the position with the other player to move
+     * @throws IllegalStateException if the player to move has a move
+     */
+    public Position pass() {
+        if (legalMoves() != 0) {
+            throw new IllegalStateException("Can't pass with a move to play");
+        }
+        return new Position(black, white, !blackToMove, true);
+    }
+
+    /**
+     * returns the Zobrist hash of the position, the same as Othello.getHash
+     * for a game in this position
+     */
+    public long getHash() {
+        return Zobrist.hash(black, white, blackToMove);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof Position)) {
+            return false;
+        }
+        Position that = (Position) o;
+        return this.black == that.black && this.white == that.white
+                && this.blackToMove == that.blackToMove
+                && this.passOccurred == that.passOccurred;
+    }
+
+    @Override
+    public int hashCode() {
+        int hash = Long.hashCode(getHash());
+        if (passOccurred) {
+            return hash * 31 + 1;
+        }
+        return hash * 31;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder s = new StringBuilder();
+        for (int r = 0; r < BitBoard.SIZE; r++) {
+            for (int c = 0; c < BitBoard.SIZE; c++) {
+                long bit = 1L << BitBoard.square(r, c);
+                if ((black & bit) != 0) {
+                    s.append('X');
+                } else if ((white & bit) != 0) {
+                    s.append('O');
+                } else {
+                    s.append('.');
+                }
+            }
+            s.append('\n');
+        }
+        if (blackToMove) {
+            s.append("Black to move");
+        } else {
+            s.append("White to move");
+        }
+        if (passOccurred && blackToMove) {
+            s.append(", White passed");
+        } else if (passOccurred) {
+            s.append(", Black passed");
+        }
+        return s.toString();
+    }
+}
@@ -0,0 +1,49 @@
+package org.cis120.othello;
+
+import java.util.Random;
+
+/**
+ * This class is a computer player that picks one of its legal moves at
+ * random. It's the baseline opponent for self-play runs and gives them
+ * varied openings.
+ *
+ * @author fdustin
+ *
+ */
+public class RandomPlayer implements Player {
+    private final Random random;
+
+    public RandomPlayer(long seed) {
+        random = new Random(seed);
+    }
+
+    /**
+     * restarts the move sequence so runs with the same seed repeat exactly
+     */
+    public void setSeed(long seed) {
+        random.setSeed(seed);
+    }
+
+    @Override
+    public int chooseMove(Othello game) {
+        return pick(game.legalMoveMask(), random);
+    }
+
+    /**
+     * Picks one square out of a move mask
+     *
+     * @param moves  - mask of legal moves
+     * @param random - source of the choice
+     * @return a square index from the mask, -1 if the mask is empty
+     */
+    public static int pick(long moves, Random random) {
+        if (moves == 0) {
+            return -1;
+        }
+        // drop a random number of the lowest moves
+        for (int i = random.nextInt(Long.bitCount(moves)); i > 0; i--) {
+            moves &= moves - 1;
+        }
+        return Long.numberOfTrailingZeros(moves);
+    }
+}
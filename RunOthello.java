@@ -2,6 +2,8 @@ package org.cis120.othello;
 
 import java.awt.*;
 import java.awt.event.*;
+import java.beans.PropertyChangeEvent;
+import java.beans.PropertyChangeListener;
 import javax.swing.*;
 
 /**
@@ -31,12 +33,26 @@ public class RunOthello implements Runnable {
             + "Black always goes first. \n\n "
             + "Button functions: \n "
             + "Use 'reset' to reset the game to the beginning. \n "
+            + "Pick a board size from 6x6 to 16x16 to start a new game on it. The engines, "
+            + "the opening book and saving only work on 8x8. \n "
             + "Use 'undo' to undo the previous turn. "
             + "Note you cannot undo if your turn was passed or the game ends. \n "
-            + "Use 'save' to save the current game to a default csv file. "
-            + "Only the previous 4 (or less) turns will be saved. \n "
-            + "Use 'load' to load a saved game. This will reset the game if the file isn't "
-            + "formatted properly or a game isn't saved.";
+            + "Use 'save' to save the current game, every turn of it is saved. \n "
+            + "Use 'load' to load the saved game. If the save can't be loaded the current "
+            + "game carries on. \n "
+            + "Tick 'Engine plays Black' or 'Engine plays White' to let the computer "
+            + "play that color. Against the computer, undo also takes back its reply. "
+            + "Tick both to watch the engines play each other, a move at a time with the "
+            + "pieces turning over. The time and nodes per second of each engine move "
+            + "are shown at the top. \n "
+            + "Tick 'Show book move' to mark the opening book's move with a red dot, "
+            + "if files/opening.book has the position. \n "
+            + "Tick 'Analysis' to have the engine score every valid move in the "
+            + "background, with the best in red. The scores are the engine's evaluation "
+            + "for the player to move, higher is better, not a count of discs. They get "
+            + "more accurate the longer the position is left, and once the search "
+            + "reaches the end of the game W or L marks a move that wins or loses by "
+            + "that many discs and Draw one that ties. Analysis is only for 8x8.";
 
     public void run() {
 
@@ -76,18 +92,22 @@ public class RunOthello implements Runnable {
 
         final JLabel blackScore = new JLabel("");
         final JLabel whiteScore = new JLabel("");
+        final JLabel engineStatus = new JLabel("");
 
         status_panel.add(setUpStatus);
         status_panel.add(blackScore);
         status_panel.add(whiteScore);
+        status_panel.add(engineStatus);
 
         // Game board creation with the labels
-        final OthelloGameBoard board = new OthelloGameBoard(setUpStatus, blackScore, whiteScore);
+        final OthelloGameBoard board = new OthelloGameBoard(
+                setUpStatus, blackScore, whiteScore, engineStatus
+        );
         topLevelFrame.add(board, BorderLayout.CENTER);
 
         /// Control_panel
         final JPanel control_panel = new JPanel();
-        control_panel.setLayout(new GridLayout(5, 1));
+        control_panel.setLayout(new GridLayout(10, 1));
         topLevelFrame.add(control_panel, BorderLayout.EAST);
 
         final JButton reset = new JButton("Reset");
@@ -98,6 +118,29 @@ public class RunOthello implements Runnable {
         });
         control_panel.add(reset);
 
+        final JComboBox<String> boardSize = new JComboBox<String>(
+                new String[] { "6x6", "8x8", "10x10", "12x12", "14x14", "16x16" });
+        boardSize.setSelectedItem("8x8");
+        boardSize.addActionListener(new ActionListener() {
+            @Override
+            public void actionPerformed(ActionEvent e) {
+                String picked = (String) boardSize.getSelectedItem();
+                int size = Integer.parseInt(picked.substring(0, picked.indexOf('x')));
+                // the board already has this size when the picker follows a load
+                if (size != board.getBoardSize()) {
+                    board.newGame(size);
+                }
+            }
+        });
+        board.addPropertyChangeListener("boardSize", new PropertyChangeListener() {
+            @Override
+            public void propertyChange(PropertyChangeEvent e) {
+                int size = board.getBoardSize();
+                boardSize.setSelectedItem(size + "x" + size);
+            }
+        });
+        control_panel.add(boardSize);
+
         final JButton undo = new JButton("Undo");
         undo.addActionListener(new ActionListener() {
             @Override
@@ -111,9 +154,8 @@ public class RunOthello implements Runnable {
         save.addActionListener(new ActionListener() {
             @Override
             public void actionPerformed(ActionEvent e) {
-                // add the file saving functionality
+                // the board says when the save is done
                 board.save();
-                JOptionPane.showMessageDialog(topLevelFrame, "Game Saved");
             }
         });
         control_panel.add(save);
@@ -122,13 +164,62 @@ public class RunOthello implements Runnable {
         load.addActionListener(new ActionListener() {
             @Override
             public void actionPerformed(ActionEvent e) {
-                // add the file loading functionality
+                // the board says when the load is done
                 board.load();
-                JOptionPane.showMessageDialog(topLevelFrame, "Game Loaded");
             }
         });
         control_panel.add(load);
 
+        final JCheckBox blackEngine = new JCheckBox("Engine plays Black");
+        blackEngine.addActionListener(new ActionListener() {
+            @Override
+            public void actionPerformed(ActionEvent e) {
+                if (blackEngine.isSelected()) {
+                    AlphaBetaEngine engine = new AlphaBetaEngine();
+                    engine.setOpeningBook(board.getOpeningBook());
+                    engine.setPatternWeights(board.getPatternWeights());
+                    board.setPlayer(true, engine);
+                } else {
+                    board.setPlayer(true, null);
+                }
+            }
+        });
+        control_panel.add(blackEngine);
+
+        final JCheckBox whiteEngine = new JCheckBox("Engine plays White");
+        whiteEngine.addActionListener(new ActionListener() {
+            @Override
+            public void actionPerformed(ActionEvent e) {
+                if (whiteEngine.isSelected()) {
+                    AlphaBetaEngine engine = new AlphaBetaEngine();
+                    engine.setOpeningBook(board.getOpeningBook());
+                    engine.setPatternWeights(board.getPatternWeights());
+                    board.setPlayer(false, engine);
+                } else {
+                    board.setPlayer(false, null);
+                }
+            }
+        });
+        control_panel.add(whiteEngine);
+
+        final JCheckBox hints = new JCheckBox("Show book move");
+        hints.addActionListener(new ActionListener() {
+            @Override
+            public void actionPerformed(ActionEvent e) {
+                board.setShowHints(hints.isSelected());
+            }
+        });
+        control_panel.add(hints);
+
+        final JCheckBox analysis = new JCheckBox("Analysis");
+        analysis.addActionListener(new ActionListener() {
+            @Override
+            public void actionPerformed(ActionEvent e) {
+                board.setAnalysis(analysis.isSelected());
+            }
+        });
+        control_panel.add(analysis);
+
         final JButton instructions = new JButton("Instructions");
         instructions.addActionListener(new ActionListener() {
             @Override
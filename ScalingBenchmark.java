@@ -0,0 +1,79 @@
+package org.cis120.othello;
+
+import java.util.Random;
+
+/**
+ * This class measures how the Lazy SMP search scales with threads. It
+ * searches a fixed set of midgame positions to a fixed depth with 1, 2, 4,
+ * ... threads and prints the time to depth and the speedup over one thread.
+ *
+ * Usage: ScalingBenchmark [depth] [maxThreads]
+ *
+ * @author fdustin
+ *
+ */
+public class ScalingBenchmark {
+    private static final int POSITIONS = 8;
+    // random moves played to reach each midgame position
+    private static final int MIDGAME_MOVES = 20;
+    // fixed seed so every run uses the same positions
+    private static final long SEED = 120;
+
+    public static void main(String[] args) {
+        int depth = 12;
+        int maxThreads = Runtime.getRuntime().availableProcessors();
+        if (args.length > 0) {
+            depth = Integer.parseInt(args[0]);
+        }
+        if (args.length > 1) {
+            maxThreads = Integer.parseInt(args[1]);
+        }
+
+        Othello[] positions = midgamePositions();
+        System.out.println("Depth " + depth + ", " + POSITIONS + " positions");
+        double oneThreadSeconds = 0;
+        for (int threads = 1; threads <= maxThreads; threads *= 2) {
+            AlphaBetaEngine engine = new AlphaBetaEngine(depth, 0);
+            engine.setThreads(threads);
+            long nodes = 0;
+            long start = System.nanoTime();
+            for (Othello position : positions) {
+                // every position starts with an empty table
+                engine.getTranspositionTable().clear();
+                nodes += engine.search(position).getNodes();
+            }
+            double seconds = (System.nanoTime() - start) / 1e9;
+            if (threads == 1) {
+                oneThreadSeconds = seconds;
+            }
+            System.out.printf(
+                    "%3d threads: %8.3fs to depth, speedup %5.2fx, %,d nodes, %,.0f nodes/s%n",
+                    threads, seconds, oneThreadSeconds / seconds, nodes, nodes / seconds
+            );
+            engine.setThreads(1);
+        }
+    }
+
+    /**
+     * Plays seeded random moves from the start to make the positions
+     */
+    static Othello[] midgamePositions() {
+        Random random = new Random(SEED);
+        Othello[] positions = new Othello[POSITIONS];
+        for (int i = 0; i < POSITIONS; i++) {
+            Othello game = new Othello();
+            while (game.getNumTurns() < MIDGAME_MOVES && !game.getGameOver()) {
+                long moves = game.legalMoveMask();
+                if (moves == 0) {
+                    game.checkPass();
+                    continue;
+                }
+                int sq = RandomPlayer.pick(moves, random);
+                game.playTurn(BitBoard.row(sq), BitBoard.col(sq));
+                game.checkPass();
+            }
+            positions[i] = game;
+        }
+        return positions;
+    }
+}
@@ -0,0 +1,75 @@
+package org.cis120.othello;
+
+/**
+ * This is a utility class that stores the outcome of an engine search along
+ * with how much work it took
+ * 
+ * @author fdustin
+ *
+ */
+public final class SearchResult {
+    private final int bestMove;
+    private final int score;
+    private final int depth;
+    private final long nodes;
+    private final long elapsedNanos;
+
+    public SearchResult(int bestMove, int score, int depth, long nodes, long elapsedNanos) {
+        this.bestMove = bestMove;
+        this.score = score;
+        this.depth = depth;
+        this.nodes = nodes;
+        this.elapsedNanos = elapsedNanos;
+    }
+
+    /**
+     * returns the square index of the best move, -1 if there was no move
+     */
+    public int getBestMove() {
+        return bestMove;
+    }
+
+    /**
+     * returns the score of the best move from the mover's point of view
+     */
+    public int getScore() {
+        return score;
+    }
+
+    /**
+     * returns the deepest fully searched depth
+     */
+    public int getDepth() {
+        return depth;
+    }
+
+    public long getNodes() {
+        return nodes;
+    }
+
+    public long getElapsedMillis() {
+        return elapsedNanos / 1000000;
+    }
+
+    /**
+     * Returns the search speed
+     * 
+     * @return nodes searched per second
+     */
+    public long getNodesPerSecond() {
+        if (elapsedNanos <= 0) {
+            return 0;
+        }
+        return (long) (nodes * 1e9 / elapsedNanos);
+    }
+
+    @Override
+    public String toString() {
+        String move = "none";
+        if (bestMove >= 0) {
+            move = new Pair(BitBoard.row(bestMove), BitBoard.col(bestMove)).toString();
+        }
+        return "move " + move + " score " + score + " depth " + depth + " nodes " + nodes
+                + " time " + getElapsedMillis() + "ms " + getNodesPerSecond() + " nodes/s";
+    }
+}
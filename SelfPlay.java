@@ -0,0 +1,314 @@
+package org.cis120.othello;
+
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * This class plays batches of games between two computer players without
+ * opening a window, so it can run on servers with no display. It's used to
+ * check that engine changes don't make it play worse and to generate games.
+ *
+ * Games are split into batches on a work-stealing pool, so a thread that
+ * finishes its games early takes over half of another thread's remaining
+ * games. Every batch builds its own players and reuses one Othello for all of
+ * its games. The first player takes black in even numbered games and white in
+ * odd numbered ones, and game i always plays out the same way for the same
+ * seed no matter how the games are split between threads.
+ *
+ * Players are given as "random", "engine:depth", for example engine:4, or
+ * "mcts:playouts", for example mcts:2000.
+ *
+ * @author fdustin
+ *
+ */
+public class SelfPlay {
+    // batches smaller than this are played by one thread
+    private static final long BATCH_GAMES = 64;
+    // 1MB tables, there is an engine per batch
+    private static final int ENGINE_TABLE_BITS = 16;
+    private static final int DEFAULT_ENGINE_DEPTH = 4;
+    // 64K nodes, about 1MB, there is an MCTS tree per batch
+    private static final int MCTS_MAX_NODES = 1 << 16;
+
+    private final String first;
+    private final String second;
+    private final int randomPlies;
+    private final long seed;
+
+    /**
+     * Sets up a match
+     *
+     * @param first       - player the results are counted for
+     * @param second      - its opponent
+     * @param randomPlies - moves at the start of each game made at random so
+     *                    engines don't play the same game every time
+     * @param seed        - seed for the random moves
+     * @throws IllegalArgumentException if a player isn't recognized
+     */
+    public SelfPlay(String first, String second, int randomPlies, long seed) {
+        createPlayer(first);
+        createPlayer(second);
+        if (randomPlies < 0) {
+            throw new IllegalArgumentException("Random moves can't be negative: " + randomPlies);
+        }
+        this.first = first;
+        this.second = second;
+        this.randomPlies = randomPlies;
+        this.seed = seed;
+    }
+
+    /**
+     * Plays a number of games
+     *
+     * @param games   - how many games to play
+     * @param threads - size of the pool to play them on
+     * @return the results for the first player
+     */
+    public Tally run(long games, int threads) {
+        ForkJoinPool pool = new ForkJoinPool(threads);
+        try {
+            return pool.invoke(new Batch(0, games));
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    /**
+     * Plays games start to end - 1 one after another
+     */
+    private Tally playGames(long start, long end) {
+        Player firstPlayer = createPlayer(first);
+        Player secondPlayer = createPlayer(second);
+        Othello game = new Othello();
+        Random random = new Random();
+        Tally tally = new Tally();
+        for (long i = start; i < end; i++) {
+            random.setSeed(seed + i);
+            // engines remember positions between moves, clear them so the
+            // game doesn't depend on what else this batch played
+            prepare(firstPlayer, random.nextLong());
+            prepare(secondPlayer, random.nextLong());
+            game.reset();
+
+            boolean firstIsBlack = i % 2 == 0;
+            while (!game.getGameOver()) {
+                // after a pass the other player may have no move either,
+                // checking again ends the game
+                if (game.legalMoveMask() == 0) {
+                    game.checkPass();
+                    continue;
+                }
+                int sq;
+                if (game.getNumTurns() < randomPlies) {
+                    sq = RandomPlayer.pick(game.legalMoveMask(), random);
+                } else if (game.getCurrentPlayer() == firstIsBlack) {
+                    sq = firstPlayer.chooseMove(game);
+                } else {
+                    sq = secondPlayer.chooseMove(game);
+                }
+                game.playTurn(BitBoard.row(sq), BitBoard.col(sq));
+                game.checkPass();
+            }
+
+            int diff = game.getBlackScore() - game.getWhiteScore();
+            if (!firstIsBlack) {
+                diff = -diff;
+            }
+            tally.add(diff);
+        }
+        return tally;
+    }
+
+    private static void prepare(Player player, long seed) {
+        if (player instanceof RandomPlayer) {
+            ((RandomPlayer) player).setSeed(seed);
+        } else if (player instanceof AlphaBetaEngine) {
+            ((AlphaBetaEngine) player).getTranspositionTable().clear();
+        } else if (player instanceof MctsEngine) {
+            ((MctsEngine) player).setSeed(seed);
+        }
+    }
+
+    /**
+     * Builds a player from its name
+     *
+     * @throws IllegalArgumentException if the name isn't recognized
+     */
+    private static Player createPlayer(String name) {
+        if (name.equals("random")) {
+            return new RandomPlayer(0);
+        }
+        if (name.equals("engine") || name.startsWith("engine:")) {
+            int depth = DEFAULT_ENGINE_DEPTH;
+            if (name.length() > "engine:".length()) {
+                try {
+                    depth = Integer.parseInt(name.substring("engine:".length()));
+                } catch (NumberFormatException e) {
+                    throw new IllegalArgumentException("Bad engine depth: " + name);
+                }
+            }
+            if (depth < 1) {
+                throw new IllegalArgumentException("Engine depth must be at least 1: " + name);
+            }
+            AlphaBetaEngine engine = new AlphaBetaEngine(depth, 0);
+            engine.setTranspositionTable(new TranspositionTable(ENGINE_TABLE_BITS));
+            return engine;
+        }
+        if (name.startsWith("mcts:")) {
+            long playouts;
+            try {
+                playouts = Long.parseLong(name.substring("mcts:".length()));
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException("Bad playout count: " + name);
+            }
+            if (playouts < 1) {
+                throw new IllegalArgumentException("Playouts must be at least 1: " + name);
+            }
+            MctsEngine engine = new MctsEngine(0, playouts);
+            engine.setMaxNodes(MCTS_MAX_NODES);
+            return engine;
+        }
+        throw new IllegalArgumentException("Unknown player: " + name);
+    }
+
+    /**
+     * Splits its games in half until they're small enough to play
+     */
+    private class Batch extends RecursiveTask<Tally> {
+        private static final long serialVersionUID = 1L;
+
+        private final long start;
+        private final long end;
+
+        Batch(long start, long end) {
+            this.start = start;
+            this.end = end;
+        }
+
+        @Override
+        protected Tally compute() {
+            if (end - start <= BATCH_GAMES) {
+                return playGames(start, end);
+            }
+            long middle = start + (end - start) / 2;
+            Batch left = new Batch(start, middle);
+            left.fork();
+            Tally tally = new Batch(middle, end).compute();
+            tally.add(left.join());
+            return tally;
+        }
+    }
+
+    /**
+     * This is a utility class that counts wins, draws and losses for one
+     * player
+     */
+    public static final class Tally {
+        private long wins;
+        private long draws;
+        private long losses;
+        private long discDifference;
+
+        /**
+         * counts one game from its final disc difference
+         */
+        void add(int diff) {
+            if (diff > 0) {
+                wins++;
+            } else if (diff < 0) {
+                losses++;
+            } else {
+                draws++;
+            }
+            discDifference += diff;
+        }
+
+        void add(Tally other) {
+            wins += other.wins;
+            draws += other.draws;
+            losses += other.losses;
+            discDifference += other.discDifference;
+        }
+
+        public long getWins() {
+            return wins;
+        }
+
+        public long getDraws() {
+            return draws;
+        }
+
+        public long getLosses() {
+            return losses;
+        }
+
+        public long getGames() {
+            return wins + draws + losses;
+        }
+
+        /**
+         * returns the average final disc difference, positive if the player
+         * usually wins
+         */
+        public double getAverageDiscDifference() {
+            if (getGames() == 0) {
+                return 0;
+            }
+            return (double) discDifference / getGames();
+        }
+
+        @Override
+        public String toString() {
+            return getGames() + " games, " + wins + " wins " + draws + " draws " + losses
+                    + " losses, average disc difference "
+                    + String.format("%+.2f", getAverageDiscDifference());
+        }
+    }
+
+    /**
+     * Plays a match and prints the results and games per second.
+     *
+     * @param args - first player, second player, then optional games (1000),
+     *             threads (all processors), random opening moves (0) and seed
+     */
+    public static void main(String[] args) {
+        if (args.length < 2) {
+            System.out.println("usage: SelfPlay first second [games] [threads] "
+                    + "[random moves] [seed]");
+            System.out.println("players are random, engine:depth or mcts:playouts");
+            return;
+        }
+        long games = 1000;
+        int threads = Runtime.getRuntime().availableProcessors();
+        int randomPlies = 0;
+        long seed = 120;
+        SelfPlay match;
+        try {
+            if (args.length > 2) {
+                games = Long.parseLong(args[2]);
+            }
+            if (args.length > 3) {
+                threads = Integer.parseInt(args[3]);
+            }
+            if (args.length > 4) {
+                randomPlies = Integer.parseInt(args[4]);
+            }
+            if (args.length > 5) {
+                seed = Long.parseLong(args[5]);
+            }
+            match = new SelfPlay(args[0], args[1], randomPlies, seed);
+        } catch (IllegalArgumentException e) {
+            // NumberFormatException is an IllegalArgumentException too
+            System.out.println(e.getMessage());
+            return;
+        }
+
+        long start = System.nanoTime();
+        Tally tally = match.run(games, threads);
+        double seconds = (System.nanoTime() - start) / 1e9;
+        System.out.println(args[0] + " vs " + args[1] + ": " + tally);
+        System.out.println(String.format("%.2fs on %d threads, %.0f games/s", seconds, threads,
+                tally.getGames() / seconds));
+    }
+}
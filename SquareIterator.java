@@ -0,0 +1,54 @@
+package org.cis120.othello;
+
+import java.util.NoSuchElementException;
+import java.util.PrimitiveIterator;
+
+/**
+ * This class walks the set bits of a move mask from the lowest square to the
+ * highest. It returns primitive square indices and can be reset with a new
+ * mask, so one instance can be reused without allocating.
+ * 
+ * @author fdustin
+ *
+ */
+public final class SquareIterator implements PrimitiveIterator.OfInt {
+    private long remaining;
+
+    public SquareIterator() {
+        this(0L);
+    }
+
+    public SquareIterator(long mask) {
+        this.remaining = mask;
+    }
+
+    /**
+     * Starts iterating over a new mask
+     * 
+     * @param mask - the squares to visit
+     * @return this iterator
+     */
+    public SquareIterator reset(long mask) {
+        this.remaining = mask;
+        return this;
+    }
+
+    @Override
+    public boolean hasNext() {
+        return remaining != 0;
+    }
+
+    /**
+     * returns the next square index, r * 8 + c
+     */
+    @Override
+    public int nextInt() {
+        if (remaining == 0) {
+            throw new NoSuchElementException();
+        }
+        int sq = Long.numberOfTrailingZeros(remaining);
+        // clear the lowest set bit
+        remaining &= remaining - 1;
+        return sq;
+    }
+}
@@ -1,5 +1,7 @@
 package org.cis120.othello;
 
+import java.util.Arrays;
+
 /**
  * This is a utility class to help model the Othello game's history
  * 
@@ -11,15 +13,20 @@ final class StorageOthello {
     private final int numTurns;
     private final boolean isP1Turn;
     private final boolean passOccurred;
+    // piece counts at this turn so loading a turn doesn't rescan the board
+    private final int blackScore;
+    private final int whiteScore;
 
     public StorageOthello(
             int[][] board, int numTurns, boolean isP1Turn,
-            boolean passOccurred
+            boolean passOccurred, int blackScore, int whiteScore
     ) {
         this.board = board;
         this.numTurns = numTurns;
         this.isP1Turn = isP1Turn;
         this.passOccurred = passOccurred;
+        this.blackScore = blackScore;
+        this.whiteScore = whiteScore;
     }
 
     /**
@@ -28,7 +35,7 @@ final class StorageOthello {
      * @return
      */
     public int[][] getBoard() {
-        int[][] boardCopy = new int[8][8];
+        int[][] boardCopy = new int[board.length][board.length];
         for (int i = 0; i < board.length; i++) {
             for (int j = 0; j < board[i].length; j++) {
                 boardCopy[i][j] = board[i][j];
@@ -49,6 +56,43 @@ final class StorageOthello {
         return passOccurred;
     }
 
+    public int getBlackScore() {
+        return blackScore;
+    }
+
+    public int getWhiteScore() {
+        return whiteScore;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof StorageOthello)) {
+            return false;
+        }
+        StorageOthello that = (StorageOthello) o;
+        return this.numTurns == that.numTurns && this.isP1Turn == that.isP1Turn
+                && this.passOccurred == that.passOccurred
+                && Arrays.deepEquals(this.board, that.board);
+    }
+
+    /**
+     * Uses the Zobrist hash of 8x8 boards so equal turns hash the same as the
+     * positions they hold
+     */
+    @Override
+    public int hashCode() {
+        if (board.length != BitBoard.SIZE) {
+            // only 8x8 boards have Zobrist keys
+            return Arrays.deepHashCode(board) * 31 + numTurns;
+        }
+        BitBoard b = BitBoard.fromArray(board);
+        long hash = Zobrist.hash(b.getBlack(), b.getWhite(), isP1Turn);
+        return Long.hashCode(hash) * 31 + numTurns;
+    }
+
     @Override
     public String toString() {
         String toReturn = "";
@@ -56,11 +100,11 @@ final class StorageOthello {
         for (int i = 0; i < board.length; i++) {
             for (int j = 0; j < board[i].length; j++) {
                 toReturn = toReturn + board[i][j];
-                if (j < 7) {
+                if (j < board[i].length - 1) {
                     toReturn = toReturn + " | ";
                 }
             }
-            if (i < 7) {
+            if (i < board.length - 1) {
                 toReturn = toReturn + "\n-----------------------------\n";
             }
         }
@@ -0,0 +1,132 @@
+package org.cis120.othello;
+
+/**
+ * This is a utility class for the 8 symmetries of the board, its 4
+ * rotations with and without a reflection. Turning or reflecting a position
+ * doesn't change who wins it or how, so positions that are the same under a
+ * symmetry only need to be stored once. A canonical form picks one version
+ * of each position to store it under.
+ *
+ * A transform is a combination of MIRROR, FLIP and TRANSPOSE applied in that
+ * order, numbered 0 to 7 by those bits. Each is a few shift-and-mask steps on
+ * a 64 bit mask, so transforming a position costs about as much as finding
+ * its legal moves.
+ *
+ * @author fdustin
+ *
+ */
+public final class Symmetry {
+    public static final int IDENTITY = 0;
+    // column c goes to 7 - c
+    public static final int MIRROR = 1;
+    // row r goes to 7 - r
+    public static final int FLIP = 2;
+    // (r, c) goes to (c, r)
+    public static final int TRANSPOSE = 4;
+    public static final int COUNT = 8;
+
+    // transposing after a mirror is flipping before the transpose, so those
+    // two undo each other and the rest undo themselves
+    private static final int[] INVERSE = { 0, 1, 2, 3, 4, 6, 5, 7 };
+
+    private Symmetry() {
+    }
+
+    /**
+     * Applies a symmetry to a mask
+     *
+     * @param b - the mask
+     * @param t - the transform, 0 to 7
+     * @return the transformed mask
+     */
+    public static long transform(long b, int t) {
+        if ((t & MIRROR) != 0) {
+            b = mirror(b);
+        }
+        if ((t & FLIP) != 0) {
+            b = Long.reverseBytes(b);
+        }
+        if ((t & TRANSPOSE) != 0) {
+            b = transpose(b);
+        }
+        return b;
+    }
+
+    /**
+     * reverses the columns of every row
+     */
+    public static long mirror(long b) {
+        b = ((b >>> 1) & 0x5555555555555555L) | ((b & 0x5555555555555555L) << 1);
+        b = ((b >>> 2) & 0x3333333333333333L) | ((b & 0x3333333333333333L) << 2);
+        return ((b >>> 4) & 0x0F0F0F0F0F0F0F0FL) | ((b & 0x0F0F0F0F0F0F0F0FL) << 4);
+    }
+
+    /**
+     * swaps rows and columns, moving bits across the main diagonal in 4x4,
+     * 2x2 and then 1x1 blocks
+     */
+    public static long transpose(long b) {
+        long x = (b ^ (b << 28)) & 0x0F0F0F0F00000000L;
+        b ^= x ^ (x >>> 28);
+        x = (b ^ (b << 14)) & 0x3333000033330000L;
+        b ^= x ^ (x >>> 14);
+        x = (b ^ (b << 7)) & 0x5500550055005500L;
+        return b ^ x ^ (x >>> 7);
+    }
+
+    /**
+     * returns the transform that undoes t
+     */
+    public static int inverse(int t) {
+        return INVERSE[t];
+    }
+
+    /**
+     * returns where a square ends up under a transform
+     */
+    public static int transformSquare(int sq, int t) {
+        return Long.numberOfTrailingZeros(transform(1L << sq, t));
+    }
+
+    /**
+     * Finds the canonical form of a position, the version with the smallest
+     * black mask and then the smallest white mask as unsigned numbers. All 8
+     * versions of a position have the same canonical form. Whose turn it is
+     * doesn't change under a symmetry so it isn't needed.
+     *
+     * @param black - mask of the black pieces
+     * @param white - mask of the white pieces
+     * @return the transform that gives the canonical form, apply it to both
+     *         masks and to any squares that go with them, and its inverse to
+     *         turn canonical squares back
+     */
+    public static int canonicalTransform(long black, long white) {
+        int best = IDENTITY;
+        long bestBlack = black;
+        long bestWhite = white;
+        // every transform is one step from an earlier one
+        long[] blacks = new long[COUNT];
+        long[] whites = new long[COUNT];
+        blacks[0] = black;
+        whites[0] = white;
+        for (int t = 1; t < COUNT; t++) {
+            if ((t & TRANSPOSE) != 0) {
+                blacks[t] = transpose(blacks[t - TRANSPOSE]);
+                whites[t] = transpose(whites[t - TRANSPOSE]);
+            } else if ((t & FLIP) != 0) {
+                blacks[t] = Long.reverseBytes(blacks[t - FLIP]);
+                whites[t] = Long.reverseBytes(whites[t - FLIP]);
+            } else {
+                blacks[t] = mirror(black);
+                whites[t] = mirror(white);
+            }
+            int order = Long.compareUnsigned(blacks[t], bestBlack);
+            if (order < 0 || (order == 0 && Long.compareUnsigned(whites[t], bestWhite) < 0)) {
+                best = t;
+                bestBlack = blacks[t];
+                bestWhite = whites[t];
+            }
+        }
+        return best;
+    }
+}
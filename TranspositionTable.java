@@ -0,0 +1,140 @@
+package org.cis120.othello;
+
+import java.util.Arrays;
+
+/**
+ * This class remembers search results by position hash so a position reached
+ * again through a different move order doesn't have to be searched again.
+ *
+ * The table is a fixed size long[] with two longs per entry: the hash XORed
+ * with the data, and the data. A probe only trusts an entry when the two
+ * agree, so threads can share the table without locks, a half written entry
+ * just looks like a miss. When two positions want the same slot the one
+ * searched deeper is kept, unless it is left over from an older search.
+ *
+ * @author fdustin
+ *
+ */
+public final class TranspositionTable {
+    // bound types
+    public static final int EXACT = 0;
+    public static final int LOWER = 1;
+    public static final int UPPER = 2;
+
+    // data layout, from the lowest bit:
+    // score 32 bits, move 7 bits (64 for none), depth 7 bits, bound 2 bits,
+    // generation 8 bits, and a set bit so a stored entry is never 0
+    private static final int MOVE_SHIFT = 32;
+    private static final int DEPTH_SHIFT = 39;
+    private static final int BOUND_SHIFT = 46;
+    private static final int GENERATION_SHIFT = 48;
+    private static final long USED = 1L << 56;
+    private static final int NO_MOVE = 64;
+
+    private final long[] table;
+    private final long indexMask;
+    private int generation;
+
+    /**
+     * Creates a table
+     *
+     * @param sizeBits - the table holds 2^sizeBits entries of 16 bytes each
+     */
+    public TranspositionTable(int sizeBits) {
+        if (sizeBits < 1 || sizeBits > 28) {
+            throw new IllegalArgumentException("Table size bits must be 1 to 28: " + sizeBits);
+        }
+        table = new long[2 << sizeBits];
+        indexMask = (1L << sizeBits) - 1;
+    }
+
+    /**
+     * Starts a new search, entries from older searches are replaced first
+     */
+    public void newSearch() {
+        generation = (generation + 1) & 0xFF;
+    }
+
+    /**
+     * Empties the table
+     */
+    public void clear() {
+        Arrays.fill(table, 0L);
+    }
+
+    /**
+     * Looks a position up
+     *
+     * @param hash - Zobrist hash of the position
+     * @return the stored data, 0 if the position isn't stored
+     */
+    public long probe(long hash) {
+        int index = (int) (hash & indexMask) << 1;
+        long check = table[index];
+        long data = table[index + 1];
+        if ((check ^ data) != hash || data == 0) {
+            return 0L;
+        }
+        return data;
+    }
+
+    /**
+     * Stores a search result
+     *
+     * @param hash  - Zobrist hash of the position
+     * @param depth - depth the position was searched to
+     * @param score - the score found
+     * @param bound - EXACT, LOWER if the score is at least this good, UPPER if
+     *              at most this good
+     * @param move  - best move found, -1 for none
+     */
+    public void store(long hash, int depth, int score, int bound, int move) {
+        int index = (int) (hash & indexMask) << 1;
+        long old = table[index + 1];
+        // keep a deeper entry for another position from this search
+        if (old != 0 && (table[index] ^ old) != hash
+                && generation(old) == generation && depth(old) > depth) {
+            return;
+        }
+        if (move < 0) {
+            move = NO_MOVE;
+        }
+        long data = (score & 0xFFFFFFFFL)
+                | ((long) move << MOVE_SHIFT)
+                | ((long) Math.min(depth, 127) << DEPTH_SHIFT)
+                | ((long) bound << BOUND_SHIFT)
+                | ((long) generation << GENERATION_SHIFT)
+                | USED;
+        table[index] = hash ^ data;
+        table[index + 1] = data;
+    }
+
+    // decoders for the data returned by probe
+
+    public static int score(long data) {
+        return (int) data;
+    }
+
+    /**
+     * returns the stored best move, -1 if there isn't one
+     */
+    public static int move(long data) {
+        int move = (int) (data >>> MOVE_SHIFT) & 0x7F;
+        if (move == NO_MOVE) {
+            return -1;
+        }
+        return move;
+    }
+
+    public static int depth(long data) {
+        return (int) (data >>> DEPTH_SHIFT) & 0x7F;
+    }
+
+    public static int bound(long data) {
+        return (int) (data >>> BOUND_SHIFT) & 0x3;
+    }
+
+    private static int generation(long data) {
+        return (int) (data >>> GENERATION_SHIFT) & 0xFF;
+    }
+}
@@ -0,0 +1,280 @@
+package org.cis120.othello;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * This is a utility class that reads saved turns out of the CSV save format
+ * one at a time. Each turn is 9 lines, "numTurns,isP1Turn,passOccurred" and
+ * then 8 rows of 8 comma separated 0's, 1's and 2's.
+ *
+ * The bytes are checked and decoded where they sit in the buffer, without
+ * building Strings or splitting lines. Reading from a channel only keeps one
+ * buffer of the file in memory, so files of any size can be read. Bad input
+ * doesn't throw, the parser stops and getError says what was wrong.
+ *
+ * @author fdustin
+ *
+ */
+final class TurnParser implements Iterator<StorageOthello> {
+    // a valid turn is under 200 bytes, keep at least this much buffered so a
+    // whole turn is always there to parse
+    private static final int MAX_TURN_BYTES = 512;
+    private static final int BUFFER_BYTES = 1 << 13;
+
+    private final ByteBuffer buffer;
+    private final ReadableByteChannel channel;
+    private boolean eof;
+    private StorageOthello next;
+    private String error;
+    // where the next turn starts, the first line is line 1
+    private long line = 1;
+
+    /**
+     * Parses turns from the buffer's position to its limit
+     */
+    public TurnParser(ByteBuffer buffer) {
+        this.buffer = buffer.duplicate();
+        this.channel = null;
+        this.eof = true;
+    }
+
+    /**
+     * Parses turns from a channel, reading it a buffer at a time. The channel
+     * isn't closed.
+     */
+    public TurnParser(ReadableByteChannel channel) {
+        this.buffer = ByteBuffer.allocate(BUFFER_BYTES);
+        this.buffer.flip();
+        this.channel = channel;
+        this.eof = false;
+    }
+
+    /**
+     * returns what was wrong with the input, null if nothing was
+     */
+    public String getError() {
+        return error;
+    }
+
+    /**
+     * returns true if there is another turn, false at the end of the input or
+     * after bad input
+     */
+    @Override
+    public boolean hasNext() {
+        if (next == null && error == null) {
+            next = parseTurn();
+        }
+        return next != null;
+    }
+
+    @Override
+    public StorageOthello next() {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+        StorageOthello turn = next;
+        next = null;
+        return turn;
+    }
+
+    /**
+     * returns the remaining turns as a sequential stream, check getError
+     * after it's used up
+     */
+    public Stream<StorageOthello> stream() {
+        return StreamSupport.stream(
+                Spliterators.spliteratorUnknownSize(
+                        this, Spliterator.ORDERED | Spliterator.NONNULL
+                ), false
+        );
+    }
+
+    /**
+     * Parses the next turn
+     *
+     * @return the turn, null at the end of the input or if the turn is bad,
+     *         in which case error is set
+     */
+    private StorageOthello parseTurn() {
+        if (!fill()) {
+            return null;
+        }
+        if (!buffer.hasRemaining()) {
+            return null;
+        }
+
+        // first line: numTurns,isP1Turn,passOccurred
+        int p = buffer.position();
+        int limit = buffer.limit();
+        boolean negative = false;
+        if (p < limit && buffer.get(p) == '-') {
+            negative = true;
+            p++;
+        }
+        int digitsStart = p;
+        long numTurns = 0;
+        while (p < limit && isDigit(buffer.get(p)) && numTurns <= Integer.MAX_VALUE) {
+            numTurns = numTurns * 10 + (buffer.get(p) - '0');
+            p++;
+        }
+        if (p == digitsStart || numTurns > Integer.MAX_VALUE) {
+            return fail(0, "Illegal First Line: turn number");
+        }
+        if (negative) {
+            numTurns = -numTurns;
+        }
+        p = expect(p, ',');
+        int isP1Turn = parseBoolean(p);
+        if (isP1Turn < 0) {
+            return fail(0, "Illegal First Line: isP1Turn");
+        }
+        p = expect(p + booleanLength(isP1Turn), ',');
+        int passOccurred = parseBoolean(p);
+        if (passOccurred < 0) {
+            return fail(0, "Illegal First Line: passOccurred");
+        }
+        p = endOfLine(p + booleanLength(passOccurred));
+        if (p < 0) {
+            return fail(0, "Bad format of Game state line.");
+        }
+
+        // then 8 board rows, counting the pieces as we go
+        int[][] board = new int[BitBoard.SIZE][BitBoard.SIZE];
+        int black = 0;
+        int white = 0;
+        for (int i = 0; i < BitBoard.SIZE; i++) {
+            for (int j = 0; j < BitBoard.SIZE; j++) {
+                if (j > 0) {
+                    p = expect(p, ',');
+                }
+                if (p < 0 || p >= limit || buffer.get(p) < '0' || buffer.get(p) > '2') {
+                    return fail(i + 1, "Illegal In board");
+                }
+                int cell = buffer.get(p) - '0';
+                board[i][j] = cell;
+                if (cell == 1) {
+                    black++;
+                } else if (cell == 2) {
+                    white++;
+                }
+                p++;
+            }
+            p = endOfLine(p);
+            if (p < 0) {
+                return fail(i + 1, "Bad format of Game Board lines");
+            }
+        }
+        buffer.position(p);
+        line += 9;
+        return new StorageOthello(board, (int) numTurns, isP1Turn == 1, passOccurred == 1,
+                black, white);
+    }
+
+    /**
+     * Makes sure a whole turn is buffered if the input has one
+     *
+     * @return false if reading failed, error is set
+     */
+    private boolean fill() {
+        if (eof || buffer.remaining() >= MAX_TURN_BYTES) {
+            return true;
+        }
+        buffer.compact();
+        try {
+            while (buffer.hasRemaining()) {
+                if (channel.read(buffer) < 0) {
+                    eof = true;
+                    break;
+                }
+            }
+        } catch (IOException e) {
+            buffer.flip();
+            error = "Error occurred while reading";
+            return false;
+        }
+        buffer.flip();
+        return true;
+    }
+
+    private StorageOthello fail(int lineInTurn, String message) {
+        error = message + " on line " + (line + lineInTurn);
+        return null;
+    }
+
+    private static boolean isDigit(byte b) {
+        return b >= '0' && b <= '9';
+    }
+
+    /**
+     * returns the position after c if c is at p, otherwise -1
+     */
+    private int expect(int p, char c) {
+        if (p < 0 || p >= buffer.limit() || buffer.get(p) != c) {
+            return -1;
+        }
+        return p + 1;
+    }
+
+    /**
+     * returns 1 for "true" at p, 0 for "false" and -1 for anything else
+     */
+    private int parseBoolean(int p) {
+        if (matches(p, "true")) {
+            return 1;
+        }
+        if (matches(p, "false")) {
+            return 0;
+        }
+        return -1;
+    }
+
+    private static int booleanLength(int value) {
+        if (value == 1) {
+            return 4;
+        }
+        return 5;
+    }
+
+    private boolean matches(int p, String word) {
+        if (p < 0 || p + word.length() > buffer.limit()) {
+            return false;
+        }
+        for (int i = 0; i < word.length(); i++) {
+            if (buffer.get(p + i) != word.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Skips a line ending, \n or \r\n. The end of the input also ends a
+     * line.
+     *
+     * @return the start of the next line, -1 if p isn't at a line ending
+     */
+    private int endOfLine(int p) {
+        if (p < 0) {
+            return -1;
+        }
+        if (p == buffer.limit()) {
+            return p;
+        }
+        if (buffer.get(p) == '\r') {
+            p++;
+        }
+        if (p < buffer.limit() && buffer.get(p) == '\n') {
+            return p + 1;
+        }
+        return -1;
+    }
+}
@@ -0,0 +1,138 @@
+package org.cis120.othello;
+
+/**
+ * This is a utility class that stores the moves made since the start of the
+ * game's history as flip deltas. Each entry only holds the square that was
+ * played, the mask of flipped pieces, and the turn/pass flags from before the
+ * move, which is enough to step the board back one turn. Moves on boards
+ * other than 8x8 keep their flips as WideBoard masks of 4 longs instead.
+ *
+ * @author fdustin
+ *
+ */
+final class UndoLog {
+    // flag bits
+    private static final byte BLACK_MOVED = 1;
+    private static final byte PASS_OCCURRED = 2;
+
+    // a full game fits without growing
+    private static final int INITIAL_CAPACITY = 64;
+
+    private byte[] squares;
+    private long[] flips;
+    // WideBoard.WORDS longs per move, only made once a wide move is pushed
+    private long[] wideFlips;
+    private byte[] flags;
+    private int size;
+
+    public UndoLog() {
+        squares = new byte[INITIAL_CAPACITY];
+        flips = new long[INITIAL_CAPACITY];
+        flags = new byte[INITIAL_CAPACITY];
+        size = 0;
+    }
+
+    /**
+     * Records a move
+     *
+     * @param sq           - square index of the placed piece
+     * @param flipped      - mask of the pieces flipped by the move
+     * @param blackMoved   - true if black made the move
+     * @param passOccurred - the pass flag before the move
+     */
+    public void push(int sq, long flipped, boolean blackMoved, boolean passOccurred) {
+        if (size == squares.length) {
+            grow();
+        }
+        byte f = 0;
+        if (blackMoved) {
+            f |= BLACK_MOVED;
+        }
+        if (passOccurred) {
+            f |= PASS_OCCURRED;
+        }
+        squares[size] = (byte) sq;
+        flips[size] = flipped;
+        flags[size] = f;
+        size++;
+    }
+
+    /**
+     * Records a move on a WideBoard
+     *
+     * @param sq           - square index of the placed piece
+     * @param flipped      - mask of the pieces flipped by the move, copied
+     * @param blackMoved   - true if black made the move
+     * @param passOccurred - the pass flag before the move
+     */
+    public void pushWide(int sq, long[] flipped, boolean blackMoved, boolean passOccurred) {
+        if (wideFlips == null) {
+            wideFlips = new long[squares.length * WideBoard.WORDS];
+        }
+        push(sq, 0L, blackMoved, passOccurred);
+        System.arraycopy(flipped, 0, wideFlips, (size - 1) * WideBoard.WORDS, WideBoard.WORDS);
+    }
+
+    /**
+     * removes the most recent move, read it with the getters first
+     */
+    public void pop() {
+        size--;
+    }
+
+    public void clear() {
+        size = 0;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    // getters by index, 0 is the oldest move and size() - 1 the most recent
+
+    public int getSquare(int i) {
+        // wide boards have squares up to 255
+        return squares[i] & 0xFF;
+    }
+
+    public long getFlips(int i) {
+        return flips[i];
+    }
+
+    /**
+     * copies the flips of a move pushed with pushWide into a WideBoard mask
+     */
+    public void getWideFlips(int i, long[] flipped) {
+        System.arraycopy(wideFlips, i * WideBoard.WORDS, flipped, 0, WideBoard.WORDS);
+    }
+
+    public boolean getBlackMoved(int i) {
+        return (flags[i] & BLACK_MOVED) != 0;
+    }
+
+    public boolean getPassOccurred(int i) {
+        return (flags[i] & PASS_OCCURRED) != 0;
+    }
+
+    private void grow() {
+        int capacity = squares.length * 2;
+        byte[] newSquares = new byte[capacity];
+        long[] newFlips = new long[capacity];
+        byte[] newFlags = new byte[capacity];
+        System.arraycopy(squares, 0, newSquares, 0, size);
+        System.arraycopy(flips, 0, newFlips, 0, size);
+        System.arraycopy(flags, 0, newFlags, 0, size);
+        if (wideFlips != null) {
+            long[] newWideFlips = new long[capacity * WideBoard.WORDS];
+            System.arraycopy(wideFlips, 0, newWideFlips, 0, size * WideBoard.WORDS);
+            wideFlips = newWideFlips;
+        }
+        squares = newSquares;
+        flips = newFlips;
+        flags = newFlags;
+    }
+}
@@ -0,0 +1,371 @@
+package org.cis120.othello;
+
+/**
+ * This class stores an Othello position on a square board of any size from
+ * 6x6 to 16x16. BitBoard only fits 8x8 into its two longs, so here each
+ * color is a mask of 4 longs. Every row takes 16 bits whatever the size, so
+ * square (r, c) is bit r * 16 + c and a long holds 4 rows. Smaller boards
+ * leave the bits past their last row and column empty.
+ *
+ * Moves are found the same way BitBoard finds them, by shifting whole masks.
+ * Shifting left by 1, 16, 15 or 17 moves every piece one step right, down,
+ * down-left or down-right, and the bits that leave one long are carried into
+ * the next. The 4 longs are shifted side by side in local variables, so the
+ * work only grows with the longest possible run, not with the number of
+ * squares.
+ *
+ * Masks are arrays of 4 longs, newMask makes one. A board keeps the moves it
+ * is finding in fields, so it is for one thread at a time.
+ *
+ * @author fdustin
+ *
+ */
+public final class WideBoard {
+    public static final int MIN_SIZE = 6;
+    public static final int MAX_SIZE = 16;
+    // bits per row and rows per long, the same for every size
+    static final int STRIDE = 16;
+    private static final int ROWS_PER_WORD = 4;
+    // longs in a mask
+    static final int WORDS = 4;
+
+    // the 8 directions a move can flip along
+    private static final int[] DIRECTION_ROWS = { -1, -1, -1, 0, 0, 1, 1, 1 };
+    private static final int[] DIRECTION_COLS = { -1, 0, 1, -1, 1, -1, 0, 1 };
+
+    private final int size;
+    private final long[] black = new long[WORDS];
+    private final long[] white = new long[WORDS];
+    // the squares on the board, and those not in its first or last column
+    private final long[] squares = new long[WORDS];
+    private final long[] innerCols = new long[WORDS];
+    // the moves legalMoves has found so far
+    private long moves0;
+    private long moves1;
+    private long moves2;
+    private long moves3;
+
+    /**
+     * Creates an empty board
+     *
+     * @param size - squares per side, from 6 to 16
+     */
+    public WideBoard(int size) {
+        if (size < MIN_SIZE || size > MAX_SIZE) {
+            throw new IllegalArgumentException("Board size must be " + MIN_SIZE + " to "
+                    + MAX_SIZE + ": " + size);
+        }
+        this.size = size;
+        long row = (1L << size) - 1;
+        long innerRow = row & ~1L & ~(1L << (size - 1));
+        for (int r = 0; r < size; r++) {
+            int shift = (r % ROWS_PER_WORD) * STRIDE;
+            squares[r / ROWS_PER_WORD] |= row << shift;
+            innerCols[r / ROWS_PER_WORD] |= innerRow << shift;
+        }
+    }
+
+    /**
+     * Builds a board from the 0/1/2 array representation
+     *
+     * @param board - square array, 1's are black and 2's are white
+     * @return the equivalent WideBoard
+     */
+    public static WideBoard fromArray(int[][] board) {
+        WideBoard b = new WideBoard(board.length);
+        for (int i = 0; i < board.length; i++) {
+            for (int j = 0; j < board.length; j++) {
+                b.setCell(i, j, board[i][j]);
+            }
+        }
+        return b;
+    }
+
+    /**
+     * Generates the 0/1/2 array representation of this board
+     *
+     * @return a new size x size array
+     */
+    public int[][] toArray() {
+        int[][] board = new int[size][size];
+        for (int i = 0; i < size; i++) {
+            for (int j = 0; j < size; j++) {
+                board[i][j] = getCell(i, j);
+            }
+        }
+        return board;
+    }
+
+    public WideBoard copy() {
+        WideBoard b = new WideBoard(size);
+        System.arraycopy(black, 0, b.black, 0, WORDS);
+        System.arraycopy(white, 0, b.white, 0, WORDS);
+        return b;
+    }
+
+    public int getSize() {
+        return size;
+    }
+
+    /**
+     * returns an empty mask
+     */
+    public long[] newMask() {
+        return new long[WORDS];
+    }
+
+    /**
+     * returns 0 for an empty space, 1 for black and 2 for white
+     */
+    public int getCell(int r, int c) {
+        int sq = square(r, c);
+        if (isSet(black, sq)) {
+            return 1;
+        }
+        if (isSet(white, sq)) {
+            return 2;
+        }
+        return 0;
+    }
+
+    /**
+     * sets a space using the 0/1/2 convention, any other value empties it
+     */
+    public void setCell(int r, int c, int val) {
+        int sq = square(r, c);
+        long bit = 1L << sq;
+        black[sq >>> 6] &= ~bit;
+        white[sq >>> 6] &= ~bit;
+        if (val == 1) {
+            black[sq >>> 6] |= bit;
+        } else if (val == 2) {
+            white[sq >>> 6] |= bit;
+        }
+    }
+
+    public int countBlack() {
+        return count(black);
+    }
+
+    public int countWhite() {
+        return count(white);
+    }
+
+    /**
+     * returns the number of squares set in a mask
+     */
+    static int count(long[] mask) {
+        int n = 0;
+        for (int w = 0; w < WORDS; w++) {
+            n += Long.bitCount(mask[w]);
+        }
+        return n;
+    }
+
+    /**
+     * Finds all legal moves for a player
+     *
+     * @param blackToMove - true if the moves are for black
+     * @param moves       - mask from newMask, filled with a bit for every
+     *                    legal move
+     * @return the number of legal moves
+     */
+    public int legalMoves(boolean blackToMove, long[] moves) {
+        if (blackToMove) {
+            return legalMoves(black, white, moves);
+        }
+        return legalMoves(white, black, moves);
+    }
+
+    private int legalMoves(long[] own, long[] opp, long[] moves) {
+        long o0 = own[0];
+        long o1 = own[1];
+        long o2 = own[2];
+        long o3 = own[3];
+        long p0 = opp[0];
+        long p1 = opp[1];
+        long p2 = opp[2];
+        long p3 = opp[3];
+        // opponent pieces on the edge columns can't be outflanked sideways, so
+        // leaving them out also stops runs wrapping around to the next row
+        long i0 = p0 & innerCols[0];
+        long i1 = p1 & innerCols[1];
+        long i2 = p2 & innerCols[2];
+        long i3 = p3 & innerCols[3];
+        moves0 = 0L;
+        moves1 = 0L;
+        moves2 = 0L;
+        moves3 = 0L;
+        runEndsUp(o0, o1, o2, o3, i0, i1, i2, i3, 1);
+        runEndsDown(o0, o1, o2, o3, i0, i1, i2, i3, 1);
+        runEndsUp(o0, o1, o2, o3, p0, p1, p2, p3, STRIDE);
+        runEndsDown(o0, o1, o2, o3, p0, p1, p2, p3, STRIDE);
+        runEndsUp(o0, o1, o2, o3, i0, i1, i2, i3, STRIDE - 1);
+        runEndsDown(o0, o1, o2, o3, i0, i1, i2, i3, STRIDE - 1);
+        runEndsUp(o0, o1, o2, o3, i0, i1, i2, i3, STRIDE + 1);
+        runEndsDown(o0, o1, o2, o3, i0, i1, i2, i3, STRIDE + 1);
+        moves[0] = moves0 & squares[0] & ~(o0 | p0);
+        moves[1] = moves1 & squares[1] & ~(o1 | p1);
+        moves[2] = moves2 & squares[2] & ~(o2 | p2);
+        moves[3] = moves3 & squares[3] & ~(o3 | p3);
+        return Long.bitCount(moves[0]) + Long.bitCount(moves[1])
+                + Long.bitCount(moves[2]) + Long.bitCount(moves[3]);
+    }
+
+    /**
+     * Adds the squares just past runs of opponent pieces that start next to
+     * one of our pieces, going towards the higher bits. The bits shifted out
+     * of each long carry into the one above.
+     */
+    private void runEndsUp(long o0, long o1, long o2, long o3,
+            long p0, long p1, long p2, long p3, int s) {
+        int c = Long.SIZE - s;
+        long r0 = p0 & (o0 << s);
+        long r1 = p1 & ((o1 << s) | (o0 >>> c));
+        long r2 = p2 & ((o2 << s) | (o1 >>> c));
+        long r3 = p3 & ((o3 << s) | (o2 >>> c));
+        // a run of opponent pieces has at most size - 2 pieces
+        for (int i = 3; i < size; i++) {
+            r3 |= p3 & ((r3 << s) | (r2 >>> c));
+            r2 |= p2 & ((r2 << s) | (r1 >>> c));
+            r1 |= p1 & ((r1 << s) | (r0 >>> c));
+            r0 |= p0 & (r0 << s);
+        }
+        moves0 |= r0 << s;
+        moves1 |= (r1 << s) | (r0 >>> c);
+        moves2 |= (r2 << s) | (r1 >>> c);
+        moves3 |= (r3 << s) | (r2 >>> c);
+    }
+
+    /**
+     * runEndsUp going towards the lower bits
+     */
+    private void runEndsDown(long o0, long o1, long o2, long o3,
+            long p0, long p1, long p2, long p3, int s) {
+        int c = Long.SIZE - s;
+        long r0 = p0 & ((o0 >>> s) | (o1 << c));
+        long r1 = p1 & ((o1 >>> s) | (o2 << c));
+        long r2 = p2 & ((o2 >>> s) | (o3 << c));
+        long r3 = p3 & (o3 >>> s);
+        for (int i = 3; i < size; i++) {
+            r0 |= p0 & ((r0 >>> s) | (r1 << c));
+            r1 |= p1 & ((r1 >>> s) | (r2 << c));
+            r2 |= p2 & ((r2 >>> s) | (r3 << c));
+            r3 |= p3 & (r3 >>> s);
+        }
+        moves0 |= (r0 >>> s) | (r1 << c);
+        moves1 |= (r1 >>> s) | (r2 << c);
+        moves2 |= (r2 >>> s) | (r3 << c);
+        moves3 |= r3 >>> s;
+    }
+
+    /**
+     * Places a piece and flips the outflanked pieces. The move is assumed to be
+     * legal.
+     *
+     * @param sq          - square index of the move
+     * @param blackToMove - true if black is placing the piece
+     * @return the number of pieces flipped
+     */
+    public int play(int sq, boolean blackToMove) {
+        return play(sq, blackToMove, null);
+    }
+
+    /**
+     * Places a piece and flips the outflanked pieces, keeping the flips so
+     * the move can be undone. The move is assumed to be legal.
+     *
+     * @param sq          - square index of the move
+     * @param blackToMove - true if black is placing the piece
+     * @param flipped     - mask from newMask, set to the pieces flipped, or
+     *                    null to not keep them
+     * @return the number of pieces flipped
+     */
+    public int play(int sq, boolean blackToMove, long[] flipped) {
+        if (flipped != null) {
+            for (int w = 0; w < WORDS; w++) {
+                flipped[w] = 0L;
+            }
+        }
+        long[] own = white;
+        long[] opp = black;
+        if (blackToMove) {
+            own = black;
+            opp = white;
+        }
+        int r = row(sq);
+        int c = col(sq);
+        int count = 0;
+        // a single piece is quicker to walk out from than to shift
+        for (int d = 0; d < DIRECTION_ROWS.length; d++) {
+            int dr = DIRECTION_ROWS[d];
+            int dc = DIRECTION_COLS[d];
+            int i = r + dr;
+            int j = c + dc;
+            int n = 0;
+            while (inBounds(i, j) && isSet(opp, square(i, j))) {
+                i += dr;
+                j += dc;
+                n++;
+            }
+            if (n == 0 || !inBounds(i, j) || !isSet(own, square(i, j))) {
+                continue;
+            }
+            for (int k = 1; k <= n; k++) {
+                int f = square(r + k * dr, c + k * dc);
+                opp[f >>> 6] &= ~(1L << f);
+                own[f >>> 6] |= 1L << f;
+                if (flipped != null) {
+                    flipped[f >>> 6] |= 1L << f;
+                }
+            }
+            count += n;
+        }
+        own[sq >>> 6] |= 1L << sq;
+        return count;
+    }
+
+    /**
+     * Takes back a move made with play
+     *
+     * @param sq         - square index of the move
+     * @param flipped    - mask play filled in
+     * @param blackMoved - true if black made the move
+     */
+    public void undo(int sq, long[] flipped, boolean blackMoved) {
+        long[] own = white;
+        long[] opp = black;
+        if (blackMoved) {
+            own = black;
+            opp = white;
+        }
+        for (int w = 0; w < WORDS; w++) {
+            own[w] &= ~flipped[w];
+            opp[w] |= flipped[w];
+        }
+        own[sq >>> 6] &= ~(1L << sq);
+    }
+
+    private boolean inBounds(int r, int c) {
+        return r >= 0 && r < size && c >= 0 && c < size;
+    }
+
+    /**
+     * returns true if a square's bit is set in a mask
+     */
+    public static boolean isSet(long[] mask, int sq) {
+        return (mask[sq >>> 6] & (1L << sq)) != 0;
+    }
+
+    public static int square(int r, int c) {
+        return r * STRIDE + c;
+    }
+
+    public static int row(int sq) {
+        return sq / STRIDE;
+    }
+
+    public static int col(int sq) {
+        return sq % STRIDE;
+    }
+}
@@ -0,0 +1,106 @@
+package org.cis120.othello;
+
+import java.util.Random;
+
+/**
+ * This is a utility class that gives positions a 64 bit identity. Every
+ * (square, color) pair has a random key and a position's hash is the XOR of
+ * the keys of its pieces, XORed with SIDE_KEY when white is to move. Because
+ * XOR undoes itself, a move only changes the hash by the keys of the squares
+ * it touches.
+ * 
+ * @author fdustin
+ *
+ */
+public final class Zobrist {
+    // fixed seed so hashes are the same between runs, e.g. in saved books
+    private static final long SEED = 0x0DDBA11C0FFEEL;
+
+    private static final long[] BLACK_KEYS = new long[BitBoard.SQUARES];
+    private static final long[] WHITE_KEYS = new long[BitBoard.SQUARES];
+    // BLACK_KEYS[sq] ^ WHITE_KEYS[sq], a piece changing color
+    private static final long[] FLIP_KEYS = new long[BitBoard.SQUARES];
+    public static final long SIDE_KEY;
+
+    static {
+        Random random = new Random(SEED);
+        for (int sq = 0; sq < BitBoard.SQUARES; sq++) {
+            BLACK_KEYS[sq] = random.nextLong();
+            WHITE_KEYS[sq] = random.nextLong();
+            FLIP_KEYS[sq] = BLACK_KEYS[sq] ^ WHITE_KEYS[sq];
+        }
+        SIDE_KEY = random.nextLong();
+    }
+
+    private Zobrist() {
+    }
+
+    /**
+     * Hashes the pieces on a board, not including whose turn it is
+     * 
+     * @param black - mask of the black pieces
+     * @param white - mask of the white pieces
+     * @return the hash of the pieces
+     */
+    public static long hashPieces(long black, long white) {
+        long hash = 0L;
+        for (long m = black; m != 0; m &= m - 1) {
+            hash ^= BLACK_KEYS[Long.numberOfTrailingZeros(m)];
+        }
+        for (long m = white; m != 0; m &= m - 1) {
+            hash ^= WHITE_KEYS[Long.numberOfTrailingZeros(m)];
+        }
+        return hash;
+    }
+
+    /**
+     * Hashes a position
+     * 
+     * @param black       - mask of the black pieces
+     * @param white       - mask of the white pieces
+     * @param blackToMove - true if it is black's turn
+     * @return the hash of the position
+     */
+    public static long hash(long black, long white, boolean blackToMove) {
+        long hash = hashPieces(black, white);
+        if (!blackToMove) {
+            hash ^= SIDE_KEY;
+        }
+        return hash;
+    }
+
+    /**
+     * Computes how a move changes the hash of the pieces. XOR it in to make
+     * the move and XOR it in again to take it back.
+     * 
+     * @param sq         - square of the placed piece
+     * @param flips      - mask of the flipped pieces
+     * @param blackMoved - true if black placed the piece
+     * @return the change to the hash, not including the turn change
+     */
+    public static long moveKey(int sq, long flips, boolean blackMoved) {
+        long key;
+        if (blackMoved) {
+            key = BLACK_KEYS[sq];
+        } else {
+            key = WHITE_KEYS[sq];
+        }
+        for (long m = flips; m != 0; m &= m - 1) {
+            key ^= FLIP_KEYS[Long.numberOfTrailingZeros(m)];
+        }
+        return key;
+    }
+
+    /**
+     * returns the key of a single piece
+     */
+    public static long pieceKey(int sq, int color) {
+        if (color == 1) {
+            return BLACK_KEYS[sq];
+        }
+        if (color == 2) {
+            return WHITE_KEYS[sq];
+        }
+        return 0L;
+    }
+}
@@ -0,0 +1,100 @@
+package org.cis120.othello;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * JMH benchmarks for WideBoard on every even board size, so the cost of move
+ * generation can be compared as boards grow. Each size starts from a
+ * position with a third of its squares filled by seeded random moves.
+ * OthelloBenchmark.findValidMoves times the 8x8 BitBoard for comparison.
+ *
+ * @author fdustin
+ *
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class BoardSizeBenchmark {
+    @Param({ "6", "8", "10", "12", "14", "16" })
+    public int size;
+
+    private WideBoard board;
+    private boolean blackToMove;
+    private long[] moves;
+    private Random random;
+
+    @Setup
+    public void setUp() {
+        random = new Random(120);
+        Othello game = new Othello(size);
+        while (game.getBlackScore() + game.getWhiteScore() < size * size / 3) {
+            List<Pair> valid = new ArrayList<Pair>(game.getValidMoves());
+            Pair move = valid.get(random.nextInt(valid.size()));
+            game.playTurn(move.getFirst(), move.getSecond());
+            game.checkPass();
+        }
+        board = WideBoard.fromArray(game.getGameBoard());
+        blackToMove = game.getCurrentPlayer();
+        moves = board.newMask();
+    }
+
+    @Benchmark
+    public int legalMoves() {
+        return board.legalMoves(blackToMove, moves);
+    }
+
+    /**
+     * plays random moves from the position to the end of the game, a move
+     * generation and a play per move
+     */
+    @Benchmark
+    public int randomGame() {
+        WideBoard b = board.copy();
+        boolean black = blackToMove;
+        int passes = 0;
+        while (passes < 2) {
+            int count = b.legalMoves(black, moves);
+            if (count == 0) {
+                passes++;
+            } else {
+                passes = 0;
+                b.play(nthSquare(moves, random.nextInt(count)), black);
+            }
+            black = !black;
+        }
+        return b.countBlack();
+    }
+
+    private static int nthSquare(long[] mask, int n) {
+        for (int w = 0; w < mask.length; w++) {
+            int bits = Long.bitCount(mask[w]);
+            if (n < bits) {
+                long m = mask[w];
+                for (int i = 0; i < n; i++) {
+                    m &= m - 1;
+                }
+                return w * Long.SIZE + Long.numberOfTrailingZeros(m);
+            }
+            n -= bits;
+        }
+        return -1;
+    }
+}
@@ -0,0 +1,85 @@
+package org.cis120.othello;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * JMH benchmark for EndgameSolver on the positions with 20 empty squares its
+ * main method solves, the same seeded random games. The target is under a
+ * second for each of them on one core, position 3 still takes about 2. Every
+ * solve gets a new solver so the table doesn't keep anything from the solve
+ * before.
+ *
+ * @author fdustin
+ *
+ */
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(value = 1, jvmArgs = { "-XX:ActiveProcessorCount=1" })
+@State(Scope.Thread)
+public class EndgameBenchmark {
+    private static final int EMPTIES = 20;
+
+    // which of the seeded positions to solve
+    @Param({ "0", "1", "2", "3", "4" })
+    public int position;
+
+    private long own;
+    private long opp;
+    private EndgameSolver solver;
+
+    @Setup
+    public void setUp() {
+        Random random = new Random(120);
+        int found = -1;
+        Othello game = null;
+        while (found < position) {
+            game = new Othello();
+            while (!game.getGameOver() && 60 - game.getNumTurns() > EMPTIES) {
+                long moves = game.legalMoveMask();
+                if (moves == 0) {
+                    game.checkPass();
+                    continue;
+                }
+                int sq = RandomPlayer.pick(moves, random);
+                game.playTurn(BitBoard.row(sq), BitBoard.col(sq));
+                game.checkPass();
+            }
+            if (!game.getGameOver()) {
+                found++;
+            }
+        }
+        if (game.getCurrentPlayer()) {
+            own = game.getBlackPieces();
+            opp = game.getWhitePieces();
+        } else {
+            own = game.getWhitePieces();
+            opp = game.getBlackPieces();
+        }
+    }
+
+    @Setup(Level.Iteration)
+    public void newSolver() {
+        solver = new EndgameSolver();
+    }
+
+    @Benchmark
+    public int solve() {
+        return solver.solve(own, opp).getScore();
+    }
+}
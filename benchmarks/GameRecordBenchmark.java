@@ -0,0 +1,84 @@
+package org.cis120.othello;
+
+import java.nio.ByteBuffer;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * JMH benchmarks for the binary game records, timed on one full game from
+ * seeded random moves. Encoding and decoding should cost far less than
+ * writing the bytes to disk.
+ *
+ * @author fdustin
+ *
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class GameRecordBenchmark {
+    private GameRecord record;
+    private ByteBuffer buffer;
+    private Othello game;
+
+    @Setup
+    public void setUp() {
+        game = new Othello();
+        Random random = new Random(120);
+        while (!game.getGameOver()) {
+            // after a pass the other player may have no move either,
+            // checking again ends the game
+            if (game.legalMoveMask() == 0) {
+                game.checkPass();
+                continue;
+            }
+            int sq = RandomPlayer.pick(game.legalMoveMask(), random);
+            game.playTurn(BitBoard.row(sq), BitBoard.col(sq));
+            game.checkPass();
+        }
+        record = game.toRecord();
+        buffer = ByteBuffer.allocate(record.getEncodedLength());
+    }
+
+    @Benchmark
+    public ByteBuffer encode() {
+        buffer.clear();
+        record.encode(buffer);
+        return buffer;
+    }
+
+    @Benchmark
+    public GameRecord decode() {
+        buffer.clear();
+        record.encode(buffer);
+        buffer.flip();
+        return GameRecord.decode(buffer);
+    }
+
+    @Benchmark
+    public GameRecord toRecord() {
+        return game.toRecord();
+    }
+
+    /**
+     * rebuilds the boards by replaying the whole game through the model
+     */
+    @Benchmark
+    public Othello loadRecord() {
+        game.loadRecord(record);
+        return game;
+    }
+}
@@ -0,0 +1,130 @@
+package org.cis120.othello;
+
+import java.io.File;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * JMH benchmarks for the hot paths of the game model. Every benchmark starts
+ * from the same midgame position, reached by seeded random moves, so numbers
+ * can be compared between versions. Run with -prof gc to also see how much
+ * each call allocates.
+ *
+ * The benchmarks are in the model's package so they can call the
+ * package-private findValidMoves and TurnParser.
+ *
+ * @author fdustin
+ *
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class OthelloBenchmark {
+    // moves played from the opening to reach the benchmark position
+    private static final int MIDGAME_TURNS = 20;
+
+    private Othello game;
+    private int moveRow;
+    private int moveCol;
+    private ByteBuffer turnBytes;
+
+    @Setup
+    public void setUp() {
+        game = new Othello();
+        Random random = new Random(120);
+        while (game.getNumTurns() < MIDGAME_TURNS) {
+            int sq = RandomPlayer.pick(game.legalMoveMask(), random);
+            game.playTurn(BitBoard.row(sq), BitBoard.col(sq));
+            game.checkPass();
+        }
+        int sq = Long.numberOfTrailingZeros(game.legalMoveMask());
+        moveRow = BitBoard.row(sq);
+        moveCol = BitBoard.col(sq);
+
+        // the 9 lines a saved turn takes up in the CSV file
+        int[][] board = game.getGameBoard();
+        StringBuilder turn = new StringBuilder();
+        turn.append(game.getNumTurns() + "," + game.getCurrentPlayer() + ","
+                + game.getPassOccurred() + "\n");
+        for (int i = 0; i < 8; i++) {
+            turn.append(board[i][0]);
+            for (int j = 1; j < 8; j++) {
+                turn.append(',').append(board[i][j]);
+            }
+            turn.append('\n');
+        }
+        turnBytes = ByteBuffer.wrap(turn.toString().getBytes(StandardCharsets.US_ASCII));
+
+        // the game saves relative to where it runs
+        new File("files").mkdirs();
+        game.saveToGameFile();
+    }
+
+    /**
+     * playTurn and undoMove are timed as a pair so every call starts from the
+     * same position
+     */
+    @Benchmark
+    public boolean playTurnAndUndo() {
+        game.playTurn(moveRow, moveCol);
+        return game.undoMove();
+    }
+
+    @Benchmark
+    public long findValidMoves() {
+        game.findValidMoves();
+        return game.legalMoveMask();
+    }
+
+    @Benchmark
+    public int score() {
+        game.score();
+        return game.getBlackScore();
+    }
+
+    @Benchmark
+    public Object getValidMoves() {
+        return game.getValidMoves();
+    }
+
+    @Benchmark
+    public int[][] getGameBoard() {
+        return game.getGameBoard();
+    }
+
+    @Benchmark
+    public Othello saveToGameFile() {
+        game.saveToGameFile();
+        return game;
+    }
+
+    /**
+     * loads the file written in setUp, which holds this same position
+     */
+    @Benchmark
+    public Othello loadFromGameFile() {
+        game.loadFromGameFile();
+        return game;
+    }
+
+    @Benchmark
+    public StorageOthello parseTurn() {
+        return new TurnParser(turnBytes).next();
+    }
+}
@@ -0,0 +1,87 @@
+package org.cis120.othello;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * JMH benchmarks for the pattern evaluation on a midgame position from
+ * seeded random moves, with random weights so no table entry is skipped.
+ * The search calls play, evaluate and undo at every leaf, so together they
+ * decide how many positions per second it can evaluate.
+ *
+ * @author fdustin
+ *
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class PatternBenchmark {
+    private static final int MIDGAME_TURNS = 20;
+
+    private PatternEvaluator evaluator;
+    private long black;
+    private long white;
+    private int move;
+    private long flips;
+
+    @Setup
+    public void setUp() {
+        Random random = new Random(120);
+        short[] weights = new short[PatternWeights.STAGES * PatternWeights.STAGE_SIZE];
+        for (int i = 0; i < weights.length; i++) {
+            weights[i] = (short) (random.nextInt(201) - 100);
+        }
+        evaluator = new PatternEvaluator(new PatternWeights(weights));
+        Othello game = new Othello();
+        while (game.getNumTurns() < MIDGAME_TURNS) {
+            int sq = RandomPlayer.pick(game.legalMoveMask(), random);
+            game.playTurn(BitBoard.row(sq), BitBoard.col(sq));
+            game.checkPass();
+        }
+        black = game.getBlackPieces();
+        white = game.getWhitePieces();
+        evaluator.setPosition(black, white);
+        move = Long.numberOfTrailingZeros(game.legalMoveMask());
+        if (game.getCurrentPlayer()) {
+            flips = BitBoard.flips(black, white, move);
+        } else {
+            flips = BitBoard.flips(white, black, move);
+        }
+    }
+
+    @Benchmark
+    public int evaluate() {
+        return evaluator.evaluate(true);
+    }
+
+    @Benchmark
+    public int playEvaluateUndo() {
+        evaluator.play(move, flips, true);
+        int score = evaluator.evaluate(false);
+        evaluator.undo(move, flips, true);
+        return score;
+    }
+
+    /**
+     * computing every index from the masks, what play saves
+     */
+    @Benchmark
+    public int setPositionAndEvaluate() {
+        evaluator.setPosition(black, white);
+        return evaluator.evaluate(true);
+    }
+}